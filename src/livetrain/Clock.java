@@ -1,22 +1,72 @@
 package livetrain;
 
+import livetrain.time.RealTimeSource;
+import livetrain.time.ScaledTimeSource;
+import livetrain.time.TimeSource;
+
 /**
- * Generates timestamps for the simulator
+ * Generates timestamps for the simulator. Every timestamp comes from a single pluggable source,
+ * which is monotonic wall time by default
  */
 public class Clock {
-    public static final double EPOCH = System.currentTimeMillis() / 1000.0;
-    public static double simulationSpeed = 1;
-    public static double timeBank = 0, simEpoch = 0;
+    private static volatile TimeSource source = new RealTimeSource();
+    private static volatile ScaledTimeSource pace = new ScaledTimeSource(source, 1);
+    private static volatile double simulationTime = 0;
     
     private Clock() {}
 
     /**
-     * @return Current time in seconds since program epoch
+     * @return Source of all timestamps
+     */
+    public static TimeSource source() { return source; }
+    
+    /**
+     * Replace the source of all timestamps, e.g. with a virtual source for batch runs. A batch
+     * driver installs a {@link livetrain.time.VirtualTimeSource}, then alternates advancing it
+     * and calling {@link Simulation#update()}; the CPU budget is measured on the same source, so
+     * no steps are dropped however long each update takes. Paced time carries on from where the
+     * old source left it, and the simulation loop restarts its wall-time bookkeeping on the
+     * next update
+     * 
+     * @param src Source
+     */
+    public static synchronized void setSource(TimeSource src) {
+        double speed = pace.scale();
+        pace = new ScaledTimeSource(src, speed, pace.now());
+        source = src;
+        Log.add("Set Clock.source", src.getClass().getSimpleName());
+    }
+    
+    /**
+     * @return Current time in seconds since the source's epoch
+     */
+    public static double timestamp() { return source.now(); }
+    
+    /**
+     * @return Source time scaled by the simulation speed, which paces the simulation loop
      */
-    public static double timestamp() { return System.currentTimeMillis() / 1000.0 - EPOCH; }
+    public static double pacedTimestamp() { return pace.now(); }
+    
+    /**
+     * @return Ratio of simulated time to source time requested by the user
+     */
+    public static double simulationSpeed() { return pace.scale(); }
+    
+    /**
+     * @param speed Ratio of simulated time to source time
+     */
+    public static void setSimulationSpeed(double speed) { pace.setScale(speed); }
  
     /**
-     * @return Current simulation time in seconds
+     * @return Current simulation time in seconds. Simulated time only advances as the simulation
+     * loop fires scheduled events
+     */
+    public static double simulationTime() { return simulationTime; }
+    
+    /**
+     * Only the simulation loop moves simulated time
+     * 
+     * @param t Simulation time in seconds
      */
-    public static double simulationTime() { return timeBank + (Simulation.instance().run() ? (timestamp() - simEpoch) : 0); }
+    static void setSimulationTime(double t) { simulationTime = t; }
 }
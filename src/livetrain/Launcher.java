@@ -2,9 +2,11 @@ package livetrain;
 
 import livetrain.Log;
 import livetrain.graphics.SimulationRenderer;
+import livetrain.metrics.MetricsMXBeanImpl;
 import livetrain.ui.SimulationUI;
 
 import java.awt.EventQueue;
+import javax.management.JMException;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
@@ -43,6 +45,13 @@ public class Launcher {
             java.util.logging.Logger.getLogger(SimulationUI.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
         }
         
+        // Expose tick and render latencies over JMX
+        try {
+            MetricsMXBeanImpl.register(Simulation.instance().watchdog());
+        } catch (JMException ex) {
+            Log.add("Failed to register metrics MXBean", ex.toString());
+        }
+        
         // Graphics and interface get placed in the same thread
         EventQueue.invokeLater(new Runnable() {
             @Override public void run() {
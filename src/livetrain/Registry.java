@@ -1,5 +1,12 @@
 package livetrain;
 
+import livetrain.estimation.PoseEstimator;
+import livetrain.robot.Drivetrain;
+import livetrain.robot.Follower;
+import livetrain.robot.MpcFollower;
+import livetrain.sensors.Sensor;
+import livetrain.sensors.WheelEncoders;
+import livetrain.time.Delay;
 import livetrain.ui.NumericEntryParser;
 
 import javax.swing.JTextField;
@@ -11,8 +18,13 @@ import javax.swing.JTextField;
 public class Registry {
     public enum Entry {
         ROBOT_INIT_X, ROBOT_INIT_Y, ROBOT_INIT_THETA, ROBOT_WIDTH, ROBOT_HEIGHT,
-        ROBOT_POW0, ROBOT_POW1, ROBOT_POW2, ROBOT_POW3, ROBOT_WHEEL_RADIUS,
-        ROBOT_UPDATE_FREQUENCY, PIXELS_PER_UNIT
+        ROBOT_POW0, ROBOT_POW1, ROBOT_POW2, ROBOT_POW3, ROBOT_POW4, ROBOT_POW5, ROBOT_WHEEL_RADIUS,
+        ROBOT_UPDATE_FREQUENCY, PIXELS_PER_UNIT, SIMULATION_STEP_SIZE, SIMULATION_CPU_BUDGET,
+        ROBOT_SENSOR_FREQUENCY, SIMULATION_UPDATE_DEADLINE, MPC_BUDGET, MOTOR_GEAR_RATIO,
+        MOTOR_CURRENT_LIMIT, ROBOT_MASS, TRACTION_FRICTION, TRACTION_FRONT_BIAS,
+        ESTIMATOR_ODOMETRY_NOISE, ESTIMATOR_POSE_DEVIATION, ENCODER_RATE, ENCODER_LATENCY,
+        ENCODER_COUNTS, IMU_RATE, IMU_LATENCY, IMU_QUANTUM, VISION_RATE, VISION_LATENCY, VISION_QUANTUM,
+        CONTROL_COMPUTE_TIME, CONTROL_COMPUTE_SPREAD, CONTROL_ACTUATION_LATENCY, CONTROL_LOOP_JITTER
     }
     
     private Registry() {}
@@ -57,27 +69,23 @@ public class Registry {
                 break;
                 
             case ROBOT_POW0:
-                p = new NumericEntryParser(-1, 1, Simulation.robot().drivetrain().power(0));
-                n = p.parse(src.getText());
-                Simulation.robot().drivetrain().setPower(0, n);
-                break;
-                
             case ROBOT_POW1:
-                p = new NumericEntryParser(-1, 1, Simulation.robot().drivetrain().power(1));
-                n = p.parse(src.getText());
-                Simulation.robot().drivetrain().setPower(1, n);
-                break;
-                
             case ROBOT_POW2:
-                p = new NumericEntryParser(-1, 1, Simulation.robot().drivetrain().power(2));
-                n = p.parse(src.getText());
-                Simulation.robot().drivetrain().setPower(2, n);
-                break;
-                
             case ROBOT_POW3:
-                p = new NumericEntryParser(-1, 1, Simulation.robot().drivetrain().power(3));
+            case ROBOT_POW4:
+            case ROBOT_POW5:
+                // Wheels the drivetrain does not have stay unpowered
+                int wheel = ent.ordinal() - Entry.ROBOT_POW0.ordinal();
+                Drivetrain drivetrain = Simulation.robot().drivetrain();
+                
+                if (wheel >= drivetrain.wheelCount()) {
+                    n = 0;
+                    break;
+                }
+                
+                p = new NumericEntryParser(-1, 1, drivetrain.power(wheel));
                 n = p.parse(src.getText());
-                Simulation.robot().drivetrain().setPower(3, n);
+                drivetrain.setPower(wheel, n);
                 break;
                 
             case ROBOT_WHEEL_RADIUS:
@@ -92,13 +100,169 @@ public class Registry {
                 Simulation.robot().setUpdateFrequency(n);
                 break;
                 
+            case ROBOT_SENSOR_FREQUENCY:
+                p = new NumericEntryParser(1, Double.POSITIVE_INFINITY, Simulation.robot().sensorFrequency());
+                n = p.parse(src.getText());
+                Simulation.robot().setSensorFrequency(n);
+                break;
+                
             case PIXELS_PER_UNIT:
                 p = new NumericEntryParser(1, Double.POSITIVE_INFINITY, Simulation.pixelsPerUnit);
                 n = p.parse(src.getText());
                 Simulation.pixelsPerUnit = (int)n;
                 break;
+                
+            case SIMULATION_STEP_SIZE:
+                p = new NumericEntryParser(1e-5, 0.1, Simulation.instance().stepSize());
+                n = p.parse(src.getText());
+                Simulation.instance().setStepSize(n);
+                break;
+                
+            case SIMULATION_CPU_BUDGET:
+                p = new NumericEntryParser(0.001, 1, Simulation.instance().cpuBudget());
+                n = p.parse(src.getText());
+                Simulation.instance().setCpuBudget(n);
+                break;
+                
+            case SIMULATION_UPDATE_DEADLINE:
+                p = new NumericEntryParser(0.001, 1, Simulation.instance().watchdog().deadline());
+                n = p.parse(src.getText());
+                Simulation.instance().watchdog().setDeadline(n);
+                break;
+                
+            case MPC_BUDGET:
+                MpcFollower mpc = (MpcFollower)Simulation.robot().follower(Follower.Type.MPC);
+                p = new NumericEntryParser(1e-5, 1, mpc.budget());
+                n = p.parse(src.getText());
+                mpc.setBudget(n);
+                break;
+                
+            case MOTOR_GEAR_RATIO:
+                p = new NumericEntryParser(0.01, 1000, Simulation.robot().drivetrain().motors().gearRatio());
+                n = p.parse(src.getText());
+                Simulation.robot().drivetrain().motors().setGearRatio(n);
+                break;
+                
+            case MOTOR_CURRENT_LIMIT:
+                p = new NumericEntryParser(0.01, Double.POSITIVE_INFINITY, Simulation.robot().drivetrain().motors().currentLimit());
+                n = p.parse(src.getText());
+                Simulation.robot().drivetrain().motors().setCurrentLimit(n);
+                break;
+                
+            case ROBOT_MASS:
+                p = new NumericEntryParser(0.01, Double.POSITIVE_INFINITY, Simulation.robot().drivetrain().motors().robotMass());
+                n = p.parse(src.getText());
+                Simulation.robot().drivetrain().motors().setRobotMass(n);
+                break;
+                
+            case TRACTION_FRICTION:
+                p = new NumericEntryParser(0.01, Double.POSITIVE_INFINITY, Simulation.robot().drivetrain().tractionModel().friction());
+                n = p.parse(src.getText());
+                Simulation.robot().drivetrain().tractionModel().setFriction(n);
+                break;
+                
+            case TRACTION_FRONT_BIAS:
+                p = new NumericEntryParser(0, 1, Simulation.robot().drivetrain().tractionModel().frontBias());
+                n = p.parse(src.getText());
+                Simulation.robot().drivetrain().tractionModel().setFrontBias(n);
+                break;
+                
+            case ESTIMATOR_ODOMETRY_NOISE:
+                PoseEstimator est = Simulation.robot().estimator();
+                p = new NumericEntryParser(0, Double.POSITIVE_INFINITY, est.translationNoise());
+                n = p.parse(src.getText());
+                est.setTranslationNoise(n);
+                break;
+                
+            case ESTIMATOR_POSE_DEVIATION:
+                est = Simulation.robot().estimator();
+                p = new NumericEntryParser(1e-6, Double.POSITIVE_INFINITY, est.poseDeviation());
+                n = p.parse(src.getText());
+                est.setPoseDeviation(n, est.poseHeadingDeviation());
+                break;
+                
+            case ENCODER_RATE:
+            case IMU_RATE:
+            case VISION_RATE:
+                Sensor sensor = sensor(ent);
+                p = new NumericEntryParser(0.1, Double.POSITIVE_INFINITY, sensor.rate());
+                n = p.parse(src.getText());
+                sensor.setRate(n);
+                break;
+                
+            case ENCODER_LATENCY:
+            case IMU_LATENCY:
+            case VISION_LATENCY:
+                sensor = sensor(ent);
+                p = new NumericEntryParser(0, 1, sensor.latency());
+                n = p.parse(src.getText());
+                sensor.setLatency(n);
+                break;
+                
+            case ENCODER_COUNTS:
+                WheelEncoders encoders = Simulation.robot().sensors().encoders();
+                p = new NumericEntryParser(1, Double.POSITIVE_INFINITY, encoders.countsPerRevolution());
+                n = p.parse(src.getText());
+                encoders.setCountsPerRevolution(n);
+                break;
+                
+            case IMU_QUANTUM:
+            case VISION_QUANTUM:
+                sensor = sensor(ent);
+                p = new NumericEntryParser(0, Double.POSITIVE_INFINITY, sensor.quantum());
+                n = p.parse(src.getText());
+                sensor.setQuantum(n);
+                break;
+                
+            case CONTROL_COMPUTE_TIME:
+                Delay delay = Simulation.robot().computeDelay();
+                p = new NumericEntryParser(0, 1, delay.base());
+                n = p.parse(src.getText());
+                delay.configure(delay.type(), n, delay.spread());
+                break;
+                
+            case CONTROL_COMPUTE_SPREAD:
+                delay = Simulation.robot().computeDelay();
+                p = new NumericEntryParser(0, 1, delay.spread());
+                n = p.parse(src.getText());
+                delay.configure(delay.type(), delay.base(), n);
+                break;
+                
+            case CONTROL_ACTUATION_LATENCY:
+                delay = Simulation.robot().actuationDelay();
+                p = new NumericEntryParser(0, 1, delay.base());
+                n = p.parse(src.getText());
+                delay.configure(delay.type(), n, delay.spread());
+                break;
+                
+            case CONTROL_LOOP_JITTER:
+                delay = Simulation.robot().loopJitter();
+                p = new NumericEntryParser(0, 1, delay.spread());
+                n = p.parse(src.getText());
+                delay.configure(delay.type(), delay.base(), n);
+                break;
         }
         
         src.setText("" + n);
     }
+    
+    /**
+     * @param ent Sensor entry
+     * @return The robot's sensor that the entry configures
+     */
+    private static Sensor sensor(Entry ent) {
+        switch (ent) {
+            case ENCODER_RATE:
+            case ENCODER_LATENCY:
+                return Simulation.robot().sensors().encoders();
+                
+            case IMU_RATE:
+            case IMU_LATENCY:
+            case IMU_QUANTUM:
+                return Simulation.robot().sensors().imu();
+                
+            default:
+                return Simulation.robot().sensors().vision();
+        }
+    }
 }
@@ -0,0 +1,203 @@
+package livetrain;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+import livetrain.time.Delay;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event queue of periodic simulation tasks. Each subsystem runs at its own rate and the
+ * simulation jumps directly from one event to the next rather than polling every subsystem on
+ * every step
+ */
+public class Scheduler implements Stateful {
+    public static final int PRIORITY_PHYSICS = 0, PRIORITY_SENSOR = 1, PRIORITY_CONTROL = 2;
+
+    /**
+     * Work performed when an event fires
+     */
+    public interface Task {
+        /**
+         * @param time Simulation time of the event
+         */
+        void run(double time);
+    }
+
+    /**
+     * A periodic event. Firing times are computed from an anchor rather than accumulated so that
+     * long runs do not drift
+     */
+    public static class Event implements Comparable<Event> {
+        private final String name;
+        private final int priority;
+        private final Task task;
+        private final long order;
+        private double period, anchor, time;
+        private long count;
+        private Delay jitter;
+
+        private Event(String name, double period, int priority, Task task, long order, double start) {
+            this.name = name;
+            this.period = period;
+            this.priority = priority;
+            this.task = task;
+            this.order = order;
+            anchor = start;
+            time = start;
+        }
+
+        /**
+         * @return Event name
+         */
+        public String name() { return name; }
+
+        /**
+         * @return Time between firings
+         */
+        public double period() { return period; }
+
+        /**
+         * @return Simulation time of the next firing
+         */
+        public double time() { return time; }
+
+        @Override public int compareTo(Event e) {
+            if (time != e.time)
+                return time < e.time ? -1 : 1;
+
+            if (priority != e.priority)
+                return priority < e.priority ? -1 : 1;
+
+            return Long.compare(order, e.order);
+        }
+
+        @Override public String toString() { return name + "@" + time; }
+    }
+
+    private PriorityQueue<Event> queue = new PriorityQueue<>();
+    private ArrayList<Event> events = new ArrayList<>();
+    private long scheduled = 0;
+
+    /**
+     * Add a periodic event that first fires at the given time
+     *
+     * @param name Event name
+     * @param period Time between firings
+     * @param priority Order among events firing at the same time, lowest first
+     * @param task Work to perform
+     * @param start Time of the first firing
+     * @return Event handle
+     */
+    public synchronized Event schedule(String name, double period, int priority, Task task, double start) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Event period must be positive");
+
+        Event e = new Event(name, period, priority, task, scheduled++, start);
+        queue.add(e);
+        events.add(e);
+
+        return e;
+    }
+
+    /**
+     * Change the period of an event. The next firing is kept and later firings follow the new
+     * period
+     *
+     * @param e Event
+     * @param period Time between firings
+     */
+    public synchronized void setPeriod(Event e, double period) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Event period must be positive");
+
+        e.period = period;
+        e.anchor = e.time;
+        e.count = 0;
+    }
+
+    /**
+     * Delay each firing of an event by a draw from a distribution, as a loaded processor wakes a
+     * periodic task late. Firings stay anchored to the period, so lateness does not accumulate
+     *
+     * @param e Event
+     * @param jitter Lateness of each firing, or null for none
+     */
+    public synchronized void setJitter(Event e, Delay jitter) { e.jitter = jitter; }
+
+    /**
+     * @return Simulation time of the earliest pending event, or infinity if there is none
+     */
+    public synchronized double nextTime() { return queue.isEmpty() ? Double.POSITIVE_INFINITY : queue.peek().time; }
+
+    /**
+     * Fire the earliest event and queue its next firing
+     *
+     * @return Event that fired
+     */
+    public Event runNext() {
+        Event e;
+
+        synchronized (this) {
+            e = queue.poll();
+        }
+
+        e.task.run(e.time);
+
+        synchronized (this) {
+            double last = e.time;
+            e.count++;
+            e.time = e.anchor + e.count * e.period;
+
+            if (e.jitter != null)
+                e.time = Math.max(e.time + e.jitter.sample(), last);
+
+            queue.add(e);
+        }
+
+        return e;
+    }
+
+    /**
+     * Move every event so that it next fires at the given time
+     *
+     * @param time Simulation time
+     */
+    public synchronized void reset(double time) {
+        queue.clear();
+
+        for (Event e : events) {
+            e.anchor = time;
+            e.time = time;
+            e.count = 0;
+            queue.add(e);
+        }
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putLong(events.size());
+
+        for (Event e : events) {
+            c.putDouble(e.period);
+            c.putDouble(e.anchor);
+            c.putDouble(e.time);
+            c.putLong(e.count);
+        }
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        if (c.getLong() != events.size())
+            throw new IllegalStateException("Snapshot was taken with a different set of events");
+
+        queue.clear();
+
+        for (Event e : events) {
+            e.period = c.getDouble();
+            e.anchor = c.getDouble();
+            e.time = c.getDouble();
+            e.count = c.getLong();
+            queue.add(e);
+        }
+    }
+}
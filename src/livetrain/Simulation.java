@@ -1,28 +1,65 @@
 package livetrain;
 
+import livetrain.history.SnapshotBuffer;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+import livetrain.metrics.Metrics;
+import livetrain.metrics.SimulationTickEvent;
+import livetrain.metrics.Watchdog;
+import livetrain.noise.NoiseGenerator;
 import livetrain.physics.Simulant;
 import livetrain.robot.Robot;
+import livetrain.telemetry.Replay;
+import livetrain.telemetry.Telemetry;
+import livetrain.telemetry.TelemetryStore;
+import livetrain.time.TimeSource;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
  * Contains the looped simulation cycle and relevant robot data
  */
-public class Simulation {
+public class Simulation implements Stateful {
     public static double pixelsPerUnit = 2;
+    public static final double DEFAULT_STEP_SIZE = 0.001;
+    public static final double DEFAULT_CPU_BUDGET = 0.02;
+    public static final double SPEED_WINDOW = 0.5;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+    public static final int SNAPSHOT_CAPACITY = 4096, SNAPSHOT_KEYFRAME_INTERVAL = 16;
     
     private volatile static Simulation instance = null;
     private volatile Robot robot = new Robot(-1, -1);
     private ArrayList<Simulant> objects = new ArrayList<>();
-    private volatile boolean run = false, advanceSim = false;
+    private Scheduler scheduler = new Scheduler();
+    private Scheduler.Event physicsEvent;
+    private volatile boolean run = false, advanceSim = false, reset = false, keepingUp = true;
+    private volatile boolean seek = false;
     private double advanceSimTime = 0;
+    private volatile long tick = 0, seekTick = 0;
+    private volatile int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private SnapshotBuffer history = new SnapshotBuffer(SNAPSHOT_CAPACITY, SNAPSHOT_KEYFRAME_INTERVAL);
+    private StateCursor snapshot = new StateCursor(64);
+    private volatile double stepSize = DEFAULT_STEP_SIZE, cpuBudget = DEFAULT_CPU_BUDGET;
+    private volatile double effectiveSpeed = 1, droppedTime = 0;
+    private double lastWallTime = -1, lastPacedTime = 0, pendingTime = 0;
+    private TimeSource lastSource = null;
+    private long noiseLayout = 0;
+    private double windowStart = -1, windowSimTime = 0, lastWork = 0;
+    private Watchdog watchdog = new Watchdog(DEFAULT_CPU_BUDGET);
+    private Telemetry telemetry = new Telemetry();
+    private TelemetryStore telemetryStore = new TelemetryStore();
+    private volatile Replay replay = null;
     
     /**
      * Upon construction, the simulation creates an unconfigured robot and adds it to the
      * simulation queue
      */
     private Simulation() {
+        physicsEvent = scheduler.schedule("Physics", stepSize, Scheduler.PRIORITY_PHYSICS,
+                (double time) -> tick++, 0);
         addObject(robot);
+        telemetry.addSink(telemetryStore);
     }
     
     /**
@@ -56,39 +93,405 @@ public class Simulation {
     public void setRun(boolean run) {
         this.run = run;
         Log.add("Simulation.run set to " + run);
+        
+        if (!run && watchdog.total() > 0)
+            for (String line : watchdog.report())
+                Log.add(line);
+    }
+    
+    /**
+     * @return Longest simulated time covered by a single physics step
+     */
+    public double stepSize() { return stepSize; }
+    
+    /**
+     * Set the longest simulated time objects are integrated over without an intervening event
+     * 
+     * @param step Step (s)
+     */
+    public void setStepSize(double step) {
+        stepSize = step;
+        scheduler.setPeriod(physicsEvent, step);
+        Log.add("Set Simulation.stepSize", "" + step);
     }
     
     /**
-     * Add an object to be simulated
+     * @return Wall time the loop may spend stepping per update before it falls behind
+     */
+    public double cpuBudget() { return cpuBudget; }
+    
+    /**
+     * Set the wall time the loop may spend stepping per update. The watchdog's deadline follows
+     * 
+     * @param budget Budget (s)
+     */
+    public void setCpuBudget(double budget) {
+        cpuBudget = budget;
+        watchdog.setBudget(budget);
+        Log.add("Set Simulation.cpuBudget", "" + budget);
+    }
+    
+    /**
+     * @return If the loop kept up with the requested simulation speed over the last update
+     */
+    public boolean keepingUp() { return keepingUp; }
+    
+    /**
+     * @return Ratio of simulated time to wall time actually achieved over the last window
+     */
+    public double effectiveSpeed() { return effectiveSpeed; }
+    
+    /**
+     * @return Total simulated time skipped because the loop could not keep up
+     */
+    public double droppedTime() { return droppedTime; }
+    
+    /**
+     * @return Update deadline monitor
+     */
+    public Watchdog watchdog() { return watchdog; }
+    
+    /**
+     * @return Per-tick telemetry sampler
+     */
+    public Telemetry telemetry() { return telemetry; }
+    
+    /**
+     * @return Downsampled history of every telemetry column since time zero
+     */
+    public TelemetryStore telemetryStore() { return telemetryStore; }
+    
+    /**
+     * @return Recording being played back in place of physics, or null
+     */
+    public Replay replay() { return replay; }
+    
+    /**
+     * Play a recording back in place of physics, or return to simulating. Leaving replay resets
+     * the simulation since the robot was showing recorded state
+     * 
+     * @param r Recording, or null
+     */
+    public void setReplay(Replay r) {
+        if (r != null)
+            setRun(false);
+        else if (replay != null)
+            reset();
+        
+        replay = r;
+        Log.add("Simulation.replay set to " + (r == null ? "none" : r.path()));
+    }
+    
+    /**
+     * @return Number of physics steps taken since time zero
+     */
+    public long tick() { return tick; }
+    
+    /**
+     * @return Snapshots of past simulation states
+     */
+    public SnapshotBuffer history() { return history; }
+    
+    /**
+     * @return Number of physics steps between snapshots
+     */
+    public int snapshotInterval() { return snapshotInterval; }
+    
+    /**
+     * @param n Number of physics steps between snapshots
+     */
+    public void setSnapshotInterval(int n) {
+        snapshotInterval = n;
+        Log.add("Set Simulation.snapshotInterval", "" + n);
+    }
+    
+    /**
+     * Set the simulation to rewind or fast-forward to a tick on the next update cycle. The
+     * nearest earlier snapshot is restored and replayed forward to the exact tick
+     * 
+     * @param t Tick
+     */
+    public void seek(long t) {
+        seekTick = t;
+        seek = true;
+    }
+    
+    /**
+     * @return Event queue driving the simulation
+     */
+    public Scheduler scheduler() { return scheduler; }
+    
+    /**
+     * Add an object to be simulated and let it schedule its periodic work
      * 
      * @param object Object
      */
-    public void addObject(Simulant object) { objects.add(object); }
+    public void addObject(Simulant object) {
+        objects.add(object);
+        object.schedule(scheduler);
+    }
     
     /**
-     * Run a single update cycle
+     * Set the simulation to return to time zero on the next update cycle
+     */
+    public void reset() { reset = true; }
+    
+    /**
+     * Run a single update cycle. The wall time elapsed since the last cycle, scaled by the
+     * simulation speed, is covered by firing every scheduled event up to the new simulation time,
+     * within the CPU budget, so that fast-forwarding produces the same result as running in real
+     * time
      */
     public void update() {
+        // Drivetrain changes made from the interface take effect between steps. Snapshots taken
+        // with a different number of wheels would not restore into the new layout
+        if (robot.drivetrain().applyPending())
+            history.clear();
+        
+        // Likewise for snapshots of noise models that have since been replaced
+        if (NoiseGenerator.layout() != noiseLayout) {
+            noiseLayout = NoiseGenerator.layout();
+            history.clear();
+        }
+        
+        // Recorded playback replaces physics entirely
+        Replay r = replay;
+        
+        if (r != null) {
+            try {
+                Clock.setSimulationTime(r.update(Clock.pacedTimestamp(), robot, telemetry));
+            } catch (IOException ex) {
+                if (replay == r) {
+                    Log.add("Replay failed", ex.toString());
+                    setReplay(null);
+                }
+            }
+            
+            return;
+        }
+        
+        // Return to time zero
+        if (reset) {
+            Clock.setSimulationTime(0);
+            pendingTime = 0;
+            tick = 0;
+            scheduler.reset(0);
+            history.clear();
+            telemetryStore.clear();
+            NoiseGenerator.reseed();
+            
+            for (Simulant obj : objects)
+                obj.resetTimestamp();
+            
+            reset = false;
+        }
+        
+        // Timeline scrubbing
+        if (seek) {
+            seekTo(seekTick);
+            seek = false;
+        }
+        
         // Incremental advancements
         if (advanceSim) {
-            double resolution = 0.01;
+            double target = Clock.simulationTime() + advanceSimTime;
             
-            for (double t = 0; t < advanceSimTime; t += resolution)
-                for (Simulant obj : objects) {
-                    Clock.timeBank += resolution;
-                    obj.update(Clock.simulationTime());
-                }
+            while (scheduler.nextTime() <= target)
+                fireNext();
             
             advanceSim = false;
         }
         
+        // Wall time from a replaced source is not comparable with the new one's
+        if (Clock.source() != lastSource) {
+            lastSource = Clock.source();
+            lastWallTime = -1;
+        }
+        
         // Simulation proper is not running
-        if (!run)
+        if (!run) {
+            lastWallTime = -1;
+            windowStart = -1;
             return;
+        }
+        
+        double now = Clock.timestamp();
+        double paced = Clock.pacedTimestamp();
+        
+        if (lastWallTime == -1) {
+            lastWallTime = now;
+            lastPacedTime = paced;
+            windowStart = now;
+            windowSimTime = 0;
+            pendingTime = 0;
+            lastWork = 0;
+            return;
+        }
+        
+        // A late update would otherwise be made up in one burst; when freezing, only the time up
+        // to the deadline is simulated and the rest of the gap is treated as a pause
+        double elapsed = paced - lastPacedTime;
+        
+        if (watchdog.check(now, now - lastWallTime, lastWork) != null && watchdog.freeze()) {
+            double allowed = watchdog.deadline() * Clock.simulationSpeed();
+            
+            if (elapsed > allowed) {
+                watchdog.addFrozenTime(elapsed - allowed);
+                elapsed = allowed;
+            }
+        }
+        
+        pendingTime += elapsed;
+        lastWallTime = now;
+        lastPacedTime = paced;
         
         // Cycle
+        long mark = Metrics.start();
+        double deadline = now + cpuBudget;
+        double start = Clock.simulationTime();
+        double target = start + pendingTime;
+        
+        while (scheduler.nextTime() <= target) {
+            fireNext();
+            
+            if (Clock.timestamp() > deadline)
+                break;
+        }
+        
+        pendingTime = target - Clock.simulationTime();
+        lastWork = Clock.timestamp() - now;
+        windowSimTime += Clock.simulationTime() - start;
+        
+        if (Clock.simulationTime() != start)
+            Metrics.stop(Metrics.Phase.UPDATE, mark);
+        
+        // Drop whatever could not be simulated in time rather than spiralling further behind
+        boolean behind = scheduler.nextTime() <= target;
+        
+        if (behind) {
+            droppedTime += pendingTime;
+            pendingTime = 0;
+        }
+        
+        if (behind != !keepingUp) {
+            keepingUp = !behind;
+            Log.add(keepingUp ? "Simulation caught up with requested speed" :
+                    "Simulation cannot keep up with requested speed " + Clock.simulationSpeed());
+        }
+        
+        if (now - windowStart >= SPEED_WINDOW) {
+            effectiveSpeed = windowSimTime / (now - windowStart);
+            windowStart = now;
+            windowSimTime = 0;
+        }
+    }
+    
+    /**
+     * Advance simulated time and every object to the next event, then fire it. A snapshot is
+     * taken between events every snapshot interval ticks
+     * 
+     * @param record If snapshots should be taken
+     */
+    private void fireNext(boolean record) {
+        long mark = Metrics.start();
+        SimulationTickEvent event = SimulationTickEvent.TYPE.isEnabled() ? new SimulationTickEvent() : null;
+        
+        if (event != null)
+            event.begin();
+        
+        double last = Clock.simulationTime();
+        double time = scheduler.nextTime();
+        Clock.setSimulationTime(time);
+        
+        for (Simulant obj : objects)
+            obj.update(time);
+        
+        Scheduler.Event fired = scheduler.runNext();
+        
+        if (fired == physicsEvent && record) {
+            if (tick % snapshotInterval == 0) {
+                snapshot.rewind();
+                saveState(snapshot);
+                history.record(tick, snapshot);
+            }
+            
+            telemetry.sample(time, robot);
+        }
+        
+        Metrics.stop(Metrics.Phase.EVENT, mark);
+        
+        if (event != null) {
+            event.event = fired.name();
+            event.simulationTime = time;
+            event.dt = time - last;
+            event.objects = objects.size();
+            event.commit();
+        }
+    }
+    
+    private void fireNext() { fireNext(true); }
+    
+    /**
+     * Restore the nearest snapshot at or before a tick and replay forward to it. Replayed steps
+     * are not recorded so the rest of the timeline stays available for scrubbing
+     * 
+     * @param target Tick
+     */
+    private void seekTo(long target) {
+        if (history.restore(target, snapshot) == -1) {
+            Log.add("No snapshot at or before tick " + target);
+            return;
+        }
+        
+        if (!restore(snapshot)) {
+            Log.add("Snapshot at or before tick " + target + " predates a noise model change");
+            history.clear();
+            return;
+        }
+        
+        pendingTime = 0;
+        
+        while (tick < target)
+            fireNext(false);
+    }
+    
+    @Override public void saveState(StateCursor c) {
+        c.putLong(tick);
+        c.putDouble(Clock.simulationTime());
+        NoiseGenerator.saveState(c);
+        scheduler.saveState(c);
+        
         for (Simulant obj : objects)
-            obj.update(Clock.simulationTime());
+            obj.saveState(c);
+    }
+    
+    @Override public void restoreState(StateCursor c) {
+        if (!restore(c))
+            throw new IllegalStateException("Snapshot predates a noise model change");
+    }
+    
+    /**
+     * Restore a snapshot, unless the noise models it was taken with have been replaced. The
+     * noise is checked before anything else is restored, so a refused snapshot changes nothing
+     * 
+     * @param c Snapshot
+     * @return If the snapshot was restored
+     */
+    private boolean restore(StateCursor c) {
+        long t = c.getLong();
+        double time = c.getDouble();
+        
+        if (!NoiseGenerator.restoreState(c))
+            return false;
+        
+        tick = t;
+        Clock.setSimulationTime(time);
+        scheduler.restoreState(c);
+        
+        for (Simulant obj : objects)
+            obj.restoreState(c);
+        
+        return true;
     }
 
     /**
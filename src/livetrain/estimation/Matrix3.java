@@ -0,0 +1,93 @@
+package livetrain.estimation;
+
+/**
+ * Kernels on 3x3 matrices stored row-major in nine-element arrays. Results are written to a
+ * caller-supplied array, which must not be one of the operands, so that filtering never
+ * allocates. Unlike elusive.math.Matrix, nothing here is sized or checked at run time
+ */
+public class Matrix3 {
+    private Matrix3() {}
+
+    /**
+     * @param m Filled with the identity
+     */
+    public static void identity(double[] m) {
+        for (int i = 0; i < 9; i++)
+            m[i] = i % 4 == 0 ? 1 : 0;
+    }
+
+    /**
+     * @param a Left operand
+     * @param b Right operand
+     * @param out Filled with a b
+     */
+    public static void multiply(double[] a, double[] b, double[] out) {
+        for (int r = 0; r < 3; r++) {
+            double a0 = a[r * 3], a1 = a[r * 3 + 1], a2 = a[r * 3 + 2];
+
+            out[r * 3] = a0 * b[0] + a1 * b[3] + a2 * b[6];
+            out[r * 3 + 1] = a0 * b[1] + a1 * b[4] + a2 * b[7];
+            out[r * 3 + 2] = a0 * b[2] + a1 * b[5] + a2 * b[8];
+        }
+    }
+
+    /**
+     * @param a Left operand
+     * @param b Right operand, transposed
+     * @param out Filled with a b^T
+     */
+    public static void multiplyTransposed(double[] a, double[] b, double[] out) {
+        for (int r = 0; r < 3; r++) {
+            double a0 = a[r * 3], a1 = a[r * 3 + 1], a2 = a[r * 3 + 2];
+
+            out[r * 3] = a0 * b[0] + a1 * b[1] + a2 * b[2];
+            out[r * 3 + 1] = a0 * b[3] + a1 * b[4] + a2 * b[5];
+            out[r * 3 + 2] = a0 * b[6] + a1 * b[7] + a2 * b[8];
+        }
+    }
+
+    /**
+     * Invert by the adjugate
+     *
+     * @param m Matrix
+     * @param out Filled with the inverse
+     * @return False, leaving out untouched, if the matrix is singular
+     */
+    public static boolean invert(double[] m, double[] out) {
+        double c0 = m[4] * m[8] - m[5] * m[7];
+        double c1 = m[5] * m[6] - m[3] * m[8];
+        double c2 = m[3] * m[7] - m[4] * m[6];
+        double det = m[0] * c0 + m[1] * c1 + m[2] * c2;
+
+        if (det == 0 || Double.isNaN(det))
+            return false;
+
+        double inv = 1 / det;
+
+        out[0] = c0 * inv;
+        out[1] = (m[2] * m[7] - m[1] * m[8]) * inv;
+        out[2] = (m[1] * m[5] - m[2] * m[4]) * inv;
+        out[3] = c1 * inv;
+        out[4] = (m[0] * m[8] - m[2] * m[6]) * inv;
+        out[5] = (m[2] * m[3] - m[0] * m[5]) * inv;
+        out[6] = c2 * inv;
+        out[7] = (m[1] * m[6] - m[0] * m[7]) * inv;
+        out[8] = (m[0] * m[4] - m[1] * m[3]) * inv;
+
+        return true;
+    }
+
+    /**
+     * Average a matrix with its transpose in place, which keeps a covariance symmetric against
+     * rounding
+     *
+     * @param m Matrix
+     */
+    public static void symmetrize(double[] m) {
+        double a = (m[1] + m[3]) / 2, b = (m[2] + m[6]) / 2, c = (m[5] + m[7]) / 2;
+
+        m[1] = m[3] = a;
+        m[2] = m[6] = b;
+        m[5] = m[7] = c;
+    }
+}
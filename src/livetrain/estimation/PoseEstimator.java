@@ -0,0 +1,294 @@
+package livetrain.estimation;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Extended Kalman filter over the pose <x, y, heading>. Wheel odometry drives the prediction, and
+ * absolute heading (from an IMU) and absolute pose measurements correct it whenever they arrive.
+ * Odometry error grows with the distance travelled and the angle turned, so the estimate drifts
+ * between corrections as a real robot's would
+ * <p>
+ * The state and its covariance live in fixed arrays, the covariance row-major, and every step
+ * runs on {@link Matrix3} kernels with preallocated scratch, so filtering at the physics rate
+ * does not allocate. The heading is not wrapped, matching the simulated pose; only innovations are
+ */
+public class PoseEstimator implements Stateful {
+    public static final double DEFAULT_TRANSLATION_NOISE = 0.02, DEFAULT_ROTATION_NOISE = 0.02;
+    public static final double DEFAULT_POSE_DEVIATION = 1, DEFAULT_IMU_DEVIATION = 0.005;
+
+    private double translationNoise = DEFAULT_TRANSLATION_NOISE, rotationNoise = DEFAULT_ROTATION_NOISE;
+    private double poseDeviation = DEFAULT_POSE_DEVIATION, poseHeadingDeviation = 0.05;
+    private double imuDeviation = DEFAULT_IMU_DEVIATION;
+    private boolean initialized = false;
+
+    private final double[] state = new double[3], covariance = new double[9];
+    private final double[] jacobian = new double[9], scratch = new double[9];
+    private final double[] innovationCovariance = new double[9], gain = new double[9];
+
+    /**
+     * @return If the filter has a pose to work from
+     */
+    public synchronized boolean initialized() { return initialized; }
+
+    /**
+     * @return Estimated x
+     */
+    public synchronized double x() { return state[0]; }
+
+    /**
+     * @return Estimated y
+     */
+    public synchronized double y() { return state[1]; }
+
+    /**
+     * @return Estimated heading
+     */
+    public synchronized double heading() { return state[2]; }
+
+    /**
+     * @return Standard deviation of the position estimate, combined over both axes
+     */
+    public synchronized double positionDeviation() { return Math.sqrt(covariance[0] + covariance[4]); }
+
+    /**
+     * @return Standard deviation of the heading estimate
+     */
+    public synchronized double headingDeviation() { return Math.sqrt(covariance[8]); }
+
+    /**
+     * @return Odometry position error per unit of distance travelled, as a standard deviation
+     */
+    public double translationNoise() { return translationNoise; }
+
+    /**
+     * @param k Odometry position error per unit of distance travelled, as a standard deviation
+     */
+    public synchronized void setTranslationNoise(double k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Noise must not be negative");
+
+        translationNoise = k;
+        Log.add("Set PoseEstimator.translationNoise", "" + k);
+    }
+
+    /**
+     * @return Odometry heading error per radian turned, as a standard deviation
+     */
+    public double rotationNoise() { return rotationNoise; }
+
+    /**
+     * @param k Odometry heading error per radian turned, as a standard deviation
+     */
+    public synchronized void setRotationNoise(double k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Noise must not be negative");
+
+        rotationNoise = k;
+        Log.add("Set PoseEstimator.rotationNoise", "" + k);
+    }
+
+    /**
+     * @return Standard deviation of absolute position measurements
+     */
+    public double poseDeviation() { return poseDeviation; }
+
+    /**
+     * @return Standard deviation of the heading of absolute pose measurements
+     */
+    public double poseHeadingDeviation() { return poseHeadingDeviation; }
+
+    /**
+     * @param position Standard deviation of absolute position measurements
+     * @param heading Standard deviation of the heading of absolute pose measurements
+     */
+    public synchronized void setPoseDeviation(double position, double heading) {
+        if (position <= 0 || heading <= 0)
+            throw new IllegalArgumentException("Deviations must be positive");
+
+        poseDeviation = position;
+        poseHeadingDeviation = heading;
+        Log.add("Set PoseEstimator.poseDeviation", position + ", " + heading);
+    }
+
+    /**
+     * @return Standard deviation of IMU heading measurements
+     */
+    public double imuDeviation() { return imuDeviation; }
+
+    /**
+     * @param sigma Standard deviation of IMU heading measurements
+     */
+    public synchronized void setImuDeviation(double sigma) {
+        if (sigma <= 0)
+            throw new IllegalArgumentException("Deviation must be positive");
+
+        imuDeviation = sigma;
+        Log.add("Set PoseEstimator.imuDeviation", "" + sigma);
+    }
+
+    /**
+     * Forget the estimate. The next pose measurement starts the filter afresh
+     */
+    public synchronized void reset() {
+        initialized = false;
+    }
+
+    /**
+     * Start the filter at a pose with the uncertainty of a pose measurement
+     *
+     * @param x X
+     * @param y Y
+     * @param heading Heading
+     */
+    public synchronized void initialize(double x, double y, double heading) {
+        state[0] = x;
+        state[1] = y;
+        state[2] = heading;
+
+        for (int i = 0; i < 9; i++)
+            covariance[i] = 0;
+
+        covariance[0] = covariance[4] = poseDeviation * poseDeviation;
+        covariance[8] = poseHeadingDeviation * poseHeadingDeviation;
+        initialized = true;
+    }
+
+    /**
+     * Advance the estimate by an odometry twist held over a step, at the heading halfway through
+     * the step
+     *
+     * @param twist Body-frame <axial, lateral, heading rate> measured by the wheels
+     * @param dt Step
+     */
+    public synchronized void predict(double[] twist, double dt) {
+        if (!initialized || dt <= 0)
+            return;
+
+        double vx = twist[0], vy = twist[1], omega = twist[2];
+        double mid = state[2] + omega * dt / 2;
+        double cos = Math.cos(mid), sin = Math.sin(mid);
+        double dx = (vx * cos - vy * sin) * dt, dy = (vx * sin + vy * cos) * dt;
+
+        state[0] += dx;
+        state[1] += dy;
+        state[2] += omega * dt;
+
+        // Only the heading column of the Jacobian differs from the identity
+        Matrix3.identity(jacobian);
+        jacobian[2] = -dy;
+        jacobian[5] = dx;
+
+        Matrix3.multiply(jacobian, covariance, scratch);
+        Matrix3.multiplyTransposed(scratch, jacobian, covariance);
+
+        double translation = translationNoise * Math.hypot(dx, dy);
+        double rotation = rotationNoise * Math.abs(omega * dt);
+
+        covariance[0] += translation * translation;
+        covariance[4] += translation * translation;
+        covariance[8] += rotation * rotation;
+    }
+
+    /**
+     * Correct the estimate with an absolute heading
+     *
+     * @param heading Measured heading
+     */
+    public synchronized void correctHeading(double heading) {
+        if (!initialized)
+            return;
+
+        double innovation = wrap(heading - state[2]);
+        double s = covariance[8] + imuDeviation * imuDeviation;
+        double k0 = covariance[2] / s, k1 = covariance[5] / s, k2 = covariance[8] / s;
+
+        state[0] += k0 * innovation;
+        state[1] += k1 * innovation;
+        state[2] += k2 * innovation;
+
+        // P -= K H P, where H P is the heading row of P
+        double p6 = covariance[6], p7 = covariance[7], p8 = covariance[8];
+
+        covariance[0] -= k0 * p6;
+        covariance[1] -= k0 * p7;
+        covariance[2] -= k0 * p8;
+        covariance[3] -= k1 * p6;
+        covariance[4] -= k1 * p7;
+        covariance[5] -= k1 * p8;
+        covariance[6] -= k2 * p6;
+        covariance[7] -= k2 * p7;
+        covariance[8] -= k2 * p8;
+        Matrix3.symmetrize(covariance);
+    }
+
+    /**
+     * Correct the estimate with an absolute pose, or start the filter with it if it has none
+     *
+     * @param x Measured x
+     * @param y Measured y
+     * @param heading Measured heading
+     */
+    public synchronized void correctPose(double x, double y, double heading) {
+        if (!initialized) {
+            initialize(x, y, heading);
+            return;
+        }
+
+        double position = poseDeviation * poseDeviation;
+
+        for (int i = 0; i < 9; i++)
+            innovationCovariance[i] = covariance[i];
+
+        innovationCovariance[0] += position;
+        innovationCovariance[4] += position;
+        innovationCovariance[8] += poseHeadingDeviation * poseHeadingDeviation;
+
+        if (!Matrix3.invert(innovationCovariance, scratch))
+            return;
+
+        Matrix3.multiply(covariance, scratch, gain);
+
+        double e0 = x - state[0], e1 = y - state[1], e2 = wrap(heading - state[2]);
+
+        state[0] += gain[0] * e0 + gain[1] * e1 + gain[2] * e2;
+        state[1] += gain[3] * e0 + gain[4] * e1 + gain[5] * e2;
+        state[2] += gain[6] * e0 + gain[7] * e1 + gain[8] * e2;
+
+        Matrix3.multiply(gain, covariance, scratch);
+
+        for (int i = 0; i < 9; i++)
+            covariance[i] -= scratch[i];
+
+        Matrix3.symmetrize(covariance);
+    }
+
+    /**
+     * @param angle Angle
+     * @return Equivalent angle on [-pi, pi]
+     */
+    private static double wrap(double angle) {
+        return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putBoolean(initialized);
+
+        for (double s : state)
+            c.putDouble(s);
+
+        for (double p : covariance)
+            c.putDouble(p);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        initialized = c.getBoolean();
+
+        for (int i = 0; i < state.length; i++)
+            state[i] = c.getDouble();
+
+        for (int i = 0; i < covariance.length; i++)
+            covariance[i] = c.getDouble();
+    }
+}
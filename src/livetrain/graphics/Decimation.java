@@ -0,0 +1,128 @@
+package livetrain.graphics;
+
+/**
+ * Reduces a series to a bounded number of points for drawing, so that the cost of drawing a
+ * chart depends on its pixel width rather than on the number of samples it spans
+ */
+public class Decimation {
+    public enum Type { LTTB, MIN_MAX };
+
+    private Decimation() {}
+
+    /**
+     * Decimate a series
+     *
+     * @param type Method
+     * @param x Sample abscissae, increasing
+     * @param y Sample ordinates
+     * @param n Number of samples
+     * @param points Target number of points
+     * @param outX Decimated abscissae, filled
+     * @param outY Decimated ordinates, filled
+     * @return Number of points written
+     */
+    public static int decimate(Type type, double[] x, double[] y, int n, int points, double[] outX,
+            double[] outY) {
+        switch (type) {
+            case MIN_MAX:
+                return minMax(x, y, n, points / 2, outX, outY);
+
+            default:
+                return lttb(x, y, n, points, outX, outY);
+        }
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets. The first and last samples are kept and one sample is
+     * chosen from each bucket in between, the one forming the largest triangle with the previous
+     * choice and the average of the next bucket
+     */
+    public static int lttb(double[] x, double[] y, int n, int points, double[] outX, double[] outY) {
+        if (points >= n || points < 3)
+            return copy(x, y, n, outX, outY);
+
+        double every = (double)(n - 2) / (points - 2);
+        int a = 0, k = 0;
+
+        outX[k] = x[0];
+        outY[k++] = y[0];
+
+        for (int i = 0; i < points - 2; i++) {
+            int avgStart = (int)((i + 1) * every) + 1;
+            int avgEnd = Math.min((int)((i + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+
+            avgX /= avgEnd - avgStart;
+            avgY /= avgEnd - avgStart;
+
+            int start = (int)(i * every) + 1;
+            int end = (int)((i + 1) * every) + 1;
+            double maxArea = -1;
+            int chosen = start;
+
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+
+            outX[k] = x[chosen];
+            outY[k++] = y[chosen];
+            a = chosen;
+        }
+
+        outX[k] = x[n - 1];
+        outY[k++] = y[n - 1];
+
+        return k;
+    }
+
+    /**
+     * Per-bucket extremes. Each bucket contributes its minimum and maximum in the order they
+     * occur, so spikes survive decimation
+     */
+    public static int minMax(double[] x, double[] y, int n, int buckets, double[] outX, double[] outY) {
+        if (buckets * 2 >= n || buckets < 1)
+            return copy(x, y, n, outX, outY);
+
+        int k = 0;
+
+        for (int b = 0; b < buckets; b++) {
+            int start = (int)((long)b * n / buckets), end = (int)((long)(b + 1) * n / buckets);
+            int lo = start, hi = start;
+
+            for (int j = start + 1; j < end; j++) {
+                if (y[j] < y[lo])
+                    lo = j;
+
+                if (y[j] > y[hi])
+                    hi = j;
+            }
+
+            int first = Math.min(lo, hi), second = Math.max(lo, hi);
+            outX[k] = x[first];
+            outY[k++] = y[first];
+
+            if (second != first) {
+                outX[k] = x[second];
+                outY[k++] = y[second];
+            }
+        }
+
+        return k;
+    }
+
+    private static int copy(double[] x, double[] y, int n, double[] outX, double[] outY) {
+        System.arraycopy(x, 0, outX, 0, n);
+        System.arraycopy(y, 0, outY, 0, n);
+        return n;
+    }
+}
@@ -0,0 +1,170 @@
+package livetrain.graphics;
+
+import livetrain.telemetry.Telemetry;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+
+/**
+ * Bounded history of a robot position drawn as a trail. Positions are kept in a fixed capacity
+ * ring and drawn in chunks; each full chunk is simplified with Douglas-Peucker into a path in
+ * world units once and cached, so drawing cost is bounded by the ring rather than the length of
+ * the run
+ */
+public class PoseTrail implements Telemetry.Sink {
+    public static final int CHUNK = 512, MAX_CHUNKS = 128, CAPACITY = CHUNK * MAX_CHUNKS;
+    public static final double MIN_SPACING = 0.05, TOLERANCE = 0.05;
+
+    private final Telemetry.Column xColumn, yColumn;
+    private final double[] xs = new double[CAPACITY], ys = new double[CAPACITY];
+    private long size = 0;
+    private double lastTime = Double.NEGATIVE_INFINITY;
+
+    // Simplified chunks, each tagged with the chunk it was built from
+    private final Path2D.Double[] paths = new Path2D.Double[MAX_CHUNKS];
+    private final long[] pathChunk = new long[MAX_CHUNKS];
+    private final Path2D.Double tail = new Path2D.Double();
+
+    // Douglas-Peucker scratch
+    private final boolean[] keep = new boolean[CHUNK + 1];
+    private final int[] stack = new int[2 * (CHUNK + 1)];
+
+    /**
+     * @param xColumn Column holding the x coordinate
+     * @param yColumn Column holding the y coordinate
+     */
+    public PoseTrail(Telemetry.Column xColumn, Telemetry.Column yColumn) {
+        this.xColumn = xColumn;
+        this.yColumn = yColumn;
+
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            paths[i] = new Path2D.Double();
+            pathChunk[i] = -1;
+        }
+    }
+
+    @Override public synchronized void accept(double[] row) {
+        double t = row[Telemetry.Column.TIME.ordinal()];
+        double x = row[xColumn.ordinal()], y = row[yColumn.ordinal()];
+
+        if (t < lastTime)
+            clear();
+
+        lastTime = t;
+
+        if (Double.isNaN(x) || Double.isNaN(y))
+            return;
+
+        // Points closer together than the spacing carry nothing visible
+        if (size > 0) {
+            int last = (int)((size - 1) % CAPACITY);
+            double dx = x - xs[last], dy = y - ys[last];
+
+            if (dx * dx + dy * dy < MIN_SPACING * MIN_SPACING)
+                return;
+        }
+
+        int i = (int)(size++ % CAPACITY);
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    /**
+     * Discard the trail
+     */
+    public synchronized void clear() {
+        size = 0;
+        lastTime = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < MAX_CHUNKS; i++)
+            pathChunk[i] = -1;
+    }
+
+    /**
+     * Draw the trail. The surface's transform should map world units to pixels
+     *
+     * @param g2d Graphics surface
+     */
+    public synchronized void draw(Graphics2D g2d) {
+        if (size < 2)
+            return;
+
+        // Chunk c spans points c * CHUNK through (c + 1) * CHUNK inclusive, so chunks join up
+        long oldest = (Math.max(0, size - CAPACITY) + CHUNK - 1) / CHUNK;
+        long complete = (size - 1) / CHUNK;
+
+        for (long c = oldest; c < complete; c++) {
+            int slot = (int)(c % MAX_CHUNKS);
+
+            if (pathChunk[slot] != c) {
+                simplify(c * CHUNK, paths[slot]);
+                pathChunk[slot] = c;
+            }
+
+            g2d.draw(paths[slot]);
+        }
+
+        // The open chunk changes every tick, so it is drawn unsimplified
+        long start = Math.max(complete * CHUNK, size - CAPACITY);
+        tail.reset();
+        tail.moveTo(xs[(int)(start % CAPACITY)], ys[(int)(start % CAPACITY)]);
+
+        for (long p = start + 1; p < size; p++)
+            tail.lineTo(xs[(int)(p % CAPACITY)], ys[(int)(p % CAPACITY)]);
+
+        g2d.draw(tail);
+    }
+
+    /**
+     * Douglas-Peucker over one chunk into a path, iteratively so no stack frames or lists are
+     * allocated
+     */
+    private void simplify(long first, Path2D.Double path) {
+        int n = CHUNK + 1, top = 0;
+
+        for (int i = 0; i < n; i++)
+            keep[i] = false;
+
+        keep[0] = keep[n - 1] = true;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0) {
+            int b = stack[--top], a = stack[--top];
+            double ax = x(first + a), ay = y(first + a);
+            double dx = x(first + b) - ax, dy = y(first + b) - ay;
+            double len = Math.hypot(dx, dy);
+            double worst = -1;
+            int index = -1;
+
+            for (int i = a + 1; i < b; i++) {
+                double px = x(first + i) - ax, py = y(first + i) - ay;
+                double d = len == 0 ? Math.hypot(px, py) : Math.abs(px * dy - py * dx) / len;
+
+                if (d > worst) {
+                    worst = d;
+                    index = i;
+                }
+            }
+
+            if (index != -1 && worst > TOLERANCE) {
+                keep[index] = true;
+                stack[top++] = a;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = b;
+            }
+        }
+
+        path.reset();
+        path.moveTo(x(first), y(first));
+
+        for (int i = 1; i < n; i++)
+            if (keep[i])
+                path.lineTo(x(first + i), y(first + i));
+    }
+
+    private double x(long p) { return xs[(int)(p % CAPACITY)]; }
+
+    private double y(long p) { return ys[(int)(p % CAPACITY)]; }
+}
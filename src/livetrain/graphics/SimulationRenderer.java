@@ -7,16 +7,23 @@ import elusive.trajectory.Trajectory;
 import livetrain.Clock;
 import livetrain.Util;
 import livetrain.Simulation;
+import livetrain.metrics.Metrics;
+import livetrain.metrics.RenderFrameEvent;
+import livetrain.metrics.Watchdog;
 import livetrain.physics.Simulant;
 import livetrain.robot.Drivetrain;
 import livetrain.robot.Robot;
+import livetrain.telemetry.Telemetry;
 import livetrain.ui.SimulationUI;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
 import java.util.Locale;
 import javax.swing.JPanel;
@@ -30,6 +37,9 @@ public class SimulationRenderer extends JPanel {
     public static final Color AXES_COLOR = new Color(100, 100, 100);
     public static final Color PATH_COLOR = new Color(129, 196, 252);
     public static final Color NOISE_COLOR = new Color(252, 249, 222);
+    public static final Color ACTUAL_TRAIL_COLOR = new Color(204, 71, 71, 160);
+    public static final Color ESTIMATED_TRAIL_COLOR = new Color(252, 249, 222, 110);
+    public static final BasicStroke TRAIL_STROKE = new BasicStroke(0);
     public static final double MAX_ARC_LENGTH = 10000;
     public static final double INITIAL_ASPECT_RATIO = 16 / 9.0;
     public static final int CANVAS_HEIGHT = 563;
@@ -39,10 +49,26 @@ public class SimulationRenderer extends JPanel {
     private int axisTickSize = 5;
     private int telemetryLineHeight = 13;
     private boolean wrnSegmentRenderingProblem = false;
+    private volatile boolean showTrails = true;
+    private PoseTrail actualTrail = new PoseTrail(Telemetry.Column.X, Telemetry.Column.Y);
+    private PoseTrail estimatedTrail = new PoseTrail(Telemetry.Column.EST_X, Telemetry.Column.EST_Y);
+    private AffineTransform worldTransform = new AffineTransform();
     
     private SimulationRenderer() {
         setPreferredSize(new Dimension(CANVAS_WIDTH, CANVAS_HEIGHT));
+        Simulation.instance().telemetry().addSink(actualTrail);
+        Simulation.instance().telemetry().addSink(estimatedTrail);
     }
+    
+    /**
+     * @return If the actual and estimated pose trails are drawn
+     */
+    public boolean showTrails() { return showTrails; }
+    
+    /**
+     * @param show If the actual and estimated pose trails should be drawn
+     */
+    public void setShowTrails(boolean show) { showTrails = show; }
 
     /**
      * Repeated rendering method
@@ -50,6 +76,12 @@ public class SimulationRenderer extends JPanel {
      * @param g Graphics surface
      */
     @Override public void paintComponent(Graphics g) {
+        long mark = Metrics.start();
+        RenderFrameEvent event = RenderFrameEvent.TYPE.isEnabled() ? new RenderFrameEvent() : null;
+        
+        if (event != null)
+            event.begin();
+        
         Graphics2D g2d = (Graphics2D)g;
 
          // Paint the background
@@ -89,6 +121,10 @@ public class SimulationRenderer extends JPanel {
          
          // Draw waypoints
          drawWaypoints(g2d, SimulationUI.instance().waypoints());
+         
+         // Draw pose trails
+         if (showTrails)
+             drawTrails(g2d);
 
          // Draw simulation objects
          for (Simulant obj : Simulation.instance().objects())
@@ -105,6 +141,17 @@ public class SimulationRenderer extends JPanel {
          if (wrnSegmentRenderingProblem)
              warnings.add("Warning: One or more trajectory segments failed to render");
          
+         if (!Simulation.instance().keepingUp())
+             warnings.add(String.format(Locale.getDefault(), "Warning: Simulation cannot keep up "
+                     + "(%.0f%% of %.0f%% requested speed)", Simulation.instance().effectiveSpeed() * 100,
+                     Clock.simulationSpeed() * 100));
+         
+         Watchdog.Overrun overrun = Simulation.instance().watchdog().recentOverrun(Clock.timestamp());
+         
+         if (overrun != null)
+             warnings.add(String.format(Locale.getDefault(), "Warning: Simulation update overran its "
+                     + "deadline (%s, %d total)", overrun, Simulation.instance().watchdog().total()));
+         
          String[] telemetry = warnings.toArray(new String[0]);
          
          g2d.setColor(Color.RED);
@@ -126,8 +173,7 @@ public class SimulationRenderer extends JPanel {
                      robot.yState.x, Math.toDegrees(robot.thetaState.x)),
              String.format(Locale.getDefault(), "Robot velocity: <%.2f, %.2f, %.2f °/s>",
                      robot.xState.v, robot.yState.v, Math.toDegrees(robot.thetaState.v)),
-             String.format(Locale.getDefault(), "Drivetrain powers: {%.2f, %.2f, %.2f, %.2f}",
-                     dt.power(0), dt.power(1), dt.power(2), dt.power(3)),
+             "Drivetrain powers: " + formatPowers(dt.powers()),
          };
     
          g2d.setColor(Simulation.robot().color());
@@ -154,7 +200,24 @@ public class SimulationRenderer extends JPanel {
          
          g2d.setColor(NOISE_COLOR);
          drawTelemetry(g2d, telemetry, ybuffer);
-
+         ybuffer += telemetryLineHeight * (telemetry.length + 1);
+         
+         // Metrics telemetry
+         if (Metrics.overlay()) {
+             telemetry = Metrics.summary();
+             g2d.setColor(AXES_COLOR);
+             drawTelemetry(g2d, telemetry, ybuffer);
+         }
+         
+         Metrics.stop(Metrics.Phase.RENDER, mark);
+         
+         if (event != null) {
+             event.width = getWidth();
+             event.height = getHeight();
+             event.objects = Simulation.instance().objects().size();
+             event.commit();
+         }
+         
          repaint();
     }
 
@@ -176,6 +239,30 @@ public class SimulationRenderer extends JPanel {
                     (int)(pose.y() * Simulation.pixelsPerUnit) - offset, diam, diam);
     }
 
+    /**
+     * Draw the actual and estimated pose trails, which are kept in world units, through a
+     * transform to the canvas. A zero width stroke keeps lines one pixel wide under the scale
+     * 
+     * @param g2d Graphics surface
+     */
+    private void drawTrails(Graphics2D g2d) {
+        AffineTransform saveTransform = g2d.getTransform();
+        Stroke saveStroke = g2d.getStroke();
+        double ppu = Simulation.pixelsPerUnit;
+        
+        worldTransform.setTransform(ppu, 0, 0, -ppu, 0, getHeight());
+        g2d.transform(worldTransform);
+        g2d.setStroke(TRAIL_STROKE);
+        
+        g2d.setColor(ESTIMATED_TRAIL_COLOR);
+        estimatedTrail.draw(g2d);
+        g2d.setColor(ACTUAL_TRAIL_COLOR);
+        actualTrail.draw(g2d);
+        
+        g2d.setTransform(saveTransform);
+        g2d.setStroke(saveStroke);
+    }
+    
     /**
      * Draw a trajectory to a surface
      * 
@@ -239,6 +326,19 @@ public class SimulationRenderer extends JPanel {
         }
     }
 
+    /**
+     * @param powers Wheel powers
+     * @return Powers to two decimals, in braces
+     */
+    private static String formatPowers(double[] powers) {
+        StringBuilder sb = new StringBuilder("{");
+
+        for (int i = 0; i < powers.length; i++)
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.getDefault(), "%.2f", powers[i]));
+
+        return sb.append('}').toString();
+    }
+
     /**
      * @return Singleton
      */
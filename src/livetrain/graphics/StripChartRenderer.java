@@ -0,0 +1,232 @@
+package livetrain.graphics;
+
+import livetrain.telemetry.Telemetry;
+import livetrain.telemetry.TelemetryRing;
+import livetrain.telemetry.TelemetryStore;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.util.Locale;
+import javax.swing.JPanel;
+
+/**
+ * Scrolling charts of telemetry columns against simulation time. Recent windows are read from a
+ * ring of raw rows and decimated to the chart's pixel width; the whole run is read from the
+ * telemetry store's downsampled levels
+ */
+public class StripChartRenderer extends JPanel {
+    public static final Color ZERO_COLOR = new Color(60, 60, 60);
+    public static final Color TEXT_COLOR = new Color(200, 200, 200);
+    public static final int MARGIN = 4, LINE_HEIGHT = 13;
+    public static final double MIN_RANGE = 1e-3;
+
+    /**
+     * A chart of several columns sharing one vertical scale
+     */
+    public static class Chart {
+        private final String title;
+        private final Telemetry.Column[] columns;
+        private final Color[] colors;
+        private final String[] labels;
+
+        /**
+         * @param title Chart title
+         * @param columns Plotted columns
+         * @param colors Color of each column
+         * @param labels Legend label of each column
+         */
+        public Chart(String title, Telemetry.Column[] columns, Color[] colors, String[] labels) {
+            this.title = title;
+            this.columns = columns;
+            this.colors = colors;
+            this.labels = labels;
+        }
+    }
+
+    private final Chart[] charts;
+    private final TelemetryRing ring;
+    private final TelemetryStore store;
+    private volatile double window = 10;
+    private volatile Decimation.Type decimation = Decimation.Type.LTTB;
+
+    // Scratch buffers, grown with the widest chart seen and then reused
+    private final double[] rawTime, rawValues;
+    private double[] storeTime = new double[0], storeMin = new double[0], storeMax = new double[0];
+    private double[] storeMean = new double[0];
+    private double[][] pointX, pointY;
+    private int[] pixelX = new int[0], pixelY = new int[0];
+    private int[] counts;
+
+    /**
+     * @param charts Charts, stacked top to bottom
+     * @param ring Source of recent rows
+     * @param store Source of the whole run
+     */
+    public StripChartRenderer(Chart[] charts, TelemetryRing ring, TelemetryStore store) {
+        this.charts = charts;
+        this.ring = ring;
+        this.store = store;
+        rawTime = new double[ring.capacity()];
+        rawValues = new double[ring.capacity()];
+
+        int series = 0;
+
+        for (Chart c : charts)
+            series = Math.max(series, c.columns.length);
+
+        pointX = new double[series][0];
+        pointY = new double[series][0];
+        counts = new int[series];
+        setBackground(SimulationRenderer.BACKGROUND_COLOR);
+        setPreferredSize(new Dimension(480, 360));
+    }
+
+    /**
+     * @param w Seconds of simulation time shown, or infinity for the whole run
+     */
+    public void setWindow(double w) { window = w; }
+
+    /**
+     * @param d Decimation applied to recent windows
+     */
+    public void setDecimation(Decimation.Type d) { decimation = d; }
+
+    @Override public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D)g;
+
+        int width = getWidth() - 2 * MARGIN;
+        int height = getHeight() / charts.length;
+
+        if (width < 2 || height < 2 * LINE_HEIGHT)
+            return;
+
+        ensureCapacity(width);
+
+        for (int i = 0; i < charts.length; i++)
+            drawChart(g2d, charts[i], MARGIN, i * height, width, height);
+    }
+
+    /**
+     * Grow the point buffers to fit a pixel width
+     */
+    private void ensureCapacity(int width) {
+        int points = 2 * width;
+
+        if (pixelX.length >= points)
+            return;
+
+        for (int s = 0; s < pointX.length; s++) {
+            pointX[s] = new double[points];
+            pointY[s] = new double[points];
+        }
+
+        pixelX = new int[points];
+        pixelY = new int[points];
+        storeTime = new double[width];
+        storeMin = new double[width];
+        storeMax = new double[width];
+        storeMean = new double[width];
+    }
+
+    private void drawChart(Graphics2D g, Chart chart, int x, int y, int width, int height) {
+        double w = window;
+        boolean whole = Double.isInfinite(w);
+        double t1 = whole ? store.newestTime() : ring.newestTime();
+        double t0 = whole ? store.oldestTime() : t1 - w;
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+
+        // Gather decimated points for every series and the shared vertical range
+        for (int s = 0; s < chart.columns.length; s++) {
+            counts[s] = Double.isNaN(t1) ? 0 : (whole ? readStore(chart.columns[s], t0, t1, s, width)
+                    : readRing(chart.columns[s], t0, s, width));
+
+            for (int k = 0; k < counts[s]; k++) {
+                lo = Math.min(lo, pointY[s][k]);
+                hi = Math.max(hi, pointY[s][k]);
+            }
+        }
+
+        int top = y + LINE_HEIGHT + 2, bottom = y + height - 2;
+
+        g.setColor(TEXT_COLOR);
+        g.drawString(chart.title, x, y + LINE_HEIGHT);
+
+        if (lo > hi)
+            return;
+
+        // Pad the range and keep zero centred when the data straddles it
+        if (hi - lo < MIN_RANGE) {
+            lo -= MIN_RANGE / 2;
+            hi += MIN_RANGE / 2;
+        }
+
+        double pad = (hi - lo) * 0.1;
+        lo -= pad;
+        hi += pad;
+
+        if (lo < 0 && hi > 0) {
+            g.setColor(ZERO_COLOR);
+            int zero = toPixel(0, lo, hi, bottom, top);
+            g.drawLine(x, zero, x + width, zero);
+        }
+
+        double span = Math.max(t1 - t0, 1e-9);
+
+        for (int s = 0; s < chart.columns.length; s++) {
+            for (int k = 0; k < counts[s]; k++) {
+                pixelX[k] = x + (int)Math.round((pointX[s][k] - t0) / span * width);
+                pixelY[k] = toPixel(pointY[s][k], lo, hi, bottom, top);
+            }
+
+            g.setColor(chart.colors[s]);
+            g.drawPolyline(pixelX, pixelY, counts[s]);
+        }
+
+        // Legend and scale
+        int legendX = x + g.getFontMetrics().stringWidth(chart.title) + 12;
+
+        for (int s = 0; s < chart.columns.length; s++) {
+            g.setColor(chart.colors[s]);
+            g.drawString(chart.labels[s], legendX, y + LINE_HEIGHT);
+            legendX += g.getFontMetrics().stringWidth(chart.labels[s]) + 10;
+        }
+
+        g.setColor(TEXT_COLOR);
+        String range = String.format(Locale.getDefault(), "[%.3g, %.3g] over %.1fs", lo, hi, t1 - t0);
+        g.drawString(range, x + width - g.getFontMetrics().stringWidth(range), y + LINE_HEIGHT);
+    }
+
+    private int readRing(Telemetry.Column column, double since, int s, int width) {
+        int n = ring.copy(column, since, rawTime, rawValues);
+        return Decimation.decimate(decimation, rawTime, rawValues, n, width, pointX[s], pointY[s]);
+    }
+
+    /**
+     * Read the store at about one entry per pixel. With min/max decimation each entry contributes
+     * its extremes, otherwise its mean
+     */
+    private int readStore(Telemetry.Column column, double t0, double t1, int s, int width) {
+        int n = store.query(column, t0, t1, storeTime, storeMin, storeMax, storeMean);
+
+        if (decimation != Decimation.Type.MIN_MAX) {
+            System.arraycopy(storeTime, 0, pointX[s], 0, n);
+            System.arraycopy(storeMean, 0, pointY[s], 0, n);
+            return n;
+        }
+
+        for (int k = 0; k < n; k++) {
+            pointX[s][2 * k] = pointX[s][2 * k + 1] = storeTime[k];
+            pointY[s][2 * k] = storeMin[k];
+            pointY[s][2 * k + 1] = storeMax[k];
+        }
+
+        return 2 * n;
+    }
+
+    private static int toPixel(double v, double lo, double hi, int bottom, int top) {
+        return bottom - (int)Math.round((v - lo) / (hi - lo) * (bottom - top));
+    }
+}
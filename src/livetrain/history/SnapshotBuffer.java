@@ -0,0 +1,221 @@
+package livetrain.history;
+
+import java.util.Arrays;
+
+/**
+ * Bounded ring of state snapshots keyed by simulation tick. Each snapshot is stored as the XOR
+ * of its words against the previous snapshot, with leading zero bytes dropped, and a full
+ * keyframe is stored at a fixed interval so any snapshot can be rebuilt from a short chain. When
+ * the ring is full the oldest keyframe group is evicted
+ */
+public class SnapshotBuffer {
+    private final int capacity, keyframeInterval;
+    private final byte[][] entries;
+    private final long[] ticks;
+    private final boolean[] keyframes;
+    private final int[] lengths;
+    private long oldest = 0, newest = -1, sinceKeyframe = 0;
+    private long[] last = new long[0], scratch = new long[0];
+    private int lastLength = 0;
+    private byte[] encodeBuffer = new byte[0];
+
+    /**
+     * @param capacity Maximum number of snapshots retained
+     * @param keyframeInterval Number of snapshots per keyframe
+     */
+    public SnapshotBuffer(int capacity, int keyframeInterval) {
+        if (capacity < keyframeInterval || keyframeInterval < 1)
+            throw new IllegalArgumentException("Capacity must hold at least one keyframe group");
+
+        this.capacity = capacity;
+        this.keyframeInterval = keyframeInterval;
+        entries = new byte[capacity][];
+        ticks = new long[capacity];
+        keyframes = new boolean[capacity];
+        lengths = new int[capacity];
+    }
+
+    /**
+     * @return If no snapshots are retained
+     */
+    public synchronized boolean isEmpty() { return newest < oldest; }
+
+    /**
+     * @return Tick of the oldest retained snapshot, or -1 if there is none
+     */
+    public synchronized long oldestTick() { return isEmpty() ? -1 : ticks[slot(oldest)]; }
+
+    /**
+     * @return Tick of the newest retained snapshot, or -1 if there is none
+     */
+    public synchronized long newestTick() { return isEmpty() ? -1 : ticks[slot(newest)]; }
+
+    /**
+     * @return Number of retained snapshots
+     */
+    public synchronized int size() { return (int)(newest - oldest + 1); }
+
+    /**
+     * @return Bytes held by encoded snapshots
+     */
+    public synchronized long encodedBytes() {
+        long n = 0;
+
+        for (long i = oldest; i <= newest; i++)
+            n += entries[slot(i)].length;
+
+        return n;
+    }
+
+    /**
+     * Drop every snapshot
+     */
+    public synchronized void clear() {
+        oldest = 0;
+        newest = -1;
+        sinceKeyframe = 0;
+        lastLength = 0;
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * Store a snapshot. Any retained snapshots at or after the tick belong to a timeline that has
+     * been rewound and are discarded first
+     *
+     * @param tick Simulation tick
+     * @param state State vector
+     */
+    public synchronized void record(long tick, StateCursor state) {
+        // Branch off a rewound timeline
+        if (!isEmpty() && ticks[slot(newest)] >= tick) {
+            while (newest >= oldest && ticks[slot(newest)] >= tick)
+                entries[slot(newest--)] = null;
+
+            if (isEmpty()) {
+                lastLength = 0;
+                sinceKeyframe = 0;
+            } else {
+                lastLength = decode(newest);
+                copyToLast(scratch, lastLength);
+                sinceKeyframe = newest - keyframeIndex(newest);
+            }
+        }
+
+        // Evict the oldest group when the ring is full
+        long index = newest + 1;
+
+        if (index - oldest >= capacity) {
+            do
+                entries[slot(oldest++)] = null;
+            while (oldest <= newest && !keyframes[slot(oldest)]);
+        }
+
+        int len = state.length();
+        long[] words = state.words();
+        boolean keyframe = isEmpty() || len != lastLength || ++sinceKeyframe >= keyframeInterval;
+
+        if (keyframe)
+            sinceKeyframe = 0;
+
+        int s = slot(index);
+        entries[s] = encode(words, keyframe ? null : last, len);
+        ticks[s] = tick;
+        keyframes[s] = keyframe;
+        lengths[s] = len;
+        newest = index;
+        copyToLast(words, len);
+    }
+
+    /**
+     * Rebuild the newest snapshot taken at or before a tick
+     *
+     * @param tick Simulation tick
+     * @param dst Destination vector
+     * @return Tick of the restored snapshot, or -1 if none is retained that early
+     */
+    public synchronized long restore(long tick, StateCursor dst) {
+        long index = -1;
+
+        for (long i = newest; i >= oldest; i--)
+            if (ticks[slot(i)] <= tick) {
+                index = i;
+                break;
+            }
+
+        if (index == -1)
+            return -1;
+
+        int len = decode(index);
+        dst.load(scratch, len);
+
+        return ticks[slot(index)];
+    }
+
+    private void copyToLast(long[] words, int len) {
+        if (last.length < len)
+            last = new long[len];
+
+        System.arraycopy(words, 0, last, 0, len);
+        lastLength = len;
+    }
+
+    private int slot(long index) { return (int)(index % capacity); }
+
+    private long keyframeIndex(long index) {
+        while (!keyframes[slot(index)])
+            index--;
+
+        return index;
+    }
+
+    /**
+     * Rebuild a snapshot into the scratch vector by replaying deltas from its keyframe
+     *
+     * @return Number of words
+     */
+    private int decode(long index) {
+        int len = lengths[slot(index)];
+
+        if (scratch.length < len)
+            scratch = new long[len];
+
+        for (long i = keyframeIndex(index); i <= index; i++) {
+            byte[] entry = entries[slot(i)];
+            boolean keyframe = keyframes[slot(i)];
+            int pos = 0;
+
+            for (int w = 0; w < len; w++) {
+                int n = entry[pos++];
+                long x = 0;
+
+                for (int b = 0; b < n; b++)
+                    x |= (entry[pos++] & 0xFFL) << (8 * b);
+
+                scratch[w] = keyframe ? x : scratch[w] ^ x;
+            }
+        }
+
+        return len;
+    }
+
+    /**
+     * Write each word, XORed against its base, as a byte count followed by its significant bytes
+     */
+    private byte[] encode(long[] words, long[] base, int len) {
+        if (encodeBuffer.length < len * 9)
+            encodeBuffer = new byte[len * 9];
+
+        int pos = 0;
+
+        for (int w = 0; w < len; w++) {
+            long x = base == null ? words[w] : words[w] ^ base[w];
+            int n = (64 - Long.numberOfLeadingZeros(x) + 7) / 8;
+            encodeBuffer[pos++] = (byte)n;
+
+            for (int b = 0; b < n; b++)
+                encodeBuffer[pos++] = (byte)(x >>> (8 * b));
+        }
+
+        return Arrays.copyOf(encodeBuffer, pos);
+    }
+}
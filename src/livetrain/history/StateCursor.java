@@ -0,0 +1,93 @@
+package livetrain.history;
+
+import elusive.geometry.Pose2D;
+
+import java.util.Arrays;
+
+/**
+ * Sequential reader and writer over a flat vector of 64-bit words. Doubles are stored by their
+ * raw bits so that restored states are bit-for-bit identical
+ */
+public class StateCursor {
+    private long[] words;
+    private int position = 0, length = 0;
+
+    /**
+     * @param capacity Initial number of words
+     */
+    public StateCursor(int capacity) { words = new long[Math.max(capacity, 1)]; }
+
+    /**
+     * Move back to the start of the vector. Writing after a rewind replaces the vector
+     */
+    public void rewind() { position = 0; }
+
+    /**
+     * @return Number of words in the vector
+     */
+    public int length() { return length; }
+
+    /**
+     * @return Backing words. Only the first length() are meaningful
+     */
+    public long[] words() { return words; }
+
+    /**
+     * Replace the vector
+     *
+     * @param src Words
+     * @param len Number of words
+     */
+    public void load(long[] src, int len) {
+        ensureCapacity(len);
+        System.arraycopy(src, 0, words, 0, len);
+        length = len;
+        position = 0;
+    }
+
+    public void putLong(long v) {
+        ensureCapacity(position + 1);
+        words[position++] = v;
+        length = position;
+    }
+
+    public void putDouble(double v) { putLong(Double.doubleToRawLongBits(v)); }
+
+    public void putBoolean(boolean v) { putLong(v ? 1 : 0); }
+
+    /**
+     * @param p Pose, possibly null
+     */
+    public void putPose(Pose2D p) {
+        putBoolean(p != null);
+        putDouble(p == null ? 0 : p.x());
+        putDouble(p == null ? 0 : p.y());
+        putDouble(p == null ? 0 : p.heading());
+    }
+
+    public long getLong() {
+        if (position >= length)
+            throw new IllegalStateException("Read past the end of the state vector");
+
+        return words[position++];
+    }
+
+    public double getDouble() { return Double.longBitsToDouble(getLong()); }
+
+    public boolean getBoolean() { return getLong() != 0; }
+
+    /**
+     * @return Pose, possibly null
+     */
+    public Pose2D getPose() {
+        boolean present = getBoolean();
+        double x = getDouble(), y = getDouble(), heading = getDouble();
+
+        return present ? new Pose2D(x, y, heading) : null;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n > words.length)
+            words = Arrays.copyOf(words, Math.max(n, words.length * 2));
+    }
+}
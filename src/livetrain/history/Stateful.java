@@ -0,0 +1,21 @@
+package livetrain.history;
+
+/**
+ * An object whose complete dynamic state can be captured and later restored, so that the
+ * simulation can be rewound and replayed deterministically
+ */
+public interface Stateful {
+    /**
+     * Write the object's state
+     *
+     * @param c Destination
+     */
+    void saveState(StateCursor c);
+
+    /**
+     * Read the object's state back, in the same order it was written
+     *
+     * @param c Source
+     */
+    void restoreState(StateCursor c);
+}
@@ -0,0 +1,54 @@
+package livetrain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one trajectory follower update
+ */
+@Name("livetrain.FollowerUpdate")
+@Label("Follower Update")
+@Category({"Livetrain", "Control"})
+@Description("Trajectory follower computed drivetrain powers from the estimated pose")
+public class FollowerUpdateEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(FollowerUpdateEvent.class);
+
+    @Label("Simulation Time")
+    public double simulationTime;
+
+    @Label("Heading Error")
+    public double headingError;
+
+    @Label("Lateral Error")
+    public double lateralError;
+
+    @Label("Axial Error")
+    public double axialError;
+
+    @Label("Wheels")
+    public int wheels;
+
+    @Label("Power 0")
+    public double power0;
+
+    @Label("Power 1")
+    public double power1;
+
+    @Label("Power 2")
+    public double power2;
+
+    @Label("Power 3")
+    public double power3;
+
+    @Label("Power 4")
+    @Description("Zero on bases with fewer wheels")
+    public double power4;
+
+    @Label("Power 5")
+    @Description("Zero on bases with fewer wheels")
+    public double power5;
+}
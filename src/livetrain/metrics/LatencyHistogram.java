@@ -0,0 +1,108 @@
+package livetrain.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of nanosecond latencies. Values are bucketed by power of two,
+ * with each power split into equal sub-buckets, so percentiles carry a bounded relative error of
+ * about 3% across the full range while recording is a single atomic increment
+ */
+public class LatencyHistogram {
+    public static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+    /**
+     * @param nanos Latency, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+
+        long m;
+
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos));
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long count() { return count.get(); }
+
+    /**
+     * @return Mean latency in nanoseconds
+     */
+    public double mean() {
+        long n = count.get();
+
+        return n == 0 ? 0 : (double)total.get() / n;
+    }
+
+    /**
+     * @return Largest recorded latency in nanoseconds
+     */
+    public long max() { return max.get(); }
+
+    /**
+     * @param p Percentile on [0, 100]
+     * @return Upper bound of the bucket holding that percentile in nanoseconds
+     */
+    public long percentile(double p) {
+        long n = count.get();
+
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(p / 100 * n));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Discard every recorded value
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int index(long v) {
+        if (v < SUB_BUCKETS)
+            return (int)v;
+
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        int sub = (int)(v >>> shift) - SUB_BUCKETS;
+
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int i) {
+        if (i < SUB_BUCKETS)
+            return i;
+
+        int shift = i / SUB_BUCKETS - 1;
+        long sub = i % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((sub + 1) << shift) - 1;
+    }
+}
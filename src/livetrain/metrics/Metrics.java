@@ -0,0 +1,109 @@
+package livetrain.metrics;
+
+import java.util.Locale;
+
+/**
+ * Per-phase latency histograms for the simulation and render loops. Durations are measured with
+ * the JVM's nanosecond timer rather than the simulation's time source, since they describe real
+ * CPU cost even when simulated time is virtual
+ */
+public class Metrics {
+    public enum Phase {
+        UPDATE, EVENT, NOISE, FOLLOWER, KINEMATICS, INTEGRATION, RENDER, TRAJECTORY_BUILD, CONTROLLER_ROUND_TRIP,
+        MPC_SOLVE, ESTIMATION
+    };
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private volatile static boolean overlay = false;
+
+    static {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    private Metrics() {}
+
+    /**
+     * @return Start mark for a phase
+     */
+    public static long start() { return System.nanoTime(); }
+
+    /**
+     * Record a phase's duration
+     *
+     * @param phase Phase
+     * @param start Mark returned by start()
+     */
+    public static void stop(Phase phase, long start) { split(phase, start); }
+
+    /**
+     * Record a phase's duration and start the next one
+     *
+     * @param phase Phase
+     * @param start Mark returned by start()
+     * @return Start mark for the next phase
+     */
+    public static long split(Phase phase, long start) {
+        long now = System.nanoTime();
+        histograms[phase.ordinal()].record(now - start);
+
+        if (Tracer.enabled())
+            Tracer.record(phase.ordinal(), start, now);
+
+        return now;
+    }
+
+    /**
+     * @param phase Phase
+     * @return Latency histogram of that phase
+     */
+    public static LatencyHistogram histogram(Phase phase) { return histograms[phase.ordinal()]; }
+
+    /**
+     * Discard every recorded latency
+     */
+    public static void reset() {
+        for (LatencyHistogram h : histograms)
+            h.reset();
+    }
+
+    /**
+     * Begin recording every phase as a trace span
+     */
+    public static void startTrace() {
+        Phase[] phases = Phase.values();
+        String[] names = new String[phases.length];
+
+        for (int i = 0; i < phases.length; i++)
+            names[i] = phases[i].name();
+
+        Tracer.start(Tracer.DEFAULT_CAPACITY, names);
+    }
+
+    /**
+     * @return If the renderer should draw the metrics summary
+     */
+    public static boolean overlay() { return overlay; }
+
+    /**
+     * @param show If the renderer should draw the metrics summary
+     */
+    public static void setOverlay(boolean show) { overlay = show; }
+
+    /**
+     * @return One line per phase with its count and latency percentiles in microseconds
+     */
+    public static String[] summary() {
+        Phase[] phases = Phase.values();
+        String[] lines = new String[phases.length];
+
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram h = histograms[i];
+            lines[i] = String.format(Locale.getDefault(),
+                    "%s: n=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", phases[i], h.count(),
+                    h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                    h.max() / 1e3);
+        }
+
+        return lines;
+    }
+}
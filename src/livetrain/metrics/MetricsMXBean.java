@@ -0,0 +1,36 @@
+package livetrain.metrics;
+
+/**
+ * JMX view of the per-phase latency histograms. Latencies are in microseconds
+ */
+public interface MetricsMXBean {
+    /**
+     * @return One line per phase with its count and latency percentiles
+     */
+    String[] getSummary();
+
+    double getEventP50Micros();
+
+    double getEventP99Micros();
+
+    double getRenderP50Micros();
+
+    double getRenderP99Micros();
+
+    /**
+     * @return Update deadline overrun statistics
+     */
+    String[] getWatchdogReport();
+
+    /**
+     * @param phase Phase name
+     * @param percentile Percentile on [0, 100]
+     * @return Latency at that percentile
+     */
+    double percentileMicros(String phase, double percentile);
+
+    /**
+     * Discard every recorded latency
+     */
+    void reset();
+}
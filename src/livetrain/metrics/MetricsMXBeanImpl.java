@@ -0,0 +1,45 @@
+package livetrain.metrics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the per-phase latency histograms to the platform MBean server
+ */
+public class MetricsMXBeanImpl implements MetricsMXBean {
+    public static final String OBJECT_NAME = "livetrain:type=Metrics";
+
+    private final Watchdog watchdog;
+
+    private MetricsMXBeanImpl(Watchdog watchdog) { this.watchdog = watchdog; }
+
+    /**
+     * Register with the platform MBean server
+     *
+     * @param watchdog Watchdog whose report is published
+     * @throws JMException If registration fails
+     */
+    public static void register(Watchdog watchdog) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBeanImpl(watchdog),
+                new ObjectName(OBJECT_NAME));
+    }
+
+    @Override public String[] getSummary() { return Metrics.summary(); }
+
+    @Override public double getEventP50Micros() { return percentileMicros(Metrics.Phase.EVENT.name(), 50); }
+
+    @Override public double getEventP99Micros() { return percentileMicros(Metrics.Phase.EVENT.name(), 99); }
+
+    @Override public double getRenderP50Micros() { return percentileMicros(Metrics.Phase.RENDER.name(), 50); }
+
+    @Override public double getRenderP99Micros() { return percentileMicros(Metrics.Phase.RENDER.name(), 99); }
+
+    @Override public String[] getWatchdogReport() { return watchdog.report(); }
+
+    @Override public double percentileMicros(String phase, double percentile) {
+        return Metrics.histogram(Metrics.Phase.valueOf(phase)).percentile(percentile) / 1e3;
+    }
+
+    @Override public void reset() { Metrics.reset(); }
+}
@@ -0,0 +1,28 @@
+package livetrain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one paint of the simulation canvas
+ */
+@Name("livetrain.RenderFrame")
+@Label("Render Frame")
+@Category({"Livetrain", "Graphics"})
+@Description("Simulation canvas painted on the event dispatch thread")
+public class RenderFrameEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(RenderFrameEvent.class);
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Simulation Objects")
+    public int objects;
+}
@@ -0,0 +1,33 @@
+package livetrain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one fired simulation event and the object updates before it
+ */
+@Name("livetrain.SimulationTick")
+@Label("Simulation Tick")
+@Category({"Livetrain", "Simulation"})
+@Description("Objects advanced to the next scheduled event, which then fired")
+public class SimulationTickEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(SimulationTickEvent.class);
+
+    @Label("Event")
+    public String event;
+
+    @Label("Simulation Time")
+    @Description("Seconds of simulated time")
+    public double simulationTime;
+
+    @Label("Simulated Step")
+    @Description("Seconds of simulated time since the previous tick")
+    public double dt;
+
+    @Label("Objects Stepped")
+    public int objects;
+}
@@ -0,0 +1,170 @@
+package livetrain.metrics;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timed spans from every thread into preallocated arrays and dumps them in the Chrome
+ * trace event format, viewable in chrome://tracing or Perfetto. The buffer is a ring, so a long
+ * capture keeps the most recent spans
+ */
+public class Tracer {
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    // One capture. A new start publishes a fresh buffer, so a dump of the old one is never overwritten
+    private static final class Buffer {
+        final long[] starts, durations, threads;
+        final int[] names;
+        final String[] nameTable;
+        final AtomicLong next = new AtomicLong();
+        final AtomicInteger writers = new AtomicInteger();
+        final long origin = System.nanoTime();
+        volatile boolean recording = true;
+
+        Buffer(int capacity, String[] spanNames) {
+            starts = new long[capacity];
+            durations = new long[capacity];
+            threads = new long[capacity];
+            names = new int[capacity];
+            nameTable = spanNames.clone();
+        }
+
+        long size() { return Math.min(next.get(), starts.length); }
+    }
+
+    private static volatile Buffer buffer;
+
+    private Tracer() {}
+
+    /**
+     * @return If spans are being recorded
+     */
+    public static boolean enabled() {
+        Buffer b = buffer;
+        return b != null && b.recording;
+    }
+
+    /**
+     * Allocate the span buffer and begin recording
+     *
+     * @param capacity Number of spans retained
+     * @param spanNames Names spans may be recorded under, indexed by id
+     */
+    public static synchronized void start(int capacity, String[] spanNames) {
+        Buffer old = buffer;
+
+        if (old != null)
+            old.recording = false;
+
+        buffer = new Buffer(capacity, spanNames);
+    }
+
+    /**
+     * Stop recording. The buffer is kept until the next start so it can be dumped
+     */
+    public static synchronized void stop() {
+        Buffer b = buffer;
+
+        if (b != null)
+            b.recording = false;
+    }
+
+    /**
+     * @return Number of spans retained
+     */
+    public static long size() {
+        Buffer b = buffer;
+        return b == null ? 0 : b.size();
+    }
+
+    /**
+     * Record a completed span on the calling thread
+     *
+     * @param name Span name id
+     * @param start Start in JVM nanoseconds
+     * @param end End in JVM nanoseconds
+     */
+    public static void record(int name, long start, long end) {
+        Buffer b = buffer;
+
+        if (b == null)
+            return;
+
+        // Registered before checking the flag, so a dump that sees no writers after stop sees every slot
+        b.writers.incrementAndGet();
+
+        try {
+            if (!b.recording)
+                return;
+
+            int i = (int)(b.next.getAndIncrement() % b.starts.length);
+
+            b.starts[i] = start;
+            b.durations[i] = end - start;
+            b.threads[i] = Thread.currentThread().getId();
+            b.names[i] = name;
+        } finally {
+            b.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Write the retained spans as Chrome trace JSON. Recording must be stopped first. Waits for
+     * spans still being written, so call it off the event thread
+     *
+     * @param path Destination file
+     * @return Number of spans written
+     * @throws IOException If writing fails
+     */
+    public static long dump(String path) throws IOException {
+        Buffer b = buffer;
+
+        if (b == null)
+            throw new IllegalStateException("No trace has been recorded");
+        if (b.recording)
+            throw new IllegalStateException("Trace is still recording");
+
+        while (b.writers.get() != 0)
+            Thread.yield();
+
+        long total = b.next.get();
+        int n = (int)b.size();
+        long first = total - n;
+        Map<Long, String> threadNames = new HashMap<>();
+
+        for (Thread t : Thread.getAllStackTraces().keySet())
+            threadNames.put(t.getId(), t.getName());
+
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path),
+                StandardCharsets.UTF_8))) {
+            w.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+
+            for (Map.Entry<Long, String> e : threadNames.entrySet())
+                w.write(String.format(Locale.ROOT, "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,"
+                        + "\"tid\":%d,\"args\":{\"name\":\"%s\"}},\n", e.getKey(), escape(e.getValue())));
+
+            for (long k = first; k < total; k++) {
+                int i = (int)(k % b.starts.length);
+
+                w.write(String.format(Locale.ROOT, "{\"name\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,"
+                        + "\"ts\":%.3f,\"dur\":%.3f}%s\n", escape(b.nameTable[b.names[i]]), b.threads[i],
+                        (b.starts[i] - b.origin) / 1e3, b.durations[i] / 1e3, k == total - 1 ? "" : ","));
+            }
+
+            w.write("]}\n");
+        }
+
+        return n;
+    }
+
+    private static String escape(String s) { return s.replace("\\", "\\\\").replace("\"", "\\\""); }
+}
@@ -0,0 +1,28 @@
+package livetrain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one trajectory build
+ */
+@Name("livetrain.TrajectoryBuild")
+@Label("Trajectory Build")
+@Category({"Livetrain", "Trajectory"})
+@Description("Spline trajectory and motion profile built from the waypoint table")
+public class TrajectoryBuildEvent extends Event {
+    public static final EventType TYPE = EventType.getEventType(TrajectoryBuildEvent.class);
+
+    @Label("Path Type")
+    public String pathType;
+
+    @Label("Profile Type")
+    public String profileType;
+
+    @Label("Waypoints")
+    public int waypoints;
+}
@@ -0,0 +1,184 @@
+package livetrain.metrics;
+
+import livetrain.Log;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tracks simulation loop updates against a wall-time deadline and classifies each overrun by its
+ * likely cause. Garbage collection is detected from the JVM's collector counts, which are only
+ * sampled when an overrun occurs or the sample has gone stale
+ */
+public class Watchdog {
+    public enum Overrun { GC, SLOW_UPDATE, STALL };
+    // Stepping stops at the CPU budget, so a deadline no longer than it would almost never see
+    // an update's own work overrun; past it, only an event that runs long does
+    public static final double BUDGET_MARGIN = 2.5;
+    public static final double GC_SAMPLE_PERIOD = 0.1;
+    public static final double RECENT_WINDOW = 1;
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long[] counts = new long[Overrun.values().length];
+    private volatile double deadline;
+    private volatile boolean freeze = false;
+    private double worst = 0, stalledTime = 0, frozenTime = 0, lastGcSampleTime = -1;
+    private double lastOverrunTime = -1;
+    private long lastGcCount = -1, checks = 0;
+    private Overrun lastOverrun = null;
+
+    /**
+     * @param budget Wall time the loop may spend stepping per update
+     */
+    public Watchdog(double budget) { deadline = BUDGET_MARGIN * budget; }
+
+    /**
+     * Move the deadline to follow a new CPU budget, replacing any deadline set directly
+     *
+     * @param budget Wall time the loop may spend stepping per update
+     */
+    public void setBudget(double budget) { setDeadline(BUDGET_MARGIN * budget); }
+
+    /**
+     * @return Wall time allowed between simulation loop updates
+     */
+    public double deadline() { return deadline; }
+
+    /**
+     * @param d Wall time allowed between simulation loop updates
+     */
+    public void setDeadline(double d) {
+        deadline = d;
+        Log.add("Set Watchdog.deadline", "" + d);
+    }
+
+    /**
+     * @return If simulated time stops advancing for the portion of an overrun past the deadline
+     */
+    public boolean freeze() { return freeze; }
+
+    /**
+     * @param f If simulated time should stop advancing for the portion of an overrun past the
+     * deadline
+     */
+    public void setFreeze(boolean f) {
+        freeze = f;
+        Log.add("Set Watchdog.freeze", "" + f);
+    }
+
+    /**
+     * Check the gap since the previous update
+     *
+     * @param now Wall time of this update
+     * @param gap Wall time since the previous update began
+     * @param work Wall time the previous update spent stepping
+     * @return Overrun class, or null if the gap was within the deadline
+     */
+    public synchronized Overrun check(double now, double gap, double work) {
+        checks++;
+
+        if (gap <= deadline) {
+            if (now - lastGcSampleTime >= GC_SAMPLE_PERIOD) {
+                lastGcCount = gcCount();
+                lastGcSampleTime = now;
+            }
+
+            return null;
+        }
+
+        long gc = gcCount();
+        Overrun o;
+
+        if (lastGcCount != -1 && gc > lastGcCount)
+            o = Overrun.GC;
+        else if (work > deadline)
+            o = Overrun.SLOW_UPDATE;
+        else
+            o = Overrun.STALL;
+
+        lastGcCount = gc;
+        lastGcSampleTime = now;
+        counts[o.ordinal()]++;
+        worst = Math.max(worst, gap);
+        stalledTime += gap - deadline;
+        lastOverrun = o;
+        lastOverrunTime = now;
+
+        return o;
+    }
+
+    /**
+     * Note simulated time withheld because of an overrun
+     *
+     * @param t Simulated time
+     */
+    public synchronized void addFrozenTime(double t) { frozenTime += t; }
+
+    /**
+     * @param o Overrun class
+     * @return Number of overruns of that class
+     */
+    public synchronized long count(Overrun o) { return counts[o.ordinal()]; }
+
+    /**
+     * @return Total number of overruns
+     */
+    public synchronized long total() {
+        long n = 0;
+
+        for (long c : counts)
+            n += c;
+
+        return n;
+    }
+
+    /**
+     * @param now Wall time
+     * @return Most recent overrun class if it happened within the recent window, otherwise null
+     */
+    public synchronized Overrun recentOverrun(double now) {
+        return lastOverrunTime != -1 && now - lastOverrunTime <= RECENT_WINDOW ? lastOverrun : null;
+    }
+
+    /**
+     * Discard every statistic
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+
+        worst = stalledTime = frozenTime = 0;
+        checks = 0;
+        lastOverrun = null;
+        lastOverrunTime = -1;
+    }
+
+    /**
+     * @return Summary of overrun statistics
+     */
+    public synchronized String[] report() {
+        Overrun[] types = Overrun.values();
+        String[] lines = new String[types.length + 2];
+
+        lines[0] = String.format(Locale.getDefault(), "Watchdog: %d overruns in %d updates, deadline %.1fms, worst %.1fms",
+                total(), checks, deadline * 1e3, worst * 1e3);
+        lines[1] = String.format(Locale.getDefault(), "Stalled %.3fs past deadline, %.3fs simulated time frozen",
+                stalledTime, frozenTime);
+
+        for (int i = 0; i < types.length; i++)
+            lines[i + 2] = types[i] + ": " + counts[i];
+
+        return lines;
+    }
+
+    private long gcCount() {
+        long n = 0;
+
+        for (GarbageCollectorMXBean gc : collectors)
+            n += Math.max(gc.getCollectionCount(), 0);
+
+        return n;
+    }
+}
@@ -0,0 +1,83 @@
+package livetrain.noise;
+
+import livetrain.history.StateCursor;
+
+/**
+ * First-order Gauss-Markov process: noise correlated over a time constant, like the slowly
+ * wandering error of a gyro or a camera's pose fix. Over a gap dt the state decays by
+ * exp(-dt / tau) and takes fresh noise that keeps its variance at sigma squared, so the result
+ * does not depend on how often it is sampled
+ */
+public class GaussMarkovNoise extends Noise {
+    private final double mean, sigma, tau;
+    private double state = 0, lastTime = Double.NaN;
+
+    // Sensors sample at a fixed rate, so the coefficients for the last gap are usually reusable;
+    // gaps differing only by rounding count as the same. They are part of the snapshot, since a
+    // restored run must reuse the same rounded coefficients
+    private double gap = Double.NaN, decay, diffusion;
+
+    /**
+     * @param mean Mean
+     * @param sigma Stationary standard deviation
+     * @param tau Correlation time in seconds
+     * @param seed Seed of the stream
+     */
+    public GaussMarkovNoise(double mean, double sigma, double tau, long seed) {
+        super(seed);
+
+        if (tau <= 0)
+            throw new IllegalArgumentException("Correlation time must be positive");
+
+        this.mean = mean;
+        this.sigma = sigma;
+        this.tau = tau;
+    }
+
+    @Override public double sample(double time) {
+        if (Double.isNaN(lastTime)) {
+            state = sigma * draw();
+        } else if (time > lastTime) {
+            double dt = time - lastTime;
+
+            if (!(Math.abs(dt - gap) <= 1e-9 * gap)) {
+                gap = dt;
+                decay = Math.exp(-gap / tau);
+                diffusion = sigma * Math.sqrt(1 - decay * decay);
+            }
+
+            state = decay * state + diffusion * draw();
+        }
+
+        lastTime = time;
+
+        return mean + state;
+    }
+
+    @Override public void reseed() {
+        super.reseed();
+        state = 0;
+        lastTime = Double.NaN;
+        gap = Double.NaN;
+    }
+
+    @Override public void saveState(StateCursor c) {
+        super.saveState(c);
+        c.putDouble(state);
+        c.putDouble(lastTime);
+        c.putDouble(gap);
+        c.putDouble(decay);
+        c.putDouble(diffusion);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        super.restoreState(c);
+        state = c.getDouble();
+        lastTime = c.getDouble();
+        gap = c.getDouble();
+        decay = c.getDouble();
+        diffusion = c.getDouble();
+    }
+
+    @Override public String toString() { return "GaussMarkov[" + mean + ", " + sigma + ", " + tau + "]"; }
+}
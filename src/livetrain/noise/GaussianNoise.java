@@ -0,0 +1,23 @@
+package livetrain.noise;
+
+/**
+ * Independent normal values
+ */
+public class GaussianNoise extends Noise {
+    private final double mean, sigma;
+
+    /**
+     * @param mean Mean
+     * @param sigma Standard deviation
+     * @param seed Seed of the stream
+     */
+    public GaussianNoise(double mean, double sigma, long seed) {
+        super(seed);
+        this.mean = mean;
+        this.sigma = sigma;
+    }
+
+    @Override public double sample(double time) { return mean + sigma * draw(); }
+
+    @Override public String toString() { return "Gaussian[" + mean + ", " + sigma + "]"; }
+}
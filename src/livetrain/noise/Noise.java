@@ -1,27 +1,143 @@
 package livetrain.noise;
 
-public class Noise {
-    public enum Type { SINUSOIDAL, RANDOM };
-    private Type type;
-    private double lower, upper;
-    
-    public Noise(Type t, double l, double u) {
-        type = t;
-        lower = l;
-        upper = u;
-    }
-    
-    public double generate(double timestamp) {
-        switch (type) {
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * A noise model on one axis, drawing from its own seeded stream. Random values are made a batch
+ * at a time into a primitive buffer, so the cost of the generator and of any transform such as
+ * Box-Muller is paid in one tight loop and each sample only reads the buffer and applies the
+ * model. The buffer is always the batch made from a recorded stream state, so a snapshot holds
+ * that state and a position rather than the buffer itself. The first batch is made on the first
+ * draw, once the subclass is constructed
+ * <p>
+ * Models can be summed per axis with a {@link NoiseChannel}. {@link #create} builds a model from
+ * a type and a range, as the interface describes noise
+ */
+public abstract class Noise implements Stateful {
+    public enum Type { SINUSOIDAL, RANDOM, GAUSSIAN, GAUSS_MARKOV, RANDOM_WALK };
+    public static final int BATCH = 256;
+    public static final double DEFAULT_CORRELATION_TIME = 1;
+
+    private final long seed;
+    private final SeededRandom random;
+    private final double[] batch = new double[BATCH];
+    private long batchState;
+    private int position;
+
+    /**
+     * @param seed Seed of the stream
+     */
+    protected Noise(long seed) {
+        this.seed = seed;
+        random = new SeededRandom(seed);
+        position = BATCH;
+    }
+
+    /**
+     * Build a model whose values mostly fall within a range
+     * <ul>
+     *     <li>SINUSOIDAL: sweeps the range once every 2 pi seconds</li>
+     *     <li>RANDOM: uniform over the range</li>
+     *     <li>GAUSSIAN: normal about the middle with half the range as its standard deviation</li>
+     *     <li>GAUSS_MARKOV: the same, but correlated over {@link #DEFAULT_CORRELATION_TIME}</li>
+     *     <li>RANDOM_WALK: a bias starting at the middle that drifts by half the range per
+     *     square root second</li>
+     * </ul>
+     *
+     * @param t Type
+     * @param l Lower bound
+     * @param u Upper bound
+     * @param seed Seed of the stream
+     * @return Model
+     */
+    public static Noise create(Type t, double l, double u, long seed) {
+        double middle = (l + u) / 2, half = (u - l) / 2;
+
+        switch (t) {
             case SINUSOIDAL:
-                return Math.sin(timestamp) * (upper - lower) + (upper - lower) / 4;
-                
-            case RANDOM:
-                return lower + Math.random() * (upper - lower);
+                return new SinusoidNoise(middle, half, 1, seed);
+
+            case GAUSSIAN:
+                return new GaussianNoise(middle, half, seed);
+
+            case GAUSS_MARKOV:
+                return new GaussMarkovNoise(middle, half, DEFAULT_CORRELATION_TIME, seed);
+
+            case RANDOM_WALK:
+                return new RandomWalkNoise(middle, half, seed);
+
+            default:
+                return new UniformNoise(l, u, seed);
         }
-        
-        return 0;
     }
-    
-    @Override public String toString() { return type + "[" + lower + ", " + upper + "]"; }
+
+    /**
+     * @param time Simulation time
+     * @return Noise at that time
+     */
+    public abstract double sample(double time);
+
+    /**
+     * Restart from the seed and clear any state the model carries
+     */
+    public void reseed() {
+        random.setState(seed);
+        position = BATCH;
+    }
+
+    /**
+     * @return Next value of the batch, making a new batch when it runs out
+     */
+    protected final double draw() {
+        if (position == BATCH)
+            refill();
+
+        return batch[position++];
+    }
+
+    /**
+     * Fill a batch from the stream. By default the values are standard normal, made in pairs by
+     * the polar form of the Box-Muller transform, which needs no trigonometry
+     *
+     * @param r Stream
+     * @param out Batch
+     */
+    protected void fill(SeededRandom r, double[] out) {
+        for (int i = 0; i < out.length; i += 2) {
+            double u, v, s;
+
+            do {
+                u = 2 * r.nextDouble() - 1;
+                v = 2 * r.nextDouble() - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+
+            double scale = Math.sqrt(-2 * Math.log(s) / s);
+            out[i] = u * scale;
+            out[i + 1] = v * scale;
+        }
+    }
+
+    private void refill() {
+        batchState = random.state();
+        fill(random, batch);
+        position = 0;
+    }
+
+    @Override public void saveState(StateCursor c) {
+        // A spent batch is remade from where the stream is now, not from where it was made
+        c.putLong(position == BATCH ? random.state() : batchState);
+        c.putLong(position);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        random.setState(c.getLong());
+        int p = (int)c.getLong();
+
+        if (p < BATCH)
+            refill();
+
+        position = p;
+    }
 }
@@ -0,0 +1,57 @@
+package livetrain.noise;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Noise on one axis as the sum of any number of models, such as white noise over a drifting
+ * bias
+ */
+public class NoiseChannel implements Stateful {
+    private final Noise[] stages;
+
+    /**
+     * @param stages Models to sum
+     */
+    public NoiseChannel(Noise... stages) { this.stages = stages.clone(); }
+
+    /**
+     * @param time Simulation time
+     * @return Sum of every model at that time
+     */
+    public double sample(double time) {
+        double sum = 0;
+
+        for (Noise n : stages)
+            sum += n.sample(time);
+
+        return sum;
+    }
+
+    /**
+     * Restart every model from its seed
+     */
+    public void reseed() {
+        for (Noise n : stages)
+            n.reseed();
+    }
+
+    @Override public void saveState(StateCursor c) {
+        for (Noise n : stages)
+            n.saveState(c);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        for (Noise n : stages)
+            n.restoreState(c);
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Noise n : stages)
+            sb.append(sb.length() == 0 ? "" : " + ").append(n);
+
+        return sb.length() == 0 ? "None" : sb.toString();
+    }
+}
@@ -1,15 +1,26 @@
 package livetrain.noise;
 
 import livetrain.Log;
+import livetrain.history.StateCursor;
 
-import elusive.geometry.Pose2D;
-
+/**
+ * The simulation's sources of pose noise, each a {@link PoseNoise} with its own channel and
+ * streams per axis. Either can be replaced with any composition of models, such as Gaussian
+ * noise over a drifting heading bias
+ */
 public class NoiseGenerator {
     public enum Type { ROBOT_POSE_STATIC, ROBOT_POSE_ADD };
-    private static Noise robotPoseStatic = new Noise(Noise.Type.RANDOM, 0, 0);
-    private static Noise robotPoseAdd = new Noise(Noise.Type.RANDOM, 0, 0);
+    public static final long ROBOT_POSE_STATIC_SEED = 7797, ROBOT_POSE_ADD_SEED = 7798;
+    private static final PoseNoise[] sources = {
+        PoseNoise.of(Noise.Type.RANDOM, 0, 0, ROBOT_POSE_STATIC_SEED),
+        PoseNoise.of(Noise.Type.RANDOM, 0, 0, ROBOT_POSE_ADD_SEED)
+    };
     private volatile static boolean addNoise = false;
     
+    // Counts replacements. Each model saves its own amount of state, so a snapshot only
+    // restores into the sources it was taken from
+    private static long layout = 0;
+    
     private NoiseGenerator() {}
     
     public static boolean addNoise() { return addNoise; }
@@ -19,30 +30,82 @@ public class NoiseGenerator {
         Log.add("Set NoiseGenerator.addNoise", "" + add);
     }
     
+    /**
+     * @param t Source
+     * @return Its noise
+     */
+    public static synchronized PoseNoise pose(Type t) { return sources[t.ordinal()]; }
+    
+    /**
+     * Replace a source's noise. Its streams are restarted so that runs stay reproducible, and
+     * snapshots taken before no longer restore
+     * 
+     * @param t Source
+     * @param noise Noise
+     */
+    public static synchronized void setPose(Type t, PoseNoise noise) {
+        noise.reseed();
+        sources[t.ordinal()] = noise;
+        layout++;
+        Log.add("Set " + t + " noise", noise.toString());
+    }
+    
     public static void setRobotPoseStatic(Noise.Type t, double l, double u) {
-        robotPoseStatic = new Noise(t, l, u);
-        Log.add("Set robot pose noise", robotPoseStatic.toString());
+        setPose(Type.ROBOT_POSE_STATIC, PoseNoise.of(t, l, u, ROBOT_POSE_STATIC_SEED));
     }
     
     public static void setRobotPoseAdd(Noise.Type t, double l, double u) {
-        robotPoseAdd = new Noise(t, l, u);
-        Log.add("Set robot pose additive noise", robotPoseAdd.toString());
+        setPose(Type.ROBOT_POSE_ADD, PoseNoise.of(t, l, u, ROBOT_POSE_ADD_SEED));
     }
     
-    public static double generate(Type t, double timestamp) {
-        switch (t) {
-            case ROBOT_POSE_STATIC:
-                return addNoise ? robotPoseStatic.generate(timestamp) : 0;
-                
-            case ROBOT_POSE_ADD:
-                return addNoise ? robotPoseAdd.generate(timestamp) : 0;
-        }
+    /**
+     * Restart every noise stream from its seed so that runs are reproducible
+     */
+    public static synchronized void reseed() {
+        for (PoseNoise n : sources)
+            n.reseed();
+    }
+    
+    /**
+     * @return Number of times a source has been replaced
+     */
+    public static synchronized long layout() { return layout; }
+    
+    public static synchronized void saveState(StateCursor c) {
+        c.putLong(layout);
         
-        return 0;
+        for (PoseNoise n : sources)
+            n.saveState(c);
     }
     
-    public static Pose2D generate(Type t, double timestamp, Pose2D pose) {
-        return new Pose2D(pose.x() + generate(t, timestamp), pose.y() + generate(t, timestamp),
-                pose.heading() + generate(t, timestamp));
+    /**
+     * @param c Snapshot
+     * @return False, having read only the layout and changed nothing, if a source has been
+     *         replaced since the snapshot was taken
+     */
+    public static synchronized boolean restoreState(StateCursor c) {
+        if (c.getLong() != layout)
+            return false;
+        
+        for (PoseNoise n : sources)
+            n.restoreState(c);
+        
+        return true;
+    }
+    
+    /**
+     * Sample a source on every axis at once
+     * 
+     * @param t Source
+     * @param timestamp Simulation time
+     * @param out Filled with the noise on x, y and the heading, or zeros if noise is off
+     */
+    public static synchronized void sample(Type t, double timestamp, double[] out) {
+        if (!addNoise) {
+            out[PoseNoise.X] = out[PoseNoise.Y] = out[PoseNoise.HEADING] = 0;
+            return;
+        }
+        
+        sources[t.ordinal()].sample(timestamp, out);
     }
 }
@@ -0,0 +1,74 @@
+package livetrain.noise;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Noise on a pose, with its own channel on each axis
+ */
+public class PoseNoise implements Stateful {
+    public static final int X = 0, Y = 1, HEADING = 2;
+    public static final long AXIS_SEED_STRIDE = 1000;
+
+    private final NoiseChannel[] axes;
+
+    /**
+     * @param x Noise on x
+     * @param y Noise on y
+     * @param heading Noise on the heading
+     */
+    public PoseNoise(NoiseChannel x, NoiseChannel y, NoiseChannel heading) {
+        axes = new NoiseChannel[] { x, y, heading };
+    }
+
+    /**
+     * The same type of noise on every axis, each from its own stream
+     *
+     * @param t Type
+     * @param l Lower bound
+     * @param u Upper bound
+     * @param seed Seed of the first axis's stream; the others are offset from it
+     * @return Pose noise
+     */
+    public static PoseNoise of(Noise.Type t, double l, double u, long seed) {
+        return new PoseNoise(new NoiseChannel(Noise.create(t, l, u, seed)),
+                new NoiseChannel(Noise.create(t, l, u, seed + AXIS_SEED_STRIDE)),
+                new NoiseChannel(Noise.create(t, l, u, seed + 2 * AXIS_SEED_STRIDE)));
+    }
+
+    /**
+     * @param axis Axis index
+     * @return That axis's channel
+     */
+    public NoiseChannel axis(int axis) { return axes[axis]; }
+
+    /**
+     * @param time Simulation time
+     * @param out Filled with the noise on x, y and the heading
+     */
+    public void sample(double time, double[] out) {
+        out[X] = axes[X].sample(time);
+        out[Y] = axes[Y].sample(time);
+        out[HEADING] = axes[HEADING].sample(time);
+    }
+
+    /**
+     * Restart every axis from its seed
+     */
+    public void reseed() {
+        for (NoiseChannel a : axes)
+            a.reseed();
+    }
+
+    @Override public void saveState(StateCursor c) {
+        for (NoiseChannel a : axes)
+            a.saveState(c);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        for (NoiseChannel a : axes)
+            a.restoreState(c);
+    }
+
+    @Override public String toString() { return "<" + axes[X] + ", " + axes[Y] + ", " + axes[HEADING] + ">"; }
+}
@@ -0,0 +1,54 @@
+package livetrain.noise;
+
+import livetrain.history.StateCursor;
+
+/**
+ * Bias that drifts as a random walk, like the zero-rate offset of a gyro. Over a gap dt the bias
+ * moves by a normal step with standard deviation rate times the square root of dt, so the
+ * result does not depend on how often it is sampled
+ */
+public class RandomWalkNoise extends Noise {
+    private final double initial, rate;
+    private double bias, lastTime = Double.NaN;
+
+    /**
+     * @param initial Starting bias
+     * @param rate Drift in units per square root second
+     * @param seed Seed of the stream
+     */
+    public RandomWalkNoise(double initial, double rate, long seed) {
+        super(seed);
+        this.initial = initial;
+        this.rate = rate;
+        bias = initial;
+    }
+
+    @Override public double sample(double time) {
+        if (!Double.isNaN(lastTime) && time > lastTime)
+            bias += rate * Math.sqrt(time - lastTime) * draw();
+
+        lastTime = time;
+
+        return bias;
+    }
+
+    @Override public void reseed() {
+        super.reseed();
+        bias = initial;
+        lastTime = Double.NaN;
+    }
+
+    @Override public void saveState(StateCursor c) {
+        super.saveState(c);
+        c.putDouble(bias);
+        c.putDouble(lastTime);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        super.restoreState(c);
+        bias = c.getDouble();
+        lastTime = c.getDouble();
+    }
+
+    @Override public String toString() { return "RandomWalk[" + initial + ", " + rate + "]"; }
+}
@@ -0,0 +1,52 @@
+package livetrain.noise;
+
+/**
+ * SplitMix64 pseudorandom stream. Unlike Math.random(), its entire state is a single word that
+ * can be saved and restored, so noisy runs replay exactly
+ */
+public class SeededRandom {
+    private long state;
+
+    /**
+     * @param seed Seed
+     */
+    public SeededRandom(long seed) { state = seed; }
+
+    /**
+     * @return Next 64 random bits
+     */
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return Uniform value on [0, 1)
+     */
+    public double nextDouble() { return (nextLong() >>> 11) * 0x1.0p-53; }
+
+    /**
+     * Standard normal value by the Box-Muller transform. Only one of the pair is used, so that
+     * no spare value is held outside the stream state
+     *
+     * @return Value with zero mean and unit variance
+     */
+    public double nextGaussian() {
+        double u = 1 - nextDouble(), v = nextDouble();
+
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    /**
+     * @return Stream state
+     */
+    public long state() { return state; }
+
+    /**
+     * @param s Stream state
+     */
+    public void setState(long s) { state = s; }
+}
@@ -0,0 +1,27 @@
+package livetrain.noise;
+
+/**
+ * Deterministic sinusoid about a center, for periodic disturbances such as a wobbling mount
+ */
+public class SinusoidNoise extends Noise {
+    private final double center, amplitude, omega;
+
+    /**
+     * @param center Center
+     * @param amplitude Amplitude
+     * @param omega Angular frequency in radians per second
+     * @param seed Seed of the stream, which the model does not draw from
+     */
+    public SinusoidNoise(double center, double amplitude, double omega, long seed) {
+        super(seed);
+        this.center = center;
+        this.amplitude = amplitude;
+        this.omega = omega;
+    }
+
+    @Override public double sample(double time) { return center + amplitude * Math.sin(omega * time); }
+
+    @Override protected void fill(SeededRandom r, double[] out) {}
+
+    @Override public String toString() { return "Sinusoid[" + center + ", " + amplitude + ", " + omega + "]"; }
+}
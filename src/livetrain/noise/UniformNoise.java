@@ -0,0 +1,28 @@
+package livetrain.noise;
+
+/**
+ * Independent values uniform over a range
+ */
+public class UniformNoise extends Noise {
+    private final double lower, upper;
+
+    /**
+     * @param l Lower bound
+     * @param u Upper bound
+     * @param seed Seed of the stream
+     */
+    public UniformNoise(double l, double u, long seed) {
+        super(seed);
+        lower = l;
+        upper = u;
+    }
+
+    @Override public double sample(double time) { return lower + draw() * (upper - lower); }
+
+    @Override protected void fill(SeededRandom r, double[] out) {
+        for (int i = 0; i < out.length; i++)
+            out[i] = r.nextDouble();
+    }
+
+    @Override public String toString() { return "Uniform[" + lower + ", " + upper + "]"; }
+}
@@ -0,0 +1,141 @@
+package livetrain.physics;
+
+/**
+ * Advances a planar pose by a body-frame twist <axial, lateral, angular> held constant over a
+ * step. Poses are passed as <x, y, theta> arrays and modified in place so that stepping never
+ * allocates
+ */
+public class Integrator {
+    public enum Type { EULER, RK4, TWIST, ADAPTIVE };
+    public static final int MAX_ADAPTIVE_DEPTH = 12;
+
+    private static double tolerance = 1e-6;
+
+    private Integrator() {}
+
+    /**
+     * @return Per-step position error tolerance used by adaptive integration
+     */
+    public static double tolerance() { return tolerance; }
+
+    /**
+     * @param tol Per-step position error tolerance used by adaptive integration
+     */
+    public static void setTolerance(double tol) {
+        if (tol <= 0)
+            throw new IllegalArgumentException("Tolerance must be positive");
+
+        tolerance = tol;
+    }
+
+    /**
+     * Advance a pose
+     *
+     * @param type Integration scheme
+     * @param pose Pose <x, y, theta>, updated in place
+     * @param vx Body-frame axial velocity
+     * @param vy Body-frame lateral velocity
+     * @param omega Angular velocity
+     * @param dt Step
+     */
+    public static void step(Type type, double[] pose, double vx, double vy, double omega, double dt) {
+        switch (type) {
+            case EULER:
+                euler(pose, vx, vy, omega, dt);
+                break;
+
+            case RK4:
+                rk4(pose, vx, vy, omega, dt);
+                break;
+
+            case TWIST:
+                twist(pose, vx, vy, omega, dt);
+                break;
+
+            case ADAPTIVE:
+                adaptive(pose, vx, vy, omega, dt, 0);
+                break;
+        }
+    }
+
+    /**
+     * Explicit Euler. Translation is taken along the heading at the start of the step
+     */
+    private static void euler(double[] pose, double vx, double vy, double omega, double dt) {
+        double cos = Math.cos(pose[2]), sin = Math.sin(pose[2]);
+
+        pose[0] += (vx * cos - vy * sin) * dt;
+        pose[1] += (vx * sin + vy * cos) * dt;
+        pose[2] += omega * dt;
+    }
+
+    /**
+     * Classical fourth order Runge-Kutta. The twist is constant, so only heading varies between
+     * stages and the stage slopes reduce to rotations of the body velocity
+     */
+    private static void rk4(double[] pose, double vx, double vy, double omega, double dt) {
+        double theta = pose[2];
+        double c1 = Math.cos(theta), s1 = Math.sin(theta);
+        double c2 = Math.cos(theta + omega * dt / 2), s2 = Math.sin(theta + omega * dt / 2);
+        double c4 = Math.cos(theta + omega * dt), s4 = Math.sin(theta + omega * dt);
+        double c = (c1 + 4 * c2 + c4) / 6, s = (s1 + 4 * s2 + s4) / 6;
+
+        pose[0] += (vx * c - vy * s) * dt;
+        pose[1] += (vx * s + vy * c) * dt;
+        pose[2] += omega * dt;
+    }
+
+    /**
+     * Exact integration on SE(2) via the exponential map of the twist
+     */
+    private static void twist(double[] pose, double vx, double vy, double omega, double dt) {
+        double dtheta = omega * dt;
+        double a, b;
+
+        // sin(x)/x and (1 - cos(x))/x, using series expansions near zero
+        if (Math.abs(dtheta) < 1e-6) {
+            a = 1 - dtheta * dtheta / 6;
+            b = dtheta / 2;
+        } else {
+            a = Math.sin(dtheta) / dtheta;
+            b = (1 - Math.cos(dtheta)) / dtheta;
+        }
+
+        double dx = (vx * a - vy * b) * dt;
+        double dy = (vx * b + vy * a) * dt;
+        double cos = Math.cos(pose[2]), sin = Math.sin(pose[2]);
+
+        pose[0] += dx * cos - dy * sin;
+        pose[1] += dx * sin + dy * cos;
+        pose[2] += dtheta;
+    }
+
+    /**
+     * Step doubling on RK4. A full step is compared against two half steps and the interval is
+     * bisected until the difference is within tolerance
+     */
+    private static void adaptive(double[] pose, double vx, double vy, double omega, double dt,
+            int depth) {
+        double x = pose[0], y = pose[1], theta = pose[2];
+
+        rk4(pose, vx, vy, omega, dt);
+        double fx = pose[0], fy = pose[1];
+
+        pose[0] = x;
+        pose[1] = y;
+        pose[2] = theta;
+        rk4(pose, vx, vy, omega, dt / 2);
+        rk4(pose, vx, vy, omega, dt / 2);
+
+        double err = Math.max(Math.abs(pose[0] - fx), Math.abs(pose[1] - fy));
+
+        if (err <= tolerance || depth >= MAX_ADAPTIVE_DEPTH)
+            return;
+
+        pose[0] = x;
+        pose[1] = y;
+        pose[2] = theta;
+        adaptive(pose, vx, vy, omega, dt / 2, depth + 1);
+        adaptive(pose, vx, vy, omega, dt / 2, depth + 1);
+    }
+}
@@ -0,0 +1,341 @@
+package livetrain.physics;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Brushed DC motors driving the wheels through a gearbox, one per wheel. Each motor has
+ * first-order electrical and mechanical dynamics in its current i and shaft speed w:
+ * <pre>
+ *     L di/dt = V - R i - Ke w
+ *     J dw/dt = Kt i - b w
+ * </pre>
+ * The load is the rotor plus an equal share of the robot's mass reflected through the gearing.
+ * Applied voltage is held over each step, so the linear system is stepped exactly with the
+ * closed-form exponential of its 2x2 matrix and the result does not depend on the step size.
+ * The per-step matrices depend only on the step and are cached.
+ * <p>
+ * Nonlinear effects are applied by clamping the voltage at the start of each step, as motor
+ * controllers do. Battery sag follows from the current drawn on the previous step, and the current
+ * limit caps the voltage at the level that would settle at the limit
+ */
+public class MotorModel implements Stateful {
+    public static final double NOMINAL_VOLTAGE = 12;
+
+    // Motor, at the shaft
+    private double stallTorque = 0.18, stallCurrent = 9.8, freeCurrent = 0.3;
+    private double electricalTimeConstant = 0.001, rotorInertia = 1e-5;
+
+    // Installation
+    private double gearRatio = 10, robotMass = 15, metersPerUnit = 0.0254;
+    private double currentLimit = Double.POSITIVE_INFINITY, batteryResistance = 0.05;
+    private double wheelRadius = 2, freeWheelSpeed = 50;
+    private int wheels = 4;
+
+    // Derived constants, state and the cached step matrices, all row-major 2x2
+    private double resistance, inductance, torqueConstant, backEmfConstant, friction, inertia;
+    private double[] current = new double[4], speed = new double[4];
+    private double[] a = new double[4], phi = new double[4], gamma1 = new double[4], gamma2 = new double[4];
+    private double cachedStep = Double.NaN, busVoltage = NOMINAL_VOLTAGE;
+
+    public MotorModel() { derive(); }
+
+    /**
+     * Match the motors to a drivetrain. Motor state is reset if the number of wheels changes
+     *
+     * @param wheels Number of wheels
+     * @param radius Wheel radius in simulation units
+     * @param freeSpeed Wheel speed at full power with no load, in radians per second
+     */
+    public synchronized void configure(int wheels, double radius, double freeSpeed) {
+        if (wheels != this.wheels) {
+            this.wheels = wheels;
+            current = new double[wheels];
+            speed = new double[wheels];
+        }
+
+        wheelRadius = radius;
+        freeWheelSpeed = freeSpeed;
+        derive();
+    }
+
+    /**
+     * @return Ratio of motor speed to wheel speed
+     */
+    public double gearRatio() { return gearRatio; }
+
+    /**
+     * @param g Ratio of motor speed to wheel speed. The motor is assumed to keep its free speed,
+     *          so the wheel's free speed is unchanged and its torque scales with the ratio
+     */
+    public synchronized void setGearRatio(double g) {
+        if (g <= 0)
+            throw new IllegalArgumentException("Gear ratio must be positive");
+
+        gearRatio = g;
+        derive();
+        Log.add("Set MotorModel.gearRatio", "" + g);
+    }
+
+    /**
+     * @return Per-motor current limit in amperes
+     */
+    public double currentLimit() { return currentLimit; }
+
+    /**
+     * @param amps Per-motor current limit, or infinity for none
+     */
+    public synchronized void setCurrentLimit(double amps) {
+        if (amps <= 0)
+            throw new IllegalArgumentException("Current limit must be positive");
+
+        currentLimit = amps;
+        Log.add("Set MotorModel.currentLimit", "" + amps);
+    }
+
+    /**
+     * @return Battery internal resistance in ohms
+     */
+    public double batteryResistance() { return batteryResistance; }
+
+    /**
+     * @param ohms Battery internal resistance
+     */
+    public synchronized void setBatteryResistance(double ohms) {
+        if (ohms < 0)
+            throw new IllegalArgumentException("Battery resistance must not be negative");
+
+        batteryResistance = ohms;
+        Log.add("Set MotorModel.batteryResistance", "" + ohms);
+    }
+
+    /**
+     * @return Robot mass in kilograms
+     */
+    public double robotMass() { return robotMass; }
+
+    /**
+     * @param kg Robot mass
+     */
+    public synchronized void setRobotMass(double kg) {
+        if (kg <= 0)
+            throw new IllegalArgumentException("Mass must be positive");
+
+        robotMass = kg;
+        derive();
+        Log.add("Set MotorModel.robotMass", "" + kg);
+    }
+
+    /**
+     * @return Length of a simulation unit in meters
+     */
+    public double metersPerUnit() { return metersPerUnit; }
+
+    /**
+     * @return Battery voltage under the load of the last step
+     */
+    public double busVoltage() { return busVoltage; }
+
+    /**
+     * @param index Wheel index
+     * @return Motor current in amperes
+     */
+    public double current(int index) { return current[index]; }
+
+    /**
+     * @return Largest motor current magnitude in amperes
+     */
+    public synchronized double peakCurrent() {
+        double peak = 0;
+
+        for (int i = 0; i < wheels; i++)
+            peak = Math.max(peak, Math.abs(current[i]));
+
+        return peak;
+    }
+
+    /**
+     * @param index Wheel index
+     * @return Wheel speed in radians per second
+     */
+    public double wheelSpeed(int index) { return speed[index] / gearRatio; }
+
+    /**
+     * @return Torque constant at the wheel, in newton meters per ampere
+     */
+    public double wheelTorqueConstant() { return torqueConstant * gearRatio; }
+
+    /**
+     * @return Load inertia per motor at the shaft, in kilogram square meters
+     */
+    public double inertia() { return inertia; }
+
+    /**
+     * Stop every motor
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < wheels; i++) {
+            current[i] = 0;
+            speed[i] = 0;
+        }
+
+        busVoltage = NOMINAL_VOLTAGE;
+    }
+
+    /**
+     * Put every motor in the steady state it would reach at the given powers with no load, so
+     * that enabling the model does not jolt a moving robot
+     *
+     * @param powers Wheel powers
+     */
+    public synchronized void settle(double[] powers) {
+        for (int i = 0; i < wheels; i++) {
+            double v = powers[i] * NOMINAL_VOLTAGE;
+
+            speed[i] = v * torqueConstant / (resistance * friction + torqueConstant * backEmfConstant);
+            current[i] = friction * speed[i] / torqueConstant;
+        }
+    }
+
+    /**
+     * @param out Filled with each wheel's speed as a fraction of its free speed
+     */
+    public synchronized void speeds(double[] out) {
+        for (int i = 0; i < wheels; i++)
+            out[i] = speed[i] / (gearRatio * freeWheelSpeed);
+    }
+
+    /**
+     * Advance every motor by a step with the powers held
+     *
+     * @param powers Wheel powers on [-1, 1]
+     * @param dt Step
+     * @param mean Filled with each wheel's mean speed over the step as a fraction of its free
+     *             speed, which is the power that would produce the same motion without dynamics
+     */
+    public synchronized void step(double[] powers, double dt, double[] mean) {
+        if (dt != cachedStep)
+            cache(dt);
+
+        double drawn = 0;
+
+        for (int i = 0; i < wheels; i++) {
+            double i0 = current[i], w0 = speed[i];
+
+            // Battery sag from last step's draw, then the current limit as a voltage window
+            double v = powers[i] * busVoltage;
+            double emf = backEmfConstant * w0;
+            double span = currentLimit * resistance;
+
+            if (v > emf + span)
+                v = emf + span;
+            else if (v < emf - span)
+                v = emf - span;
+            
+            v = Math.max(-busVoltage, Math.min(v, busVoltage));
+
+            // Input only drives the current equation
+            double u = v / inductance;
+
+            current[i] = phi[0] * i0 + phi[1] * w0 + gamma1[0] * u;
+            speed[i] = phi[2] * i0 + phi[3] * w0 + gamma1[2] * u;
+
+            double meanSpeed = (gamma1[2] * i0 + gamma1[3] * w0 + gamma2[2] * u) / dt;
+            mean[i] = meanSpeed / (gearRatio * freeWheelSpeed);
+            drawn += Math.abs(current[i] * v) / NOMINAL_VOLTAGE;
+        }
+
+        busVoltage = Math.max(NOMINAL_VOLTAGE - batteryResistance * drawn, 0);
+    }
+
+    /**
+     * Motor constants from the datasheet figures, with the free speed chosen so that a wheel at
+     * full power and no load turns at the drivetrain's maximum velocity
+     */
+    private void derive() {
+        double freeSpeed = freeWheelSpeed * gearRatio;
+        double r = wheelRadius * metersPerUnit;
+
+        resistance = NOMINAL_VOLTAGE / stallCurrent;
+        inductance = electricalTimeConstant * resistance;
+        torqueConstant = stallTorque / stallCurrent;
+        backEmfConstant = (NOMINAL_VOLTAGE - freeCurrent * resistance) / freeSpeed;
+        friction = torqueConstant * freeCurrent / freeSpeed;
+        inertia = rotorInertia + robotMass / wheels * r * r / (gearRatio * gearRatio);
+
+        a[0] = -resistance / inductance;
+        a[1] = -backEmfConstant / inductance;
+        a[2] = torqueConstant / inertia;
+        a[3] = -friction / inertia;
+        cachedStep = Double.NaN;
+    }
+
+    /**
+     * Exponential of the system matrix over a step, and its first and second integrals, which
+     * give the state after the step and its mean over the step. By Cayley-Hamilton,
+     * exp(At) = exp(st) (c(t) I + d(t) (A - sI)) where s is half the trace and
+     * q^2 = s^2 - det(A) decides between hyperbolic and circular functions
+     */
+    private void cache(double dt) {
+        double s = (a[0] + a[3]) / 2;
+        double det = a[0] * a[3] - a[1] * a[2];
+        double q2 = s * s - det;
+        double c, d;
+
+        if (Math.abs(q2) * dt * dt < 1e-12) {
+            c = 1;
+            d = dt;
+        } else if (q2 > 0) {
+            double q = Math.sqrt(q2);
+            c = Math.cosh(q * dt);
+            d = Math.sinh(q * dt) / q;
+        } else {
+            double q = Math.sqrt(-q2);
+            c = Math.cos(q * dt);
+            d = Math.sin(q * dt) / q;
+        }
+
+        double e = Math.exp(s * dt);
+        phi[0] = e * (c + d * (a[0] - s));
+        phi[1] = e * d * a[1];
+        phi[2] = e * d * a[2];
+        phi[3] = e * (c + d * (a[3] - s));
+
+        // Integrals by the inverse of A, which exists since the motor dissipates energy
+        double i00 = a[3] / det, i01 = -a[1] / det, i10 = -a[2] / det, i11 = a[0] / det;
+        double p0 = phi[0] - 1, p1 = phi[1], p2 = phi[2], p3 = phi[3] - 1;
+
+        gamma1[0] = i00 * p0 + i01 * p2;
+        gamma1[1] = i00 * p1 + i01 * p3;
+        gamma1[2] = i10 * p0 + i11 * p2;
+        gamma1[3] = i10 * p1 + i11 * p3;
+
+        double g0 = gamma1[0] - dt, g1 = gamma1[1], g2 = gamma1[2], g3 = gamma1[3] - dt;
+
+        gamma2[0] = i00 * g0 + i01 * g2;
+        gamma2[1] = i00 * g1 + i01 * g3;
+        gamma2[2] = i10 * g0 + i11 * g2;
+        gamma2[3] = i10 * g1 + i11 * g3;
+
+        cachedStep = dt;
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        for (int i = 0; i < wheels; i++) {
+            c.putDouble(current[i]);
+            c.putDouble(speed[i]);
+        }
+
+        c.putDouble(busVoltage);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        for (int i = 0; i < wheels; i++) {
+            current[i] = c.getDouble();
+            speed[i] = c.getDouble();
+        }
+
+        busVoltage = c.getDouble();
+    }
+}
@@ -4,7 +4,10 @@ import elusive.geometry.Pose2D;
 import elusive.geometry.Vector2D;
 import elusive.profiling.motion.MotionState1D;
 
-import livetrain.Clock;
+import livetrain.Log;
+import livetrain.Scheduler;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
 
 import java.awt.Graphics2D;
 
@@ -12,9 +15,10 @@ import java.awt.Graphics2D;
  * Parent of all simulated objects. Handles object kinematics. States are openly mutable for
  * instantaneous changes
  */
-public abstract class Simulant {
+public abstract class Simulant implements Stateful {
     public MotionState1D xState, yState, thetaState;
     protected volatile double lastUpdateTimestamp = -1;
+    protected volatile Integrator.Type integrator = Integrator.Type.TWIST;
     
     /**
      * Simulants default to pose <0, 0, 0> with no vectors
@@ -56,6 +60,21 @@ public abstract class Simulant {
      */
     public Pose2D pose() { return new Pose2D(xState.x, yState.x, thetaState.x); }
 
+    /**
+     * @return Scheme used to advance the object's pose
+     */
+    public Integrator.Type integrator() { return integrator; }
+
+    /**
+     * Set the integration scheme
+     * 
+     * @param type Scheme
+     */
+    public void setIntegrator(Integrator.Type type) {
+        integrator = type;
+        Log.add("Set " + getClass().getSimpleName() + ".integrator", "" + type);
+    }
+
     /**
      * Reset the last update timestamp. The next update cycle will have no effect, but
      * subsequent cycles proceed as normal with the correct dt for physics calculations
@@ -76,23 +95,70 @@ public abstract class Simulant {
     }
 
     /**
-     * Run a single update cycle
+     * Register any periodic work the object performs with the simulation's event queue
+     * 
+     * @param scheduler Event queue
+     */
+    public void schedule(Scheduler scheduler) {}
+
+    /**
+     * Advance the object to a simulation time
      * 
      * @param timestamp Simulation time
      */
     public void update(double timestamp) {
-        if (lastUpdateTimestamp != -1) {
-            double dt = (timestamp - lastUpdateTimestamp) * Clock.simulationSpeed;
+        if (lastUpdateTimestamp != -1 && timestamp > lastUpdateTimestamp) {
+            double dt = timestamp - lastUpdateTimestamp;
 
-            // Update state
-            xState = xState.stateAtTime(dt);
-            yState = yState.stateAtTime(dt);
-            thetaState = thetaState.stateAtTime(dt);
+            integrate(dt);
         }
         
         lastUpdateTimestamp = timestamp;
     }
 
+    /**
+     * Advance the object's states. By default each axis is stepped independently along its
+     * world-frame motion state
+     * 
+     * @param dt Step
+     */
+    protected void integrate(double dt) {
+        xState = xState.stateAtTime(dt);
+        yState = yState.stateAtTime(dt);
+        thetaState = thetaState.stateAtTime(dt);
+    }
+
+    @Override public void saveState(StateCursor c) {
+        save(c, xState);
+        save(c, yState);
+        save(c, thetaState);
+        c.putDouble(lastUpdateTimestamp);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        restore(c, xState);
+        restore(c, yState);
+        restore(c, thetaState);
+        lastUpdateTimestamp = c.getDouble();
+    }
+    
+    // The axes are replaced as they integrate, so they are passed one at a time rather than held in an array
+    private static void save(StateCursor c, MotionState1D s) {
+        c.putDouble(s.x);
+        c.putDouble(s.v);
+        c.putDouble(s.a);
+        c.putDouble(s.j);
+        c.putDouble(s.t);
+    }
+    
+    private static void restore(StateCursor c, MotionState1D s) {
+        s.x = c.getDouble();
+        s.v = c.getDouble();
+        s.a = c.getDouble();
+        s.j = c.getDouble();
+        s.t = c.getDouble();
+    }
+
     /**
      * Draw the object to a graphics surface
      * 
@@ -0,0 +1,186 @@
+package livetrain.physics;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Traction-limited wheel contact. Each wheel's contact speed, which is what moves the robot,
+ * follows the speed of its rim only as fast as friction allows. The usable acceleration is the
+ * friction coefficient times the wheel's share of the robot's weight, spread over its share of
+ * the mass, and reduced for wheels whose rollers carry the drive force at an angle. Beyond that
+ * the wheel slips
+ * <p>
+ * With the rim speed held over a step, the contact speed ramps toward it at the limit and then
+ * tracks it, so the mean over the step is found in closed form at a fixed cost per wheel. Speeds
+ * are fractions of the wheel's free speed, as powers are
+ */
+public class TractionModel implements Stateful {
+    public static final double GRAVITY = 9.81;
+
+    private double friction = 1, frontBias = 0.5, metersPerUnit = 0.0254;
+    private double[] position = new double[0], coupling = new double[0];
+    private double[] limit = new double[0], contact = new double[0];
+    private double surfaceSpeed = 100, slip = 0;
+    private int wheels = 0;
+
+    /**
+     * Match the wheels to a drivetrain. Contact state is reset if the number of wheels changes
+     *
+     * @param longitudinal Each wheel's position along the heading, positive toward the front
+     * @param coupling Each wheel's drive force per unit of friction force at the contact, below
+     *                 one where rollers carry the force at an angle
+     * @param surfaceSpeed Rim speed of a wheel at full power, in simulation units per second
+     */
+    public synchronized void configure(double[] longitudinal, double[] coupling, double surfaceSpeed) {
+        if (longitudinal.length != wheels) {
+            wheels = longitudinal.length;
+            contact = new double[wheels];
+            limit = new double[wheels];
+        }
+
+        position = longitudinal.clone();
+        this.coupling = coupling.clone();
+        this.surfaceSpeed = surfaceSpeed;
+        derive();
+    }
+
+    /**
+     * @return Coefficient of friction between wheel and floor
+     */
+    public double friction() { return friction; }
+
+    /**
+     * @param mu Coefficient of friction between wheel and floor
+     */
+    public synchronized void setFriction(double mu) {
+        if (mu <= 0)
+            throw new IllegalArgumentException("Friction coefficient must be positive");
+
+        friction = mu;
+        derive();
+        Log.add("Set TractionModel.friction", "" + mu);
+    }
+
+    /**
+     * @return Fraction of the robot's weight on its front wheels
+     */
+    public double frontBias() { return frontBias; }
+
+    /**
+     * @param bias Fraction of the robot's weight on its front wheels, with the rest on the back
+     */
+    public synchronized void setFrontBias(double bias) {
+        if (bias < 0 || bias > 1)
+            throw new IllegalArgumentException("Weight bias must be on [0, 1]");
+
+        frontBias = bias;
+        derive();
+        Log.add("Set TractionModel.frontBias", "" + bias);
+    }
+
+    /**
+     * @param index Wheel index
+     * @return Acceleration limit of that wheel's contact in simulation units per second squared
+     */
+    public synchronized double accelerationLimit(int index) { return limit[index] * surfaceSpeed; }
+
+    /**
+     * @return Smallest acceleration limit of any wheel in simulation units per second squared
+     */
+    public synchronized double minimumAccelerationLimit() {
+        double least = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < wheels; i++)
+            least = Math.min(least, limit[i] * surfaceSpeed);
+
+        return least;
+    }
+
+    /**
+     * @return Largest difference between a rim and its contact at the end of the last step, as a
+     *         fraction of free speed
+     */
+    public double slip() { return slip; }
+
+    /**
+     * Stop every wheel
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < wheels; i++)
+            contact[i] = 0;
+
+        slip = 0;
+    }
+
+    /**
+     * Set every contact speed to its rim speed, so that enabling the model does not jolt a
+     * moving robot
+     *
+     * @param rim Rim speeds
+     */
+    public synchronized void settle(double[] rim) {
+        for (int i = 0; i < wheels; i++)
+            contact[i] = rim[i];
+    }
+
+    /**
+     * @param out Filled with each wheel's contact speed
+     */
+    public synchronized void speeds(double[] out) {
+        for (int i = 0; i < wheels; i++)
+            out[i] = contact[i];
+    }
+
+    /**
+     * Advance every wheel's contact by a step with its rim speed held
+     *
+     * @param rim Rim speeds
+     * @param dt Step
+     * @param mean Filled with each contact's mean speed over the step
+     */
+    public synchronized void step(double[] rim, double dt, double[] mean) {
+        double worst = 0;
+
+        for (int i = 0; i < wheels; i++) {
+            double c0 = contact[i], gap = rim[i] - c0;
+            double reach = Math.abs(gap), travel = limit[i] * dt;
+
+            if (reach <= travel) {
+                // Reaches the rim within the step after ramping for reach / limit seconds
+                double ramp = limit[i] > 0 ? reach / limit[i] : 0;
+                contact[i] = rim[i];
+                mean[i] = (rim[i] * (dt - ramp) + (c0 + rim[i]) / 2 * ramp) / dt;
+            } else {
+                contact[i] = c0 + Math.copySign(travel, gap);
+                mean[i] = (c0 + contact[i]) / 2;
+                worst = Math.max(worst, reach - travel);
+            }
+        }
+
+        slip = worst;
+    }
+
+    /**
+     * Each wheel carries a share of the weight biased toward the front or back, and accelerates
+     * an equal share of the mass
+     */
+    private void derive() {
+        for (int i = 0; i < wheels; i++) {
+            double side = Math.signum(position[i]);
+            double load = (1 + (2 * frontBias - 1) * side);
+
+            limit[i] = friction * coupling[i] * load * GRAVITY / metersPerUnit / surfaceSpeed;
+        }
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        for (int i = 0; i < wheels; i++)
+            c.putDouble(contact[i]);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        for (int i = 0; i < wheels; i++)
+            contact[i] = c.getDouble();
+    }
+}
@@ -0,0 +1,175 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+import elusive.trajectory.Trajectory;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.metrics.FollowerUpdateEvent;
+
+/**
+ * Shared bookkeeping for followers: samples the trajectory, expresses the tracking error and the
+ * reference motion in the robot frame, and records the update. Subclasses only compute powers
+ */
+public abstract class AbstractFollower implements Follower {
+    public static final double DIFFERENCE_STEP = 0.005;
+    public static final int VX = 0, VY = 1, OMEGA = 2, AX = 3, AY = 4;
+    
+    protected volatile Trajectory trajectory;
+    protected Pose2D pathPose, pathVelocity, pathAcceleration;
+    protected double headingError, lateralError, axialError;
+    protected double headingUpdate, lateralUpdate, axialUpdate;
+    
+    // The trajectory's velocity and acceleration are derivatives along the curve parameter rather
+    // than in time. Rotated into the estimated robot frame, they are the PIDVA feedforward inputs
+    protected double pathAxialVelocity, pathLateralVelocity, pathAxialAcceleration, pathLateralAcceleration;
+    
+    // Time derivatives of the reference pose in the field frame, indexed by VX, VY, OMEGA, AX, AY.
+    // Differentiating takes three trajectory samples, so only followers that use it fill it
+    protected double[] reference = new double[5];
+    
+    @Override public Pose2D pathPose() { return pathPose; }
+    
+    @Override public Pose2D pathVelocity() { return pathVelocity; }
+    
+    @Override public Pose2D pathAcceleration() { return pathAcceleration; }
+    
+    @Override public double headingError() { return headingError; }
+    
+    @Override public double lateralError() { return lateralError; }
+    
+    @Override public double axialError() { return axialError; }
+    
+    @Override public double headingUpdate() { return headingUpdate; }
+    
+    @Override public double lateralUpdate() { return lateralUpdate; }
+    
+    @Override public double axialUpdate() { return axialUpdate; }
+    
+    @Override public Trajectory trajectory() { return trajectory; }
+    
+    @Override public void setTrajectory(Trajectory t) {
+        trajectory = t;
+        Log.add("Set " + getClass().getSimpleName() + ".trajectory", trajectory.toString(), "Motion profile",
+                trajectory.profile().toString());
+    }
+    
+    @Override public synchronized void update(Pose2D estimatedPose, double t, double[] powers) {
+        FollowerUpdateEvent event = FollowerUpdateEvent.TYPE.isEnabled() ? new FollowerUpdateEvent() : null;
+        
+        if (event != null)
+            event.begin();
+        
+        if (trajectory == null) {
+            for (int i = 0; i < powers.length; i++)
+                powers[i] = 0;
+        } else {
+            sample(estimatedPose, t);
+            compute(estimatedPose, t, powers);
+        }
+        
+        if (event != null) {
+            event.simulationTime = t;
+            event.headingError = headingError;
+            event.lateralError = lateralError;
+            event.axialError = axialError;
+            event.wheels = powers.length;
+            event.power0 = power(powers, 0);
+            event.power1 = power(powers, 1);
+            event.power2 = power(powers, 2);
+            event.power3 = power(powers, 3);
+            event.power4 = power(powers, 4);
+            event.power5 = power(powers, 5);
+            event.commit();
+        }
+    }
+    
+    /**
+     * Compute wheel powers once the reference and errors for this update are known
+     * 
+     * @param estimatedPose Where the robot thinks it is
+     * @param t Simulation time
+     * @param powers Wheel powers, filled
+     */
+    protected abstract void compute(Pose2D estimatedPose, double t, double[] powers);
+    
+    /**
+     * @return A wheel's power, or zero for a wheel the base does not have
+     */
+    private static double power(double[] powers, int wheel) { return wheel < powers.length ? powers[wheel] : 0; }
+    
+    /**
+     * Sample the trajectory and express the error (estimate minus reference) and the reference
+     * motion in the robot frame
+     */
+    private void sample(Pose2D estimatedPose, double t) {
+        pathPose = trajectory.poseAtTime(t);
+        pathVelocity = trajectory.velocityAtTime(t);
+        pathAcceleration = trajectory.accelerationAtTime(t);
+        
+        double cos = Math.cos(estimatedPose.heading()), sin = Math.sin(estimatedPose.heading());
+        double dx = estimatedPose.x() - pathPose.x(), dy = estimatedPose.y() - pathPose.y();
+        
+        headingError = estimatedPose.heading() - pathPose.heading();
+        axialError = dx * cos + dy * sin;
+        lateralError = -dx * sin + dy * cos;
+        pathAxialVelocity = pathVelocity.x() * cos + pathVelocity.y() * sin;
+        pathLateralVelocity = -pathVelocity.x() * sin + pathVelocity.y() * cos;
+        pathAxialAcceleration = pathAcceleration.x() * cos + pathAcceleration.y() * sin;
+        pathLateralAcceleration = -pathAcceleration.x() * sin + pathAcceleration.y() * cos;
+    }
+    
+    /**
+     * Differentiate the trajectory's pose in time by central differences. Times are clamped to
+     * the trajectory, so the reference is at rest before it starts and after it ends
+     * 
+     * @param s Trajectory time
+     * @param out Filled with the field-frame velocity, heading rate and acceleration, indexed by
+     *            VX, VY, OMEGA, AX, AY
+     */
+    protected void differentiate(double s, double[] out) {
+        double duration = trajectory.duration();
+        double s0 = Math.max(s - DIFFERENCE_STEP, 0), s1 = Math.min(s + DIFFERENCE_STEP, duration);
+        double sm = Math.min(Math.max(s, 0), duration);
+        
+        if (s1 <= s0) {
+            for (int i = 0; i < out.length; i++)
+                out[i] = 0;
+            
+            return;
+        }
+        
+        Pose2D p0 = trajectory.poseAtTime(s0), p = trajectory.poseAtTime(sm), p1 = trajectory.poseAtTime(s1);
+        double span = s1 - s0, h0 = sm - s0, h1 = s1 - sm;
+        
+        out[VX] = (p1.x() - p0.x()) / span;
+        out[VY] = (p1.y() - p0.y()) / span;
+        out[OMEGA] = wrap(p1.heading() - p0.heading()) / span;
+        
+        if (h0 > 0 && h1 > 0) {
+            out[AX] = ((p1.x() - p.x()) / h1 - (p.x() - p0.x()) / h0) * 2 / span;
+            out[AY] = ((p1.y() - p.y()) / h1 - (p.y() - p0.y()) / h0) * 2 / span;
+        } else {
+            out[AX] = 0;
+            out[AY] = 0;
+        }
+    }
+    
+    /**
+     * @param a Angle
+     * @return Equivalent angle on [-pi, pi]
+     */
+    protected static double wrap(double a) { return Math.atan2(Math.sin(a), Math.cos(a)); }
+    
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putPose(pathPose);
+        c.putPose(pathVelocity);
+        c.putPose(pathAcceleration);
+    }
+    
+    @Override public synchronized void restoreState(StateCursor c) {
+        pathPose = c.getPose();
+        pathVelocity = c.getPose();
+        pathAcceleration = c.getPose();
+    }
+}
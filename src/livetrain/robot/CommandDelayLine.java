@@ -0,0 +1,134 @@
+package livetrain.robot;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Delay line of wheel power commands, each held in a preallocated ring until the time it
+ * reaches the motors. Commands leave in the order they were sent, as they would over a bus, so a
+ * command is never due before the one sent ahead of it
+ */
+public class CommandDelayLine implements Stateful {
+    public static final int CAPACITY = 64;
+
+    private int width;
+    private double[] times = new double[CAPACITY], commands;
+    private long head = 0, tail = 0, dropped = 0;
+
+    /**
+     * @param width Number of wheels
+     */
+    public CommandDelayLine(int width) { resize(width); }
+
+    /**
+     * @return Number of wheels
+     */
+    public int width() { return width; }
+
+    /**
+     * Change the number of wheels, discarding every command
+     *
+     * @param width Number of wheels
+     */
+    public synchronized void resize(int width) {
+        this.width = width;
+        commands = new double[CAPACITY * width];
+        clear();
+    }
+
+    /**
+     * Discard every command
+     */
+    public synchronized void clear() {
+        head = 0;
+        tail = 0;
+    }
+
+    /**
+     * @return Number of commands in flight
+     */
+    public synchronized int size() { return (int)(tail - head); }
+
+    /**
+     * @return Number of commands discarded because the line was full
+     */
+    public synchronized long dropped() { return dropped; }
+
+    /**
+     * Send a command. If the line is full, the oldest command in flight is lost
+     *
+     * @param time Time the command reaches the motors
+     * @param powers Wheel powers
+     */
+    public synchronized void push(double time, double[] powers) {
+        if (tail - head == CAPACITY) {
+            head++;
+            dropped++;
+        }
+
+        if (tail > head)
+            time = Math.max(time, times[slot(tail - 1)]);
+
+        int s = slot(tail++);
+        times[s] = time;
+        System.arraycopy(powers, 0, commands, s * width, width);
+    }
+
+    /**
+     * @param time Simulation time
+     * @return If the oldest command in flight has reached the motors by then
+     */
+    public synchronized boolean due(double time) { return tail > head && times[slot(head)] <= time; }
+
+    /**
+     * @return Time the oldest command in flight reaches the motors
+     */
+    public synchronized double nextTime() { return times[slot(head)]; }
+
+    /**
+     * Take the oldest command in flight
+     *
+     * @param out Filled with its wheel powers
+     */
+    public synchronized void pop(double[] out) {
+        System.arraycopy(commands, slot(head++) * width, out, 0, width);
+    }
+
+    private int slot(long index) { return (int)(index % CAPACITY); }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putLong(width);
+        c.putLong(head);
+        c.putLong(tail);
+        c.putLong(dropped);
+
+        for (long k = head; k < tail; k++) {
+            int s = slot(k);
+            c.putDouble(times[s]);
+
+            for (int i = 0; i < width; i++)
+                c.putDouble(commands[s * width + i]);
+        }
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        // The line is resized on the first command after the number of wheels changes, so a
+        // snapshot can hold commands for the old number
+        int w = (int)c.getLong();
+
+        if (w != width)
+            resize(w);
+
+        head = c.getLong();
+        tail = c.getLong();
+        dropped = c.getLong();
+
+        for (long k = head; k < tail; k++) {
+            int s = slot(k);
+            times[s] = c.getDouble();
+
+            for (int i = 0; i < width; i++)
+                commands[s * width + i] = c.getDouble();
+        }
+    }
+}
@@ -1,21 +1,44 @@
 package livetrain.robot;
 
-import elusive.geometry.Pose2D;
 import elusive.math.ElusiveMath;
 
 import livetrain.Log;
+import livetrain.physics.MotorModel;
+import livetrain.physics.TractionModel;
 
 /**
- * Provides the inverse kinematics that govern the robot's pose velocities. Wheel indices
- * begin at the front left and go counter-clockwise
+ * Provides the kinematics that govern the robot's pose velocities. Each type is described by
+ * where its wheels sit and which way each one drives; from that geometry a forward matrix (wheel
+ * powers to body twist) and an inverse matrix (body twist to wheel powers) are precomputed, so
+ * resolving the kinematics is a small matrix multiply with no branching on the type. Wheel
+ * indices begin at the front left and go counter-clockwise
+ * <p>
+ * Twists are <axial, lateral, heading rate> in the body frame with the heading counter-clockwise
+ * positive. A wheel at full power has a surface speed of its radius times the maximum velocity.
+ * The robot's width runs along its heading, as it is drawn, and its height across it
+ * <p>
+ * Changes to the type and geometry can come from the interface while the simulation thread is
+ * resolving kinematics, so they only mark the kinematics for a rebuild, which the simulation
+ * thread makes between steps with {@link #applyPending()}
  */
 public class Drivetrain {
-    public enum Type { MECANUM, TANK };
-    private Type type;
+    public enum Type { MECANUM, TANK, X_DRIVE, SIX_WHEEL };
+    
+    // Most wheels on any type. Telemetry and flight recordings carry a power for each
+    public static final int MAX_WHEELS = 6;
+    private volatile Type type;
     private Robot robot;
-    private double[] powers = new double[4]; // TODO: Add support for variable number of wheels?
-    private double wheelRadius, wheelSeparationWidth, wheelSeparationLength;
+    private double[] powers, rimSpeeds, contactSpeeds, wheelAngles, scratch;
+    private volatile double wheelRadius;
     private double maxVelocity;
+    private volatile boolean rebuildPending = false;
+    private MotorModel motors = new MotorModel();
+    private TractionModel tractionModel = new TractionModel();
+    private volatile boolean motorDynamics = false, traction = false;
+
+    // Row-major: inverse is wheels x 3, forward is 3 x wheels, mix is the inverse with each
+    // column scaled to a largest magnitude of one
+    private double[] inverse, forward, mix;
 
     /**
      * @param type Drivetrain type
@@ -26,10 +49,14 @@ public class Drivetrain {
         this.type = type;
         this.robot = robot;
         maxVelocity = maxVel;
-        wheelSeparationWidth = robot.width() / 2;
-        wheelSeparationLength = robot.height() / 2;
         wheelRadius = 2;
+        rebuild();
     }
+
+    /**
+     * @return Number of wheels
+     */
+    public int wheelCount() { return powers.length; }
     
     /**
      * @param index Wheel index
@@ -44,34 +71,16 @@ public class Drivetrain {
     public void setPower(int index, double pow) { powers[index] = ElusiveMath.clamp(pow, -1, 1); }
     
     /**
-     * @return Wheel powers [0, 1, 2, 3]
+     * @return Wheel powers, one per wheel
      */
     public double[] powers() { return powers; }
     
     /**
-     * @param a Wheel 0 power
-     * @param b Wheel 1 power
-     * @param c Wheel 2 power
-     * @param d Wheel 3 power
-     */
-    public void setPowers(double a, double b, double c, double d) {
-        powers[0] = ElusiveMath.clamp(a, -1, 1);
-        powers[1] = ElusiveMath.clamp(b, -1, 1);
-        powers[2] = ElusiveMath.clamp(c, -1, 1);
-        powers[3] = ElusiveMath.clamp(d, -1, 1);
-    }
-
-    /**
-     * @param a Wheel 0 power increment
-     * @param b Wheel 1 power increment
-     * @param c Wheel 2 power increment
-     * @param d Wheel 3 power increment
+     * @param p Wheel powers, one per wheel. Missing wheels are given zero power
      */
-    public void updatePowers(double a, double b, double c, double d) {
-        powers[0] = ElusiveMath.clamp(powers[0] + a, -1, 1);
-        powers[1] = ElusiveMath.clamp(powers[1] + b, -1, 1);
-        powers[2] = ElusiveMath.clamp(powers[2] + c, -1, 1);
-        powers[3] = ElusiveMath.clamp(powers[3] + d, -1, 1);
+    public void setPowers(double[] p) {
+        for (int i = 0; i < powers.length; i++)
+            powers[i] = i < p.length ? ElusiveMath.clamp(p[i], -1, 1) : 0;
     }
 
     /**
@@ -80,11 +89,16 @@ public class Drivetrain {
     public Type type() { return type; }
 
     /**
-     * Set drivetrain type
+     * Set drivetrain type, taking effect before the next step. Wheel powers are reset if the
+     * number of wheels changes
      * 
      * @param type Drivetrain type
      */
-    public void setType(Type type) { this.type = type; }
+    public void setType(Type type) {
+        this.type = type;
+        rebuildPending = true;
+        Log.add("Set Drivetrain.type", type.toString());
+    }
     
     /**
      * @return Wheel radius
@@ -92,34 +106,341 @@ public class Drivetrain {
     public double wheelRadius() { return wheelRadius; }
 
     /**
-     * Set the wheel radius
+     * Set the wheel radius, taking effect before the next step
      * 
      * @param radius Wheel radius
      */
     public void setWheelRadius(double radius) {
         wheelRadius = radius;
+        rebuildPending = true;
         Log.add("Set Drivetrain.wheelRadius", "" + radius);
     }
  
     /**
-     * Get the velocity pose of the drivetrain according to its type and wheel powers
+     * @return Motors driving the wheels
+     */
+    public MotorModel motors() { return motors; }
+    
+    /**
+     * @return If wheel speeds follow the motor model rather than the powers directly
+     */
+    public boolean motorDynamics() { return motorDynamics; }
+    
+    /**
+     * Choose whether wheel speeds follow the motor model. When enabled, the motors start in the
+     * steady state of the current powers
+     * 
+     * @param enabled Simulate motor dynamics?
+     */
+    public void setMotorDynamics(boolean enabled) {
+        if (enabled && !motorDynamics)
+            motors.settle(powers);
+        
+        motorDynamics = enabled;
+        Log.add("Set Drivetrain.motorDynamics", "" + enabled);
+    }
+    
+    /**
+     * @return Traction limits on the wheels
+     */
+    public TractionModel tractionModel() { return tractionModel; }
+    
+    /**
+     * @return If wheel contact is traction-limited rather than following the wheels exactly
+     */
+    public boolean traction() { return traction; }
+    
+    /**
+     * Choose whether wheel contact is traction-limited. When enabled, the contacts start at the
+     * current wheel speeds
+     * 
+     * @param enabled Limit traction?
+     */
+    public void setTraction(boolean enabled) {
+        if (enabled && !traction) {
+            if (motorDynamics) {
+                motors.speeds(rimSpeeds);
+                tractionModel.settle(rimSpeeds);
+            } else {
+                tractionModel.settle(powers);
+            }
+        }
+        
+        traction = enabled;
+        Log.add("Set Drivetrain.traction", "" + enabled);
+    }
+    
+    /**
+     * Resolve the kinematics over a physics step with the powers held. Each wheel's speed passes
+     * through the motor and traction models where they are enabled, then the forward kinematics.
+     * With neither, this is the forward kinematics of the powers. A zero step gives the current
+     * speeds
+     * 
+     * @param dt Step
+     * @param out Filled with the mean axial velocity, lateral velocity and heading rate over the
+     *            step
+     */
+    public void step(double dt, double[] out) {
+        double[] wheels = powers;
+        
+        if (motorDynamics) {
+            if (dt > 0)
+                motors.step(wheels, dt, rimSpeeds);
+            else
+                motors.speeds(rimSpeeds);
+            
+            wheels = rimSpeeds;
+        }
+        
+        // Encoders measure the rims, so the wheels turn at their own speed even while slipping
+        for (int i = 0; i < wheelAngles.length; i++)
+            wheelAngles[i] += wheels[i] * maxVelocity * dt;
+        
+        if (traction) {
+            if (dt > 0)
+                tractionModel.step(wheels, dt, contactSpeeds);
+            else
+                tractionModel.speeds(contactSpeeds);
+            
+            wheels = contactSpeeds;
+        }
+        
+        forward(wheels, out);
+    }
+    
+    /**
+     * @return Angle each wheel has turned in radians. Wheels turn at their own speed, so this
+     *         includes any slip against the floor
+     */
+    public double[] wheelAngles() { return wheelAngles; }
+    
+    /**
+     * Twist that odometry infers from the wheels' turning over an interval
+     * 
+     * @param deltas Angle each wheel turned
+     * @param dt Interval
+     * @param out Filled with the axial velocity, lateral velocity and heading rate
+     */
+    public void odometry(double[] deltas, double dt, double[] out) {
+        for (int i = 0; i < scratch.length; i++)
+            scratch[i] = deltas[i] / (maxVelocity * dt);
+        
+        forward(scratch, out);
+    }
+    
+    /**
+     * Recompute the kinematics from the robot's current dimensions before the next step
+     */
+    public void updateGeometry() { rebuildPending = true; }
+    
+    /**
+     * Rebuild the kinematics if the type or geometry has changed. Only the simulation thread may
+     * call this, between steps, since rebuilding replaces the arrays the kinematics read
      * 
-     * @return Velocity pose
+     * @return If the number of wheels changed, which changes the layout of saved state
      */
-    public Pose2D state() {
-        double xVel = 0, yVel = 0, thetaVel = 0;
+    public boolean applyPending() {
+        if (!rebuildPending)
+            return false;
+        
+        // Cleared first, so a change made during the rebuild is picked up next time
+        rebuildPending = false;
+        int n = powers.length;
+        rebuild();
         
+        return powers.length != n;
+    }
+    
+    /**
+     * Body-frame twist produced by a set of wheel powers. Where the wheels disagree, as with the
+     * middle wheels of a skid-steer base, this is the least-squares twist
+     * 
+     * @param p Wheel powers, used as given without clamping
+     * @param out Filled with the axial velocity, lateral velocity and heading rate
+     */
+    public void forward(double[] p, double[] out) {
+        int n = powers.length;
+
+        for (int j = 0; j < 3; j++) {
+            double sum = 0;
+
+            for (int i = 0; i < n; i++)
+                sum += forward[j * n + i] * p[i];
+
+            out[j] = sum;
+        }
+    }
+    
+    /**
+     * Find the wheel powers whose state is the given body-frame twist. Powers are left
+     * unclamped so the caller can see saturation. Motion the drivetrain cannot make, such as
+     * lateral motion on a tank base, is dropped
+     * 
+     * @param vx Axial velocity
+     * @param vy Lateral velocity
+     * @param omega Heading rate
+     * @param out Wheel powers, filled
+     */
+    public void inverse(double vx, double vy, double omega, double[] out) {
+        for (int i = 0; i < powers.length; i++)
+            out[i] = inverse[i * 3] * vx + inverse[i * 3 + 1] * vy + inverse[i * 3 + 2] * omega;
+    }
+
+    /**
+     * Mix commands expressed directly in power. Each command at one drives the wheels that
+     * produce that motion at full power
+     *
+     * @param axial Axial command
+     * @param lateral Lateral command
+     * @param turn Counter-clockwise turn command
+     * @param out Wheel powers, filled
+     */
+    public void mix(double axial, double lateral, double turn, double[] out) {
+        for (int i = 0; i < powers.length; i++)
+            out[i] = mix[i * 3] * axial + mix[i * 3 + 1] * lateral + mix[i * 3 + 2] * turn;
+    }
+
+    /**
+     * Lay out the wheels for the current type and precompute the kinematic matrices
+     */
+    private void rebuild() {
+        double base = robot.width() / 2, track = robot.height() / 2;
+        double[] px, py, dx, dy;
+
         switch (type) {
-            case MECANUM:
-                xVel = (powers[0] + powers[3] + powers[1] + powers[2]) * (wheelRadius / 4);
-                yVel = (-powers[0] + powers[3] + powers[1] - powers[2]) * (wheelRadius / 4);
-                thetaVel = (-powers[0] + powers[3] - powers[1] + powers[2]) * (wheelRadius / (4 * (wheelSeparationWidth + wheelSeparationLength)));
-                break;
-                
             case TANK:
+                px = new double[] { base, -base, -base, base };
+                py = new double[] { track, track, -track, -track };
+                dx = new double[] { 1, 1, 1, 1 };
+                dy = new double[] { 0, 0, 0, 0 };
+                break;
+
+            case SIX_WHEEL:
+                px = new double[] { base, 0, -base, -base, 0, base };
+                py = new double[] { track, track, track, -track, -track, -track };
+                dx = new double[] { 1, 1, 1, 1, 1, 1 };
+                dy = new double[] { 0, 0, 0, 0, 0, 0 };
+                break;
+
+            case X_DRIVE:
+                // Omni wheels at the corners, each driving at 45 degrees to the heading
+                double h = Math.sqrt(0.5);
+                px = new double[] { base, -base, -base, base };
+                py = new double[] { track, track, -track, -track };
+                dx = new double[] { h, h, h, h };
+                dy = new double[] { -h, h, -h, h };
+                break;
+
+            case MECANUM:
+            default:
+                // Rollers at 45 degrees couple lateral motion into each wheel's rotation at unit
+                // ratio, alternating in sign around the base
+                px = new double[] { base, -base, -base, base };
+                py = new double[] { track, track, -track, -track };
+                dx = new double[] { 1, 1, 1, 1 };
+                dy = new double[] { -1, 1, -1, 1 };
                 break;
         }
-    
-        return new Pose2D(xVel * maxVelocity, yVel * maxVelocity, thetaVel);
+
+        int n = px.length;
+        double speed = wheelRadius * maxVelocity;
+
+        if (n > MAX_WHEELS)
+            throw new IllegalStateException(type + " has more than " + MAX_WHEELS + " wheels");
+
+        if (powers == null || powers.length != n) {
+            powers = new double[n];
+            rimSpeeds = new double[n];
+            contactSpeeds = new double[n];
+            wheelAngles = new double[n];
+            scratch = new double[n];
+        }
+        
+        double[] coupling = new double[n];
+        
+        for (int i = 0; i < n; i++)
+            coupling[i] = 1 / Math.hypot(dx[i], dy[i]);
+        
+        motors.configure(n, wheelRadius, maxVelocity);
+        tractionModel.configure(px, coupling, speed);
+
+        // Wheel surface speed is its drive direction dotted with the velocity of its contact point
+        inverse = new double[n * 3];
+
+        for (int i = 0; i < n; i++) {
+            inverse[i * 3] = dx[i] / speed;
+            inverse[i * 3 + 1] = dy[i] / speed;
+            inverse[i * 3 + 2] = (dy[i] * px[i] - dx[i] * py[i]) / speed;
+        }
+
+        forward = pseudoInverse(inverse, n);
+        mix = new double[n * 3];
+
+        for (int j = 0; j < 3; j++) {
+            double max = 0;
+
+            for (int i = 0; i < n; i++)
+                max = Math.max(max, Math.abs(inverse[i * 3 + j]));
+
+            for (int i = 0; i < n; i++)
+                mix[i * 3 + j] = max == 0 ? 0 : inverse[i * 3 + j] / max;
+        }
+    }
+
+    /**
+     * Moore-Penrose inverse of a full column rank matrix, after dropping columns that are
+     * identically zero
+     *
+     * @param m Row-major n x 3 matrix
+     * @param n Rows
+     * @return Row-major 3 x n matrix
+     */
+    private static double[] pseudoInverse(double[] m, int n) {
+        // Normal matrix, augmented with the identity for Gauss-Jordan elimination
+        double[][] a = new double[3][6];
+        boolean[] active = new boolean[3];
+
+        for (int j = 0; j < 3; j++) {
+            for (int k = 0; k < 3; k++)
+                for (int i = 0; i < n; i++)
+                    a[j][k] += m[i * 3 + j] * m[i * 3 + k];
+
+            active[j] = a[j][j] > 0;
+            a[j][3 + j] = 1;
+        }
+
+        for (int j = 0; j < 3; j++) {
+            if (!active[j])
+                continue;
+
+            double pivot = a[j][j];
+
+            for (int k = 0; k < 6; k++)
+                a[j][k] /= pivot;
+
+            for (int r = 0; r < 3; r++) {
+                if (r == j || !active[r])
+                    continue;
+
+                double f = a[r][j];
+
+                for (int k = 0; k < 6; k++)
+                    a[r][k] -= f * a[j][k];
+            }
+        }
+
+        double[] f = new double[3 * n];
+
+        for (int j = 0; j < 3; j++) {
+            if (!active[j])
+                continue;
+
+            for (int i = 0; i < n; i++)
+                for (int k = 0; k < 3; k++)
+                    if (active[k])
+                        f[j * n + i] += a[j][3 + k] * m[i * 3 + k];
+        }
+
+        return f;
     }
 }
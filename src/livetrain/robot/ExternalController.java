@@ -0,0 +1,223 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+
+import livetrain.Log;
+import livetrain.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Hands follower updates to an external process over a loopback TCP connection, so real robot
+ * control code can drive the simulated robot. The simulation waits for each reply before
+ * continuing, which keeps runs deterministic as long as the external controller is. Round trips
+ * are recorded under {@link Metrics.Phase#CONTROLLER_ROUND_TRIP}. All values are big-endian
+ *
+ * <pre>
+ * hello   "LVTX", int version                            (simulation to controller, on connect)
+ * request long sequence, double time, double x, double y, double heading, int wheels
+ * reply   long sequence, wheels x double wheel power
+ * </pre>
+ * The number of wheels is that of the drivetrain at the time of the request, so it changes with
+ * the drivetrain type
+ */
+public class ExternalController implements Closeable {
+    public static final int DEFAULT_PORT = 7791;
+    public static final int MAGIC = 0x4C565458, VERSION = 2;
+    public static final int REPLY_TIMEOUT_MS = 1000;
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private volatile Socket socket = null;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private long sequence = 0;
+    private boolean warned = false;
+
+    /**
+     * Listen for a controller on the loopback interface
+     *
+     * @param port TCP port
+     * @throws IOException If the port cannot be bound
+     */
+    public ExternalController(int port) throws IOException {
+        server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(new Runnable() {
+            @Override public void run() { acceptLoop(); }
+        }, "External controller acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return If a controller is connected
+     */
+    public boolean connected() { return socket != null; }
+
+    /**
+     * @return Bound port
+     */
+    public int port() { return server.getLocalPort(); }
+
+    /**
+     * Accept one controller at a time. A new connection waits until the current one is dropped,
+     * and is closed if the controller is closed first
+     */
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            Socket s = null;
+
+            try {
+                s = server.accept();
+                s.setTcpNoDelay(true);
+                s.setSoTimeout(REPLY_TIMEOUT_MS);
+
+                DataOutputStream o = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                o.writeInt(MAGIC);
+                o.writeInt(VERSION);
+                o.flush();
+
+                synchronized (this) {
+                    while (socket != null && !server.isClosed())
+                        wait();
+
+                    if (server.isClosed())
+                        break;
+
+                    in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                    out = o;
+                    sequence = 0;
+                    warned = false;
+                    socket = s;
+                }
+
+                Log.add("External controller connected", "" + s.getRemoteSocketAddress());
+                s = null;
+            } catch (IOException ex) {
+                if (!server.isClosed())
+                    Log.add("Failed to accept external controller", ex.toString());
+            } catch (InterruptedException ex) {
+                break;
+            } finally {
+                // A connection that was never handed over is not needed
+                if (s != null)
+                    closeQuietly(s);
+            }
+        }
+    }
+
+    /**
+     * Exchange one update with the controller. Without a connected controller, or if it fails to
+     * reply in time, the robot is given zero power. The exchange is made without holding the
+     * controller's lock, so closing it is never held up by a slow reply
+     *
+     * @param estimatedPose Where the robot thinks it is
+     * @param t Simulation time
+     * @param powers Wheel powers, one per wheel, filled
+     * @return If the powers came from the controller
+     */
+    public boolean update(Pose2D estimatedPose, double t, double[] powers) {
+        for (int i = 0; i < powers.length; i++)
+            powers[i] = 0;
+
+        Socket s;
+        DataInputStream i;
+        DataOutputStream o;
+        long seq;
+
+        synchronized (this) {
+            if (socket == null) {
+                if (!warned)
+                    Log.add("External controller not connected; holding zero power");
+
+                warned = true;
+                return false;
+            }
+
+            s = socket;
+            i = in;
+            o = out;
+            seq = sequence++;
+        }
+
+        long mark = Metrics.start();
+
+        try {
+            o.writeLong(seq);
+            o.writeDouble(t);
+            o.writeDouble(estimatedPose.x());
+            o.writeDouble(estimatedPose.y());
+            o.writeDouble(estimatedPose.heading());
+            o.writeInt(powers.length);
+            o.flush();
+
+            if (i.readLong() != seq)
+                throw new IOException("External controller replied out of sequence");
+
+            for (int k = 0; k < powers.length; k++)
+                powers[k] = i.readDouble();
+        } catch (SocketTimeoutException ex) {
+            disconnect(s, "did not reply within " + REPLY_TIMEOUT_MS + "ms");
+            return zero(powers);
+        } catch (IOException ex) {
+            disconnect(s, ex.toString());
+            return zero(powers);
+        }
+
+        Metrics.stop(Metrics.Phase.CONTROLLER_ROUND_TRIP, mark);
+        return true;
+    }
+
+    /**
+     * Zero powers that a failed exchange may have partly filled
+     */
+    private static boolean zero(double[] powers) {
+        for (int i = 0; i < powers.length; i++)
+            powers[i] = 0;
+
+        return false;
+    }
+
+    /**
+     * Drop a connection, unless it has already been dropped
+     */
+    private synchronized void disconnect(Socket s, String reason) {
+        if (socket != s)
+            return;
+
+        Log.add("External controller disconnected", reason);
+        closeQuietly(s);
+        socket = null;
+        notifyAll();
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Stop listening and drop any connected controller
+     *
+     * @throws IOException If the listening socket cannot be closed
+     */
+    @Override public synchronized void close() throws IOException {
+        server.close();
+        acceptor.interrupt();
+        notifyAll();
+
+        // Closing the socket also ends an exchange in progress
+        if (socket != null)
+            disconnect(socket, "closed by simulation");
+    }
+}
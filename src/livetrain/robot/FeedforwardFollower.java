@@ -0,0 +1,31 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+
+/**
+ * Open-loop follower: the reference velocity in time is rotated into the robot frame and passed through
+ * the drivetrain's inverse kinematics with no feedback. Useful as a baseline for how much of the
+ * tracking the other followers owe to their corrections
+ */
+public class FeedforwardFollower extends AbstractFollower {
+    private Drivetrain drivetrain;
+    
+    /**
+     * @param drivetrain Drivetrain whose inverse kinematics produce the powers
+     */
+    public FeedforwardFollower(Drivetrain drivetrain) { this.drivetrain = drivetrain; }
+    
+    @Override public Type type() { return Type.FEEDFORWARD; }
+    
+    @Override protected void compute(Pose2D estimatedPose, double t, double[] powers) {
+        differentiate(t, reference);
+        
+        double cos = Math.cos(estimatedPose.heading()), sin = Math.sin(estimatedPose.heading());
+        
+        axialUpdate = reference[VX] * cos + reference[VY] * sin;
+        lateralUpdate = -reference[VX] * sin + reference[VY] * cos;
+        headingUpdate = reference[OMEGA];
+        
+        drivetrain.inverse(axialUpdate, lateralUpdate, headingUpdate, powers);
+    }
+}
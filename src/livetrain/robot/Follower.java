@@ -0,0 +1,83 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+import elusive.trajectory.Trajectory;
+
+import livetrain.history.Stateful;
+
+/**
+ * Control law that turns the estimated pose into wheel powers that track a trajectory.
+ * Implementations write into a caller-owned array so that updating does not allocate
+ */
+public interface Follower extends Stateful {
+    enum Type { PIDVA, PURE_PURSUIT, RAMSETE, FEEDFORWARD, MPC };
+
+    /**
+     * @return Control law
+     */
+    Type type();
+
+    /**
+     * @param t Trajectory to follow
+     */
+    void setTrajectory(Trajectory t);
+
+    /**
+     * @return Trajectory being followed, or null
+     */
+    Trajectory trajectory();
+
+    /**
+     * Run a single update cycle
+     *
+     * @param estimatedPose Where the robot thinks it is
+     * @param t Simulation time
+     * @param powers Wheel powers, filled
+     */
+    void update(Pose2D estimatedPose, double t, double[] powers);
+
+    /**
+     * @return Target trajectory pose at the last update
+     */
+    Pose2D pathPose();
+
+    /**
+     * @return Target path velocity at the last update
+     */
+    Pose2D pathVelocity();
+
+    /**
+     * @return Target path acceleration at the last update
+     */
+    Pose2D pathAcceleration();
+
+    /**
+     * @return Heading error at the last update
+     */
+    double headingError();
+
+    /**
+     * @return Robot-relative lateral error at the last update
+     */
+    double lateralError();
+
+    /**
+     * @return Robot-relative axial error at the last update
+     */
+    double axialError();
+
+    /**
+     * @return Angular command at the last update
+     */
+    double headingUpdate();
+
+    /**
+     * @return Lateral command at the last update
+     */
+    double lateralUpdate();
+
+    /**
+     * @return Axial command at the last update
+     */
+    double axialUpdate();
+}
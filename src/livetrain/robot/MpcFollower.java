@@ -0,0 +1,418 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.metrics.Metrics;
+
+/**
+ * Model predictive follower. Wheel powers over a short horizon are optimized against the
+ * trajectory using the drivetrain's kinematics, and the first step of the plan is applied.
+ * <p>
+ * The solver is projected gradient descent with backtracking. Gradients come from a single
+ * backward (adjoint) pass over the horizon, and projection is a clamp to the power limits.
+ * Each update starts from the previous plan shifted forward by the elapsed time. Iterates only
+ * ever improve and always respect the limits, so the solver can stop at any point and the
+ * current plan is usable. It stops on convergence, after a maximum number of iterations, or
+ * when the per-update compute budget runs out, whichever is first.
+ * <p>
+ * Solve times are recorded under {@link Metrics.Phase#MPC_SOLVE} for comparison with the
+ * control period. When the budget rather than the iteration limit ends solves, the result depends
+ * on the speed of the host, so runs are only reproducible while the budget is slack
+ */
+public class MpcFollower extends AbstractFollower {
+    public static final int DEFAULT_HORIZON = 20, DEFAULT_MAX_ITERATIONS = 200;
+    public static final double DEFAULT_STEP = 0.02, DEFAULT_BUDGET = 0.002;
+    public static final double MIN_STEP_SIZE = 1e-9, CONVERGED = 1e-6;
+
+    private Drivetrain drivetrain;
+    private int horizon, wheels, maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double step, budget = DEFAULT_BUDGET;
+    private double positionWeight = 1, headingWeight = 100, effortWeight = 0.01, smoothnessWeight = 0.1;
+
+    // Plan of wheel powers, one per wheel per step, with scratch for trial points and gradients
+    private double[] plan, trial, gradient, shifted;
+    private double[] refX, refY, refHeading, stateX, stateY, stateHeading;
+    private double[] applied, model, unit, twist = new double[3];
+    private double stepSize = 0.05, lastTime = Double.NaN;
+
+    private volatile long solves, exhausted, iterations;
+
+    /**
+     * @param drivetrain Drivetrain whose kinematics are the prediction model
+     */
+    public MpcFollower(Drivetrain drivetrain) {
+        this.drivetrain = drivetrain;
+        allocate(DEFAULT_HORIZON, DEFAULT_STEP);
+    }
+
+    @Override public Type type() { return Type.MPC; }
+
+    /**
+     * @return Number of steps predicted
+     */
+    public int horizon() { return horizon; }
+
+    /**
+     * @return Duration of each predicted step
+     */
+    public double step() { return step; }
+
+    /**
+     * Configure the prediction horizon. The current plan is discarded
+     *
+     * @param steps Number of steps predicted
+     * @param dt Duration of each predicted step
+     */
+    public synchronized void setHorizon(int steps, double dt) {
+        if (steps < 1 || dt <= 0)
+            throw new IllegalArgumentException("Horizon must have at least one step of positive duration");
+
+        allocate(steps, dt);
+        Log.add("Set MpcFollower horizon", "steps=" + steps, "step=" + dt);
+    }
+
+    /**
+     * @return Wall time allowed per update in seconds
+     */
+    public double budget() { return budget; }
+
+    /**
+     * @param seconds Wall time allowed per update
+     */
+    public void setBudget(double seconds) {
+        if (seconds <= 0)
+            throw new IllegalArgumentException("Budget must be positive");
+
+        budget = seconds;
+        Log.add("Set MpcFollower.budget", "" + seconds);
+    }
+
+    /**
+     * @return Iteration limit per update
+     */
+    public int maxIterations() { return maxIterations; }
+
+    /**
+     * @param n Iteration limit per update
+     */
+    public void setMaxIterations(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("Iteration limit must be positive");
+
+        maxIterations = n;
+        Log.add("Set MpcFollower.maxIterations", "" + n);
+    }
+
+    /**
+     * Configure the cost
+     *
+     * @param position Weight of squared position error per step
+     * @param heading Weight of squared heading error per step
+     * @param effort Weight of squared wheel power per step
+     * @param smoothness Weight of squared change in wheel power between steps
+     */
+    public void setWeights(double position, double heading, double effort, double smoothness) {
+        if (position < 0 || heading < 0 || effort < 0 || smoothness < 0)
+            throw new IllegalArgumentException("Weights must not be negative");
+
+        positionWeight = position;
+        headingWeight = heading;
+        effortWeight = effort;
+        smoothnessWeight = smoothness;
+        Log.add("Set MpcFollower weights", "position=" + position, "heading=" + heading,
+                "effort=" + effort, "smoothness=" + smoothness);
+    }
+
+    /**
+     * @return Number of solves
+     */
+    public long solves() { return solves; }
+
+    /**
+     * @return Number of solves ended by the budget
+     */
+    public long exhausted() { return exhausted; }
+
+    /**
+     * @return Mean iterations per solve
+     */
+    public double meanIterations() {
+        long n = solves;
+
+        return n == 0 ? 0 : (double)iterations / n;
+    }
+
+    /**
+     * Discard the solve counts
+     */
+    public void resetStatistics() {
+        solves = 0;
+        exhausted = 0;
+        iterations = 0;
+    }
+
+    private void allocate(int steps, double dt) {
+        wheels = drivetrain.wheelCount();
+        applied = new double[wheels];
+        model = new double[3 * wheels];
+        unit = new double[wheels];
+        horizon = steps;
+        step = dt;
+        plan = new double[wheels * steps];
+        trial = new double[wheels * steps];
+        gradient = new double[wheels * steps];
+        shifted = new double[wheels * steps];
+        refX = new double[steps];
+        refY = new double[steps];
+        refHeading = new double[steps];
+        stateX = new double[steps + 1];
+        stateY = new double[steps + 1];
+        stateHeading = new double[steps + 1];
+        lastTime = Double.NaN;
+    }
+
+    @Override protected void compute(Pose2D estimatedPose, double t, double[] powers) {
+        long mark = Metrics.start();
+        long deadline = mark + (long)(budget * 1e9);
+        
+        if (drivetrain.wheelCount() != wheels)
+            allocate(horizon, step);
+
+        for (int k = 0; k < horizon; k++) {
+            Pose2D r = trajectory.poseAtTime(t + (k + 1) * step);
+            refX[k] = r.x();
+            refY[k] = r.y();
+            refHeading[k] = r.heading();
+        }
+
+        // Columns of the kinematic model are the twists of each wheel alone
+        for (int i = 0; i < wheels; i++) {
+            unit[i] = 1;
+            drivetrain.forward(unit, twist);
+            unit[i] = 0;
+
+            for (int j = 0; j < 3; j++)
+                model[j * wheels + i] = twist[j];
+        }
+
+        warmStart(t);
+
+        stateX[0] = estimatedPose.x();
+        stateY[0] = estimatedPose.y();
+        stateHeading[0] = estimatedPose.heading();
+
+        double cost = rollout(plan);
+        int n = 0;
+        boolean converged = false;
+
+        while (n < maxIterations && !converged) {
+            computeGradient(plan);
+
+            // Backtrack along the projected gradient until the cost decreases sufficiently
+            while (true) {
+                double predicted = cost, moved = 0;
+
+                for (int i = 0; i < plan.length; i++) {
+                    trial[i] = clamp(plan[i] - stepSize * gradient[i]);
+
+                    double d = trial[i] - plan[i];
+                    predicted += gradient[i] * d + d * d / (2 * stepSize);
+                    moved = Math.max(moved, Math.abs(d));
+                }
+
+                if (moved < CONVERGED) {
+                    converged = true;
+                    break;
+                }
+
+                double c = rollout(trial);
+
+                if (c <= predicted) {
+                    double[] swap = plan;
+                    plan = trial;
+                    trial = swap;
+                    cost = c;
+                    stepSize *= 1.5;
+                    break;
+                }
+
+                stepSize /= 2;
+
+                if (stepSize < MIN_STEP_SIZE) {
+                    stepSize = MIN_STEP_SIZE;
+                    converged = true;
+                    break;
+                }
+            }
+
+            n++;
+
+            if (System.nanoTime() >= deadline) {
+                if (!converged && n < maxIterations)
+                    exhausted++;
+
+                break;
+            }
+        }
+
+        for (int i = 0; i < wheels; i++) {
+            powers[i] = plan[i];
+            applied[i] = plan[i];
+        }
+
+        drivetrain.forward(powers, twist);
+        axialUpdate = twist[0];
+        lateralUpdate = twist[1];
+        headingUpdate = twist[2];
+
+        iterations += n;
+        solves++;
+        Metrics.stop(Metrics.Phase.MPC_SOLVE, mark);
+    }
+
+    /**
+     * Shift the previous plan forward by the time since it was made, holding its last step.
+     * After a reset or a jump back in time the plan starts from rest
+     */
+    private void warmStart(double t) {
+        if (!(t >= lastTime)) {
+            for (int i = 0; i < plan.length; i++)
+                plan[i] = 0;
+
+            for (int i = 0; i < wheels; i++)
+                applied[i] = 0;
+        } else {
+            double shift = (t - lastTime) / step;
+
+            for (int k = 0; k < horizon; k++) {
+                double s = Math.min(k + shift, horizon - 1);
+                int k0 = (int)s, k1 = Math.min(k0 + 1, horizon - 1);
+                double f = s - k0;
+
+                for (int i = 0; i < wheels; i++)
+                    shifted[k * wheels + i] = plan[k0 * wheels + i] * (1 - f) + plan[k1 * wheels + i] * f;
+            }
+
+            double[] swap = plan;
+            plan = shifted;
+            shifted = swap;
+        }
+
+        lastTime = t;
+    }
+
+    /**
+     * Predict the poses reached under a plan and evaluate its cost
+     */
+    private double rollout(double[] u) {
+        double cost = 0;
+
+        for (int k = 0; k < horizon; k++) {
+            double vx = 0, vy = 0, omega = 0;
+
+            for (int i = 0; i < wheels; i++) {
+                double p = u[k * wheels + i];
+                double d = p - (k == 0 ? applied[i] : u[(k - 1) * wheels + i]);
+
+                vx += model[i] * p;
+                vy += model[wheels + i] * p;
+                omega += model[2 * wheels + i] * p;
+                cost += effortWeight * p * p + smoothnessWeight * d * d;
+            }
+
+            double cos = Math.cos(stateHeading[k]), sin = Math.sin(stateHeading[k]);
+            stateX[k + 1] = stateX[k] + (vx * cos - vy * sin) * step;
+            stateY[k + 1] = stateY[k] + (vx * sin + vy * cos) * step;
+            stateHeading[k + 1] = stateHeading[k] + omega * step;
+
+            double ex = stateX[k + 1] - refX[k], ey = stateY[k + 1] - refY[k];
+            double eh = wrap(stateHeading[k + 1] - refHeading[k]);
+            cost += positionWeight * (ex * ex + ey * ey) + headingWeight * eh * eh;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Gradient of the cost with respect to the plan by a backward pass over the horizon. The
+     * predicted poses must be those of the plan
+     */
+    private void computeGradient(double[] u) {
+        rollout(u);
+
+        double lx = 0, ly = 0, lh = 0;
+
+        for (int k = horizon - 1; k >= 0; k--) {
+            lx += 2 * positionWeight * (stateX[k + 1] - refX[k]);
+            ly += 2 * positionWeight * (stateY[k + 1] - refY[k]);
+            lh += 2 * headingWeight * wrap(stateHeading[k + 1] - refHeading[k]);
+
+            double cos = Math.cos(stateHeading[k]), sin = Math.sin(stateHeading[k]);
+            double gx = step * (cos * lx + sin * ly), gy = step * (-sin * lx + cos * ly), gh = step * lh;
+            double vx = 0, vy = 0;
+
+            for (int i = 0; i < wheels; i++) {
+                double p = u[k * wheels + i];
+                double previous = k == 0 ? applied[i] : u[(k - 1) * wheels + i];
+                double g = model[i] * gx + model[wheels + i] * gy + model[2 * wheels + i] * gh
+                        + 2 * effortWeight * p + 2 * smoothnessWeight * (p - previous);
+
+                if (k + 1 < horizon)
+                    g -= 2 * smoothnessWeight * (u[(k + 1) * wheels + i] - p);
+
+                gradient[k * wheels + i] = g;
+                vx += model[i] * p;
+                vy += model[wheels + i] * p;
+            }
+
+            lh += step * (lx * (-vx * sin - vy * cos) + ly * (vx * cos - vy * sin));
+        }
+    }
+
+    private static double clamp(double p) { return p < -1 ? -1 : p > 1 ? 1 : p; }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putLong(horizon);
+        c.putLong(wheels);
+
+        for (double p : plan)
+            c.putDouble(p);
+
+        for (double p : applied)
+            c.putDouble(p);
+
+        c.putDouble(stepSize);
+        c.putDouble(lastTime);
+        super.saveState(c);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        int h = (int)c.getLong(), w = (int)c.getLong();
+
+        // A snapshot from before the horizon changed, or before the solver caught up with a
+        // drivetrain change, holds a plan of another shape. It is skipped and the solver starts
+        // cold, as it would after the change
+        if (h != horizon || w != wheels) {
+            for (int i = 0; i < h * w + w; i++)
+                c.getDouble();
+
+            stepSize = c.getDouble();
+            c.getDouble();
+            lastTime = Double.NaN;
+            super.restoreState(c);
+            return;
+        }
+
+        for (int i = 0; i < plan.length; i++)
+            plan[i] = c.getDouble();
+
+        for (int i = 0; i < applied.length; i++)
+            applied[i] = c.getDouble();
+
+        stepSize = c.getDouble();
+        lastTime = c.getDouble();
+        super.restoreState(c);
+    }
+}
@@ -0,0 +1,206 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+import elusive.trajectory.Trajectory;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+
+/**
+ * Pure pursuit adapted to a holonomic drivetrain. The robot translates straight toward a point a
+ * fixed distance ahead of its closest point on the path, at the path's speed, while heading is
+ * tracked separately with a proportional term on top of the path's heading rate. Progress along
+ * the path is searched forward in trajectory time from the last closest point so that the search
+ * stays local and cannot jump to a later, crossing part of the path
+ * <p>
+ * Both searches are coarse-to-fine, since every trajectory sample builds a pose: the closest point
+ * is scanned coarsely and then refined, and the pursued point is marched toward in steps sized by
+ * the lookahead over the path speed, doubling while it falls short, and then bisected. An update
+ * takes a few dozen samples rather than hundreds
+ */
+public class PurePursuitFollower extends AbstractFollower {
+    public static final double SEARCH_STEP = 0.01, SEARCH_WINDOW = 0.5;
+    public static final int COARSE_STEPS = 10;
+    
+    private Drivetrain drivetrain;
+    private double lookahead = 6, headingGain = 4, approachGain = 2;
+    private double progress, lastTime = Double.NaN;
+    private double[] closestReference = new double[5];
+    
+    /**
+     * @param drivetrain Drivetrain whose inverse kinematics produce the powers
+     */
+    public PurePursuitFollower(Drivetrain drivetrain) { this.drivetrain = drivetrain; }
+    
+    @Override public Type type() { return Type.PURE_PURSUIT; }
+    
+    /**
+     * @return Distance from the closest path point to the pursued point
+     */
+    public double lookahead() { return lookahead; }
+    
+    /**
+     * @param d Distance from the closest path point to the pursued point
+     */
+    public void setLookahead(double d) {
+        if (d <= 0)
+            throw new IllegalArgumentException("Lookahead must be positive");
+        
+        lookahead = d;
+        Log.add("Set PurePursuitFollower.lookahead", "" + d);
+    }
+    
+    /**
+     * @return Heading rate per radian of heading error
+     */
+    public double headingGain() { return headingGain; }
+    
+    /**
+     * @param k Heading rate per radian of heading error
+     */
+    public void setHeadingGain(double k) {
+        headingGain = k;
+        Log.add("Set PurePursuitFollower.headingGain", "" + k);
+    }
+    
+    /**
+     * @return Speed per unit of distance to the pursued point, which sets the speed at the ends
+     *         of the path where the reference speed is zero
+     */
+    public double approachGain() { return approachGain; }
+    
+    /**
+     * @param k Speed per unit of distance to the pursued point
+     */
+    public void setApproachGain(double k) {
+        approachGain = k;
+        Log.add("Set PurePursuitFollower.approachGain", "" + k);
+    }
+    
+    @Override public void setTrajectory(Trajectory t) {
+        synchronized (this) {
+            progress = 0;
+        }
+        
+        super.setTrajectory(t);
+    }
+    
+    @Override protected void compute(Pose2D estimatedPose, double t, double[] powers) {
+        double duration = trajectory.duration();
+        double x = estimatedPose.x(), y = estimatedPose.y();
+        
+        // Time moved backwards, so the simulation was reset or rewound
+        if (!(t >= lastTime))
+            progress = 0;
+        
+        lastTime = t;
+        
+        // Closest point, scanned coarsely forward from the last one and then refined around the
+        // best sample until the step is finer than the search resolution
+        double step = SEARCH_WINDOW / COARSE_STEPS;
+        double start = progress, best = Double.POSITIVE_INFINITY;
+        
+        for (int i = 0; i <= COARSE_STEPS; i++) {
+            double s = Math.min(start + i * step, duration);
+            double d = distanceSq(trajectory.poseAtTime(s), x, y);
+            
+            if (d < best) {
+                best = d;
+                progress = s;
+            }
+            
+            if (s >= duration)
+                break;
+        }
+        
+        for (step /= 2; step >= SEARCH_STEP / 2; step /= 2) {
+            double centre = progress;
+            
+            for (int side = -1; side <= 1; side += 2) {
+                double s = Math.min(Math.max(centre + side * step, start), duration);
+                double d = distanceSq(trajectory.poseAtTime(s), x, y);
+                
+                if (d < best) {
+                    best = d;
+                    progress = s;
+                }
+            }
+        }
+        
+        differentiate(progress, closestReference);
+        Pose2D closest = trajectory.poseAtTime(progress);
+        
+        // Pursued point, the first one at least the lookahead from the robot. March by the time
+        // the path takes to cover the lookahead, doubling while still short, then bisect
+        double limit = lookahead * lookahead;
+        double pathSpeed = Math.hypot(closestReference[VX], closestReference[VY]);
+        double inside = progress, outside = duration;
+        step = Math.min(Math.max(pathSpeed > 0 ? lookahead / pathSpeed : SEARCH_STEP, SEARCH_STEP), duration);
+        Pose2D target = closest;
+        
+        if (distanceSq(closest, x, y) >= limit)
+            inside = outside = progress;
+        
+        while (inside < outside) {
+            double s = Math.min(inside + step, duration);
+            Pose2D p = trajectory.poseAtTime(s);
+            
+            if (distanceSq(p, x, y) >= limit) {
+                outside = s;
+                target = p;
+                break;
+            }
+            
+            inside = s;
+            target = p;
+            step *= 2;
+        }
+        
+        while (outside - inside > SEARCH_STEP) {
+            double s = (inside + outside) / 2;
+            Pose2D p = trajectory.poseAtTime(s);
+            
+            if (distanceSq(p, x, y) >= limit) {
+                outside = s;
+                target = p;
+            } else
+                inside = s;
+        }
+        
+        double dx = target.x() - x, dy = target.y() - y;
+        double distance = Math.hypot(dx, dy);
+        double speed = Math.max(Math.hypot(closestReference[VX], closestReference[VY]),
+                approachGain * distance);
+        double cos = Math.cos(estimatedPose.heading()), sin = Math.sin(estimatedPose.heading());
+        
+        if (distance > 1e-9) {
+            axialUpdate = speed * (dx * cos + dy * sin) / distance;
+            lateralUpdate = speed * (-dx * sin + dy * cos) / distance;
+        } else {
+            axialUpdate = 0;
+            lateralUpdate = 0;
+        }
+        
+        headingUpdate = closestReference[OMEGA]
+                + headingGain * wrap(closest.heading() - estimatedPose.heading());
+        
+        drivetrain.inverse(axialUpdate, lateralUpdate, headingUpdate, powers);
+    }
+    
+    private static double distanceSq(Pose2D p, double x, double y) {
+        double dx = p.x() - x, dy = p.y() - y;
+        return dx * dx + dy * dy;
+    }
+    
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putDouble(progress);
+        c.putDouble(lastTime);
+        super.saveState(c);
+    }
+    
+    @Override public synchronized void restoreState(StateCursor c) {
+        progress = c.getDouble();
+        lastTime = c.getDouble();
+        super.restoreState(c);
+    }
+}
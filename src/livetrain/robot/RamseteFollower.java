@@ -0,0 +1,90 @@
+package livetrain.robot;
+
+import elusive.geometry.Pose2D;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+
+/**
+ * RAMSETE nonlinear tracking controller. The robot is treated as a unicycle that faces along the
+ * path tangent, so the trajectory's own heading is ignored and no lateral motion is commanded.
+ * The reference turn rate is the rate of change of the tangent
+ */
+public class RamseteFollower extends AbstractFollower {
+    public static final double MIN_SPEED = 1e-6;
+    
+    private Drivetrain drivetrain;
+    
+    // b is per square distance unit; 0.0013 corresponds to the customary 2 per square metre in inches
+    private double b = 0.0013, zeta = 0.7;
+    private double tangent;
+    
+    /**
+     * @param drivetrain Drivetrain whose inverse kinematics produce the powers
+     */
+    public RamseteFollower(Drivetrain drivetrain) { this.drivetrain = drivetrain; }
+    
+    @Override public Type type() { return Type.RAMSETE; }
+    
+    /**
+     * @return Aggressiveness of the convergence, per square distance unit
+     */
+    public double b() { return b; }
+    
+    /**
+     * @return Damping ratio
+     */
+    public double zeta() { return zeta; }
+    
+    /**
+     * Configure the controller
+     * 
+     * @param b Aggressiveness of the convergence, per square distance unit
+     * @param zeta Damping ratio on [0, 1]
+     */
+    public void setGains(double b, double zeta) {
+        if (b <= 0 || zeta < 0 || zeta > 1)
+            throw new IllegalArgumentException("RAMSETE requires b > 0 and 0 <= zeta <= 1");
+        
+        this.b = b;
+        this.zeta = zeta;
+        Log.add("Set RamseteFollower gains", "b=" + b, "zeta=" + zeta);
+    }
+    
+    @Override protected void compute(Pose2D estimatedPose, double t, double[] powers) {
+        differentiate(t, reference);
+        
+        double vx = reference[VX], vy = reference[VY];
+        double speed = Math.hypot(vx, vy);
+        double rate = 0;
+        
+        // Hold the last tangent while stopped, where it is undefined
+        if (speed > MIN_SPEED) {
+            tangent = Math.atan2(vy, vx);
+            rate = (vx * reference[AY] - vy * reference[AX]) / (speed * speed);
+        }
+        
+        // Reference minus estimate, in the robot frame
+        double ex = -axialError, ey = -lateralError;
+        double eTheta = wrap(tangent - estimatedPose.heading());
+        double k = 2 * zeta * Math.sqrt(rate * rate + b * speed * speed);
+        double sinc = Math.abs(eTheta) < 1e-6 ? 1 - eTheta * eTheta / 6 : Math.sin(eTheta) / eTheta;
+        
+        headingError = -eTheta;
+        axialUpdate = speed * Math.cos(eTheta) + k * ex;
+        lateralUpdate = 0;
+        headingUpdate = rate + k * eTheta + b * speed * sinc * ey;
+        
+        drivetrain.inverse(axialUpdate, lateralUpdate, headingUpdate, powers);
+    }
+    
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putDouble(tangent);
+        super.saveState(c);
+    }
+    
+    @Override public synchronized void restoreState(StateCursor c) {
+        tangent = c.getDouble();
+        super.restoreState(c);
+    }
+}
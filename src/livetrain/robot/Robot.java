@@ -1,31 +1,57 @@
 package livetrain.robot;
 
 import elusive.geometry.Pose2D;
-import elusive.geometry.Vector2D;
 import elusive.profiling.motion.MotionConstraints;
+import elusive.trajectory.Trajectory;
 
 import livetrain.Log;
+import livetrain.Scheduler;
+import livetrain.history.StateCursor;
+import livetrain.metrics.Metrics;
 import livetrain.Simulation;
+import livetrain.estimation.PoseEstimator;
 import livetrain.graphics.SimulationRenderer;
-import livetrain.noise.NoiseGenerator;
+import livetrain.physics.Integrator;
 import livetrain.physics.Simulant;
+import livetrain.sensors.Imu;
+import livetrain.sensors.SensorSuite;
+import livetrain.sensors.VisionSensor;
+import livetrain.telemetry.Telemetry;
+import livetrain.time.Delay;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.Arrays;
-import livetrain.Util;
 
 /**
  * A combined drivetrain, follower, and trajectory
  */
 public class Robot extends Simulant {
+    public static final long COMPUTE_SEED = 7801, ACTUATION_SEED = 7802, JITTER_SEED = 7803;
     private Color color = new Color(204, 71, 71);
     private Drivetrain drivetrain;
-    private TrajectoryFollower follower;
+    private Follower[] followers = new Follower[Follower.Type.values().length];
+    private volatile Follower follower;
     private MotionConstraints constraints;
-    private Pose2D estimatedPose, actualPose, noisePose = new Pose2D(0, 0, 0);
-    private double width, height, updateFrequency = 100;
+    private Pose2D estimatedPose, actualPose;
+    private volatile double width, height;
+    private double updateFrequency = 100, sensorFrequency = 100;
+    private double[] twist = new double[3], integrationPose = new double[3];
     private boolean isFollowingTrajectory = true;
+    private Scheduler scheduler;
+    private Scheduler.Event sensorEvent, followerEvent;
+    private volatile ExternalController externalController = null;
+    private double[] followerPowers = new double[4], externalPowers = new double[4];
+    private PoseEstimator estimator = new PoseEstimator();
+    private volatile boolean estimating = false;
+    private SensorSuite sensors;
+    private double[] odometry = new double[3], deltas = new double[4], reading = new double[3];
+    private Delay computeDelay = new Delay("Robot.computeDelay", COMPUTE_SEED);
+    private Delay actuationDelay = new Delay("Robot.actuationDelay", ACTUATION_SEED);
+    private Delay loopJitter = new Delay("Robot.loopJitter", JITTER_SEED);
+    private CommandDelayLine commands = new CommandDelayLine(4);
+    private double[] delayedPowers = new double[4];
+    private double busyUntil = -1;
+    private long overruns = 0;
 
     /**
      * @param width Drivetrain width
@@ -35,12 +61,18 @@ public class Robot extends Simulant {
         this.width = width;
         this.height = height;
         drivetrain = new Drivetrain(Drivetrain.Type.MECANUM, this, 50);
-        follower = new TrajectoryFollower();
+        followers[Follower.Type.PIDVA.ordinal()] = new TrajectoryFollower(drivetrain);
+        followers[Follower.Type.PURE_PURSUIT.ordinal()] = new PurePursuitFollower(drivetrain);
+        followers[Follower.Type.RAMSETE.ordinal()] = new RamseteFollower(drivetrain);
+        followers[Follower.Type.FEEDFORWARD.ordinal()] = new FeedforwardFollower(drivetrain);
+        followers[Follower.Type.MPC.ordinal()] = new MpcFollower(drivetrain);
+        follower = followers[Follower.Type.PIDVA.ordinal()];
         constraints = new MotionConstraints(0, 0, 0);
+        sensors = new SensorSuite(drivetrain.wheelCount());
     }
     
     /**
-     * @return Pose including noise
+     * @return Pose seen by the follower, either the noisy pose or the estimator's output
      */
     public Pose2D estimatedPose() { return estimatedPose; }
     
@@ -50,9 +82,63 @@ public class Robot extends Simulant {
     public Pose2D actualPose() { return actualPose; }
     
     /**
-     * @return Static noise
+     * @return Additive noise carried by the vision sensor
      */
-    public Pose2D noisePose() { return noisePose; }
+    public Pose2D noisePose() { return sensors.vision().offset(); }
+    
+    /**
+     * @return Encoders, IMU and vision sensor
+     */
+    public SensorSuite sensors() { return sensors; }
+    
+    /**
+     * @return Filter fusing odometry with pose and heading measurements
+     */
+    public PoseEstimator estimator() { return estimator; }
+    
+    /**
+     * @return If the follower sees the estimator's output rather than the noisy pose
+     */
+    public boolean estimating() { return estimating; }
+    
+    /**
+     * Choose whether the follower sees the estimator's output. The estimator starts afresh from
+     * the next pose measurement
+     * 
+     * @param enabled Estimate the pose?
+     */
+    public void setEstimating(boolean enabled) {
+        if (enabled && !estimating)
+            estimator.reset();
+        
+        estimating = enabled;
+        Log.add("Set Robot.estimating", "" + enabled);
+    }
+    
+    /**
+     * @return Time the controller takes to compute each update
+     */
+    public Delay computeDelay() { return computeDelay; }
+    
+    /**
+     * @return Time from a command leaving the controller to the motors acting on it
+     */
+    public Delay actuationDelay() { return actuationDelay; }
+    
+    /**
+     * @return Lateness of each follower update against its period
+     */
+    public Delay loopJitter() { return loopJitter; }
+    
+    /**
+     * @return Power commands on their way to the motors
+     */
+    public CommandDelayLine commands() { return commands; }
+    
+    /**
+     * @return Follower updates skipped because the previous one was still computing
+     */
+    public long overruns() { return overruns; }
     
     /**
      * @return Color for rendering
@@ -69,7 +155,10 @@ public class Robot extends Simulant {
      * 
      * @param w Width
      */
-    public void setWidth(double w) { width = w; }
+    public void setWidth(double w) {
+        width = w;
+        drivetrain.updateGeometry();
+    }
 
     /**
      * @return Drivetrain height
@@ -79,12 +168,47 @@ public class Robot extends Simulant {
     /**
      * @param h Set the drivetrain height
      */
-    public void setHeight(double h) { height = h; }
+    public void setHeight(double h) {
+        height = h;
+        drivetrain.updateGeometry();
+    }
     
     /**
      * @return The follower guiding this robot's trajectory
      */
-    public TrajectoryFollower follower() { return follower; }
+    public Follower follower() { return follower; }
+    
+    /**
+     * @param type Control law
+     * @return This robot's follower of that type, whether or not it is in use
+     */
+    public Follower follower(Follower.Type type) { return followers[type.ordinal()]; }
+    
+    /**
+     * @return The PIDVA follower, which holds the controller coefficients
+     */
+    public TrajectoryFollower pidvaFollower() { return (TrajectoryFollower)follower(Follower.Type.PIDVA); }
+    
+    /**
+     * Switch the control law guiding the robot. Every follower keeps its own configuration and
+     * shares the trajectory, so switching back and forth loses nothing
+     * 
+     * @param type Control law
+     */
+    public void setFollowerType(Follower.Type type) {
+        follower = followers[type.ordinal()];
+        Log.add("Set Robot.followerType", type.toString());
+    }
+    
+    /**
+     * Give every follower the trajectory to follow
+     * 
+     * @param t Trajectory
+     */
+    public void setTrajectory(Trajectory t) {
+        for (Follower f : followers)
+            f.setTrajectory(t);
+    }
 
     /**
      * @return If this robot is being guided by its follower
@@ -101,6 +225,19 @@ public class Robot extends Simulant {
         Log.add("Set Robot.isFollowingTrajectory", "" + isFollowingTrajectory);
     }
     
+    /**
+     * @return Process controlling the robot in place of the follower, or null
+     */
+    public ExternalController externalController() { return externalController; }
+    
+    /**
+     * @param c Process to control the robot in place of the follower, or null to use the follower
+     */
+    public void setExternalController(ExternalController c) {
+        externalController = c;
+        Log.add("Set Robot.externalController", c == null ? "none" : "port " + c.port());
+    }
+    
     /**
      * @return Drivetrain
      */
@@ -118,9 +255,33 @@ public class Robot extends Simulant {
      */
     public void setUpdateFrequency(double f) {
         updateFrequency = f;
+        
+        if (followerEvent != null)
+            scheduler.setPeriod(followerEvent, 1 / f);
+        
         Log.add("Set Robot.updateFrequency", "" + f);
     }
     
+    /**
+     * @return The frequency at which the robot reads its sensors, each of which samples at its
+     *         own rate
+     */
+    public double sensorFrequency() { return sensorFrequency; }
+
+    /**
+     * Set the frequency at which the robot reads its sensors
+     * 
+     * @param f Frequency (Hz)
+     */
+    public void setSensorFrequency(double f) {
+        sensorFrequency = f;
+        
+        if (sensorEvent != null)
+            scheduler.setPeriod(sensorEvent, 1 / f);
+        
+        Log.add("Set Robot.sensorFrequency", "" + f);
+    }
+    
     /**
      * @return The robot's kinematic constraints
      */
@@ -154,52 +315,286 @@ public class Robot extends Simulant {
     }
     
     /**
-     * Reset the last update timestamp and also clear the additive noise
+     * Reset the last update timestamp and also restart the sensors and clear the estimate
      */
     @Override public void resetTimestamp() {
         super.resetTimestamp();
-        noisePose = new Pose2D(0, 0, 0);
+        sensors.reset();
+        estimator.reset();
+        commands.clear();
+        computeDelay.reseed();
+        actuationDelay.reseed();
+        loopJitter.reseed();
+        busyUntil = -1;
+        overruns = 0;
+        drivetrain.motors().reset();
+        drivetrain.tractionModel().reset();
     }
 
     /**
-     * Run a single update cycle. Follower is prompted for an update, the update is passed into
-     * the drivetrain, and the drivetrain resolves the kinematics
+     * Schedule the robot's sensor sampling and follower updates, each at its own rate
+     * 
+     * @param scheduler Event queue
+     */
+    @Override public void schedule(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        sensorEvent = scheduler.schedule("Robot sensors", 1 / sensorFrequency,
+                Scheduler.PRIORITY_SENSOR, this::sampleSensors, 0);
+        followerEvent = scheduler.schedule("Robot follower", 1 / updateFrequency,
+                Scheduler.PRIORITY_CONTROL, this::updateFollower, 0);
+        scheduler.setJitter(followerEvent, loopJitter);
+    }
+    
+    /**
+     * Show a recorded telemetry row instead of simulated state. Velocities are zeroed since rows
+     * do not record them
+     * 
+     * @param row One value per telemetry column
+     */
+    public void applyTelemetry(double[] row) {
+        setPose(row[Telemetry.Column.X.ordinal()], row[Telemetry.Column.Y.ordinal()],
+                row[Telemetry.Column.HEADING.ordinal()]);
+        zeroVectors();
+        actualPose = pose();
+        
+        double ex = row[Telemetry.Column.EST_X.ordinal()];
+        estimatedPose = Double.isNaN(ex) ? null : new Pose2D(ex, row[Telemetry.Column.EST_Y.ordinal()],
+                row[Telemetry.Column.EST_HEADING.ordinal()]);
+        
+        int p = Telemetry.Column.POWER0.ordinal();
+        
+        for (int i = 0; i < drivetrain.wheelCount(); i++)
+            drivetrain.setPower(i, row[p + i]);
+    }
+    
+    /**
+     * Read the sensors. Without estimation the follower sees the newest vision reading, if one
+     * has arrived. With it, every new encoder reading moves the estimate and every IMU and vision
+     * reading corrects it. Since the estimator starts from the robot's known placement, it needs
+     * no vision to begin
+     * 
+     * @param timestamp Simulation time
+     */
+    public void sampleSensors(double timestamp) {
+        long mark = Metrics.start();
+        actualPose = new Pose2D(xState.x, yState.x, thetaState.x);
+        
+        if (!estimating) {
+            if (sensors.vision().latest(timestamp, reading))
+                estimatedPose = new Pose2D(reading[VisionSensor.X], reading[VisionSensor.Y], reading[VisionSensor.HEADING]);
+            
+            // Nothing reads these until the estimator starts afresh, which wants no backlog
+            sensors.encoders().skip(timestamp);
+            sensors.imu().skip(timestamp);
+            
+            Metrics.stop(Metrics.Phase.NOISE, mark);
+            return;
+        }
+        
+        if (!estimator.initialized())
+            estimator.initialize(xState.x, yState.x, thetaState.x);
+        
+        if (deltas.length != drivetrain.wheelCount())
+            deltas = new double[drivetrain.wheelCount()];
+        
+        while (sensors.encoders().nextDelta(timestamp, deltas)) {
+            double dt = sensors.encoders().interval();
+            drivetrain.odometry(deltas, dt, odometry);
+            estimator.predict(odometry, dt);
+        }
+        
+        while (sensors.imu().next(timestamp, reading))
+            estimator.correctHeading(reading[Imu.HEADING]);
+        
+        while (sensors.vision().next(timestamp, reading))
+            estimator.correctPose(reading[VisionSensor.X], reading[VisionSensor.Y], reading[VisionSensor.HEADING]);
+        
+        estimatedPose = new Pose2D(estimator.x(), estimator.y(), estimator.heading());
+        Metrics.stop(Metrics.Phase.ESTIMATION, mark);
+    }
+    
+    /**
+     * Prompt the follower for an update from the last sensed pose and pass it into the
+     * drivetrain. The powers reach the motors after the compute and actuation delays, through the
+     * delay line, or at once if both are zero. An update that comes while the last one is still
+     * computing is skipped, as a loop that overruns its period misses a cycle
+     * 
+     * @param timestamp Simulation time
+     */
+    public void updateFollower(double timestamp) {
+        if (!isFollowingTrajectory || estimatedPose == null)
+            return;
+        
+        if (timestamp < busyUntil) {
+            overruns++;
+            return;
+        }
+        
+        long mark = Metrics.start();
+        ExternalController external = externalController;
+        double[] powers;
+        
+        // The drivetrain type, and with it the number of wheels, can change between updates
+        if (followerPowers.length != drivetrain.wheelCount()) {
+            followerPowers = new double[drivetrain.wheelCount()];
+            externalPowers = new double[drivetrain.wheelCount()];
+        }
+        
+        if (external != null) {
+            external.update(estimatedPose, timestamp, externalPowers);
+            powers = externalPowers;
+        } else {
+            follower.update(estimatedPose, timestamp, followerPowers);
+            powers = followerPowers;
+        }
+        
+        double compute = computeDelay.sample();
+        double arrival = timestamp + compute + actuationDelay.sample();
+        busyUntil = timestamp + compute;
+        
+        if (commands.width() != powers.length)
+            commands.resize(powers.length);
+        
+        if (arrival <= timestamp && commands.size() == 0)
+            drivetrain.setPowers(powers);
+        else
+            commands.push(arrival, powers);
+        
+        Metrics.stop(Metrics.Phase.FOLLOWER, mark);
+    }
+
+    /**
+     * Advance the robot to a simulation time. The drivetrain resolves the kinematics of the
+     * powers it was last given, which hold until the next scheduled event or until a delayed
+     * command reaches the motors, whichever is first
      * 
      * @param timestamp Simulation time
      */
     @Override public void update(double timestamp) {
-        // Follow the trajectory
-        if (isFollowingTrajectory && (lastUpdateTimestamp == -1 || timestamp - lastUpdateTimestamp
-                >= 1 / updateFrequency)) {
-            // True state
-            Pose2D currentPose = new Pose2D(xState.x, yState.x, thetaState.x);
-            actualPose = currentPose;
+        while (commands.due(timestamp)) {
+            double arrival = commands.nextTime();
             
-            // Additive noise
-            noisePose = NoiseGenerator.generate(NoiseGenerator.Type.ROBOT_POSE_ADD, timestamp, noisePose);
-            currentPose = Util.poseSum(currentPose, noisePose);
+            if (lastUpdateTimestamp != -1 && arrival > lastUpdateTimestamp)
+                advance(arrival);
             
-            // Static noise
-            currentPose = NoiseGenerator.generate(NoiseGenerator.Type.ROBOT_POSE_STATIC, timestamp, currentPose);
-            estimatedPose = currentPose;
+            // Restoring a snapshot can also change the width of the delay line
+            if (delayedPowers.length != commands.width())
+                delayedPowers = new double[commands.width()];
             
-            // Get drivetrain update
-            double[] powers = follower.update(estimatedPose, timestamp);
-            drivetrain.setPowers(powers[0], powers[1], powers[2], powers[3]);
-            Log.append("Drivetrain powers", Arrays.toString(powers));
-        } else
-            Log.add("Queried follower, query denied");
-        
-        // Update the state
-        Pose2D dtPose = drivetrain.state();
-        Vector2D linVel = Vector2D.build(dtPose.x(), dtPose.y());
-        linVel = linVel.rotated(thetaState.x);
-        
-        xState.v = linVel.x();
-        yState.v = linVel.y();
-        thetaState.v = -dtPose.heading();
+            commands.pop(delayedPowers);
+            drivetrain.setPowers(delayedPowers);
+        }
+        
+        advance(timestamp);
+    }
+    
+    /**
+     * Resolve the kinematics and integrate up to a time with the current powers
+     * 
+     * @param timestamp Simulation time
+     */
+    private void advance(double timestamp) {
+        long mark = Metrics.start();
         
+        // Update the state over the step about to be integrated
+        double dt = lastUpdateTimestamp != -1 && timestamp > lastUpdateTimestamp ? timestamp - lastUpdateTimestamp : 0;
+        drivetrain.step(dt, twist);
+        
+        double cos = Math.cos(thetaState.x), sin = Math.sin(thetaState.x);
+        xState.v = twist[0] * cos - twist[1] * sin;
+        yState.v = twist[0] * sin + twist[1] * cos;
+        thetaState.v = twist[2];
+        
+        mark = Metrics.split(Metrics.Phase.KINEMATICS, mark);
         super.update(timestamp);
+        
+        // Sensors sample this later, when they are read
+        sensors.record(timestamp, xState.x, yState.x, thetaState.x, thetaState.v, drivetrain.wheelAngles());
+        Metrics.stop(Metrics.Phase.INTEGRATION, mark);
+    }
+
+    /**
+     * Advance the pose by the drivetrain's body-frame twist, which is held constant between
+     * updates, using the selected integrator
+     * 
+     * @param dt Step
+     */
+    @Override protected void integrate(double dt) {
+        integrationPose[0] = xState.x;
+        integrationPose[1] = yState.x;
+        integrationPose[2] = thetaState.x;
+        
+        Integrator.step(integrator, integrationPose, twist[0], twist[1], twist[2], dt);
+        
+        xState.x = integrationPose[0];
+        yState.x = integrationPose[1];
+        thetaState.x = integrationPose[2];
+    }
+
+    @Override public void saveState(StateCursor c) {
+        super.saveState(c);
+        c.putLong(drivetrain.wheelCount());
+        
+        for (double p : drivetrain.powers())
+            c.putDouble(p);
+        
+        for (double a : drivetrain.wheelAngles())
+            c.putDouble(a);
+        
+        c.putPose(estimatedPose);
+        c.putPose(actualPose);
+        drivetrain.motors().saveState(c);
+        drivetrain.tractionModel().saveState(c);
+        estimator.saveState(c);
+        sensors.saveState(c);
+        commands.saveState(c);
+        computeDelay.saveState(c);
+        actuationDelay.saveState(c);
+        loopJitter.saveState(c);
+        c.putDouble(busyUntil);
+        c.putLong(overruns);
+        c.putLong(follower.type().ordinal());
+        
+        for (Follower f : followers)
+            f.saveState(c);
+    }
+    
+    @Override public void restoreState(StateCursor c) {
+        super.restoreState(c);
+        
+        // Everything after is sized by the number of wheels
+        long wheels = c.getLong();
+        
+        if (wheels != drivetrain.wheelCount())
+            throw new IllegalStateException("Snapshot was taken with " + wheels + " wheels, drivetrain has "
+                    + drivetrain.wheelCount());
+        
+        double[] powers = drivetrain.powers();
+        
+        for (int i = 0; i < powers.length; i++)
+            powers[i] = c.getDouble();
+        
+        double[] angles = drivetrain.wheelAngles();
+        
+        for (int i = 0; i < angles.length; i++)
+            angles[i] = c.getDouble();
+        
+        estimatedPose = c.getPose();
+        actualPose = c.getPose();
+        drivetrain.motors().restoreState(c);
+        drivetrain.tractionModel().restoreState(c);
+        estimator.restoreState(c);
+        sensors.restoreState(c);
+        commands.restoreState(c);
+        computeDelay.restoreState(c);
+        actuationDelay.restoreState(c);
+        loopJitter.restoreState(c);
+        busyUntil = c.getDouble();
+        overruns = c.getLong();
+        follower = followers[(int)c.getLong()];
+        
+        for (Follower f : followers)
+            f.restoreState(c);
     }
 
     /**
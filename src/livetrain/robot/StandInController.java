@@ -0,0 +1,74 @@
+package livetrain.robot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Minimal external controller for exercising {@link ExternalController}. It drives the robot to a
+ * fixed point and heading with proportional control and mecanum mixing
+ *
+ * <pre>
+ * java -cp Livetrain.jar livetrain.robot.StandInController [port] [x y]
+ * </pre>
+ */
+public class StandInController {
+    public static final double TRANSLATION_GAIN = 0.05, HEADING_GAIN = 1;
+
+    private StandInController() {}
+
+    /**
+     * Entry point
+     *
+     * @param args Optional port, then optional target x and y
+     * @throws IOException If the simulation cannot be reached
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : ExternalController.DEFAULT_PORT;
+        double tx = args.length > 2 ? Double.parseDouble(args[1]) : 72;
+        double ty = args.length > 2 ? Double.parseDouble(args[2]) : 72;
+
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            if (in.readInt() != ExternalController.MAGIC || in.readInt() != ExternalController.VERSION)
+                throw new IOException("Not a Livetrain external controller endpoint");
+
+            while (true) {
+                long seq;
+
+                try {
+                    seq = in.readLong();
+                } catch (EOFException ex) {
+                    return;
+                }
+
+                in.readDouble();
+                double x = in.readDouble(), y = in.readDouble(), heading = in.readDouble();
+
+                // World error into the robot frame
+                double ex = tx - x, ey = ty - y;
+                double cos = Math.cos(-heading), sin = Math.sin(-heading);
+                double axial = clamp(TRANSLATION_GAIN * (ex * cos - ey * sin));
+                double lateral = clamp(TRANSLATION_GAIN * (ex * sin + ey * cos));
+                double omega = clamp(-HEADING_GAIN * Math.atan2(Math.sin(heading), Math.cos(heading)));
+
+                out.writeLong(seq);
+                out.writeDouble(axial - lateral - omega);
+                out.writeDouble(axial + lateral - omega);
+                out.writeDouble(axial - lateral + omega);
+                out.writeDouble(axial + lateral + omega);
+                out.flush();
+            }
+        }
+    }
+
+    private static double clamp(double v) { return Math.max(-1, Math.min(1, v)); }
+}
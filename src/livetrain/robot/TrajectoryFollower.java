@@ -2,35 +2,46 @@ package livetrain.robot;
 
 import elusive.control.PIDFController;
 import elusive.geometry.Pose2D;
-import elusive.geometry.Vector2D;
-import elusive.trajectory.Trajectory;
 
 import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
 
 import java.util.Arrays;
 
 /**
- * Calculates the drivetrain power updates that guide the robot along a trajectory
+ * PIDVA follower: independent heading, lateral and axial controllers with velocity and
+ * acceleration feedforward, mixed directly into wheel powers
  */
-public class TrajectoryFollower {
-    private PIDFController headingController, lateralController, axialController;
-    private volatile Trajectory trajectory;
-    private Pose2D pathPose, pathVelocity, pathAcceleration;
+public class TrajectoryFollower extends AbstractFollower {
+    private Drivetrain drivetrain;
+    private Controller headingController, lateralController, axialController;
     
     /**
-     * @return Target trajectory pose
+     * PIDVA controller whose accumulated error and timing can be captured
      */
-    public Pose2D pathPose() { return pathPose; }
+    private static class Controller extends PIDFController implements Stateful {
+        Controller(double[] k) { super(k[0], k[1], k[2], k[3], k[4], k[5]); }
+        
+        @Override public void saveState(StateCursor c) {
+            c.putDouble(totalError);
+            c.putDouble(lastError);
+            c.putDouble(lastTime);
+        }
+        
+        @Override public void restoreState(StateCursor c) {
+            totalError = c.getDouble();
+            lastError = c.getDouble();
+            lastTime = c.getDouble();
+        }
+    }
     
     /**
-     * @return Target path velocity
+     * @param drivetrain Drivetrain whose power mix distributes the controller outputs
      */
-    public Pose2D pathVelocity() { return pathVelocity; }
+    public TrajectoryFollower(Drivetrain drivetrain) { this.drivetrain = drivetrain; }
     
-    /**
-     * @return Target path acceleration
-     */
-    public Pose2D pathAcceleration() { return pathAcceleration; }
+    @Override public Type type() { return Type.PIDVA; }
 
     /**
      * Configure the PIDVA controllers
@@ -43,84 +54,49 @@ public class TrajectoryFollower {
         if (heading.length != 6 || lateral.length != 6 || axial.length != 6)
             throw new IllegalArgumentException("Coefficient sets must be 6 in length");
         
-        headingController = new PIDFController(heading[0], heading[1], heading[2],
-                heading[3], heading[4], heading[5]);
-        lateralController = new PIDFController(lateral[0], lateral[1], lateral[2],
-                lateral[3], lateral[4], lateral[5]);
-        axialController = new PIDFController(axial[0], axial[1], axial[2],
-                axial[3], axial[4], axial[5]);
+        headingController = new Controller(heading);
+        lateralController = new Controller(lateral);
+        axialController = new Controller(axial);
         
         Log.add("Set TrajectoryFollower controller coefficients", Arrays.toString(heading),
                 Arrays.toString(lateral), Arrays.toString(axial));
     }
-
-    /**
-     * Set the trajectory to follow
-     * 
-     * @param t Trajectory
-     */
-    public void setTrajectory(Trajectory t) {
-        trajectory = t;
-        Log.add("Set TrajectoryFollower.trajectory", trajectory.toString(), "Motion profile",
-                trajectory.profile().toString());
-    }
     
-    /**
-     * Run a single update cycle
-     * 
-     * @param estimatedPose Where the robot thinks it is
-     * @param t Simulation time
-     * @return Drivetrain powers
-     */
-    public synchronized double[] update(Pose2D estimatedPose, double t) {
-        Log.add("Trajectory follower update @ t=" + t);
-        
-        pathPose = trajectory.poseAtTime(t);
-        pathVelocity = trajectory.velocityAtTime(t);
-        pathAcceleration = trajectory.accelerationAtTime(t);
-        
-        Log.append("Trajectory poses", "p=" + pathPose.toString(), "v=" + pathVelocity.toString(),
-                "a=" + pathAcceleration.toString());
+    @Override protected void compute(Pose2D estimatedPose, double t, double[] powers) {
+        if (headingController == null) {
+            drivetrain.mix(0, 0, 0, powers);
+            return;
+        }
         
-        double headingError = estimatedPose.heading() - pathPose.heading();
-        double headingUpdate = headingController.update(headingError, t);
+        headingUpdate = headingController.update(headingError, t);
+        axialUpdate = axialController.update(axialError, t, pathAxialVelocity, pathAxialAcceleration);
+        lateralUpdate = lateralController.update(lateralError, t, pathLateralVelocity, pathLateralAcceleration);
         
-        Log.append("Heading update", "err=" + headingError, "upd=" + headingUpdate);
-        
-        Vector2D poseError = estimatedPose.pose().added(pathPose.pose().negated());
-        poseError = poseError.rotated(-estimatedPose.heading());
-        
-        double axialError = poseError.x();
-        double lateralError = poseError.y();
-        
-        Log.append("Spatial update", "err=" + poseError.toString());
-        
-        Vector2D robotVelocity = new Vector2D(pathVelocity.x(), pathVelocity.y());
-        robotVelocity = robotVelocity.rotated(-estimatedPose.heading());
-        
-        Vector2D robotAcceleration = new Vector2D(pathAcceleration.x(), pathAcceleration.y());
-        robotAcceleration = robotAcceleration.rotated(-estimatedPose.heading());
-        
-        double axialUpdate = axialController.update(axialError, t, robotVelocity.x(),
-                robotAcceleration.x());
-        double lateralUpdate = lateralController.update(lateralError, t, robotVelocity.y(),
-                robotAcceleration.y());
-        
-        Log.append("upd_axial=" + axialUpdate, "upd_lateral=" + lateralUpdate);
-        
-        Pose2D correction = new Pose2D(axialUpdate, lateralUpdate, headingUpdate);
-        Vector2D targetVelocity = correction.pose();
-        double targetOmega = correction.heading();
-        
-        Log.append("Final update", correction.toString());
+        drivetrain.mix(axialUpdate, lateralUpdate, headingUpdate, powers);
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putBoolean(headingController != null);
         
-        double[] powers = new double[] {
-            targetVelocity.x() - targetVelocity.y() - targetOmega,
-            targetVelocity.x() + targetVelocity.y() - targetOmega,
-            targetVelocity.x() - targetVelocity.y() + targetOmega,
-            targetVelocity.x() + targetVelocity.y() + targetOmega
-        };
+        if (headingController != null) {
+            headingController.saveState(c);
+            lateralController.saveState(c);
+            axialController.saveState(c);
+        }
         
-        return powers;
+        super.saveState(c);
+    }
+    
+    @Override public synchronized void restoreState(StateCursor c) {
+        if (c.getBoolean()) {
+            if (headingController == null)
+                throw new IllegalStateException("Snapshot was taken with configured controllers");
+            
+            headingController.restoreState(c);
+            lateralController.restoreState(c);
+            axialController.restoreState(c);
+        }
+        
+        super.restoreState(c);
     }
 }
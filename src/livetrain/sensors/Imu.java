@@ -0,0 +1,21 @@
+package livetrain.sensors;
+
+/**
+ * Inertial measurement unit reading the heading and the heading rate, each rounded to the
+ * quantum of the unit's fixed-point registers
+ */
+public class Imu extends Sensor {
+    public static final int HEADING = 0, HEADING_RATE = 1;
+
+    /**
+     * @param truth Source of true state
+     */
+    public Imu(TruthHistory truth) {
+        super("Imu", truth, 2, 100, 0.002, 1e-4);
+    }
+
+    @Override protected void measure(double time, double[] truth, double[] out, int offset) {
+        out[offset + HEADING] = truth[TruthHistory.HEADING];
+        out[offset + HEADING_RATE] = truth[TruthHistory.HEADING_RATE];
+    }
+}
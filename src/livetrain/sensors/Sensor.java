@@ -0,0 +1,292 @@
+package livetrain.sensors;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * A sensor sampling the robot's true state at its own rate. A sample taken at time t becomes
+ * readable at t plus the sensor's latency, and each value is rounded to the sensor's quantum, as
+ * with encoder counts or a fixed-point IMU register
+ * <p>
+ * Samples are made lazily: nothing is computed until a consumer reads, and then every sample that
+ * has come due since the last read is made from the truth history at its own sample time.
+ * Readings wait in a preallocated ring, so a consumer that reads less often than the sensor
+ * samples still sees each one, unless more than the ring holds have come due
+ */
+public abstract class Sensor implements Stateful {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    protected final TruthHistory truth;
+    private final String name;
+    private final int capacity;
+    private int width;
+    private double rate, latency, quantum;
+    private volatile boolean enabled = true;
+
+    private double[] times, values, row;
+    private long produced = 0, consumed = 0;
+    private double nextSample = 0, lastTime = Double.NaN;
+
+    /**
+     * @param name Name for logging
+     * @param truth Source of true state
+     * @param width Values per reading
+     * @param rate Sample rate in hertz
+     * @param latency Delay between sampling and reading in seconds
+     * @param quantum Resolution of each value, or zero for none
+     */
+    protected Sensor(String name, TruthHistory truth, int width, double rate, double latency, double quantum) {
+        this.name = name;
+        this.truth = truth;
+        this.rate = rate;
+        this.latency = latency;
+        this.quantum = quantum;
+        capacity = DEFAULT_CAPACITY;
+        times = new double[capacity];
+        resize(width);
+    }
+
+    /**
+     * @return Name
+     */
+    public String name() { return name; }
+
+    /**
+     * @return Values per reading
+     */
+    public int width() { return width; }
+
+    /**
+     * @return Sample rate in hertz
+     */
+    public double rate() { return rate; }
+
+    /**
+     * @param hz Sample rate
+     */
+    public synchronized void setRate(double hz) {
+        if (hz <= 0)
+            throw new IllegalArgumentException("Rate must be positive");
+
+        rate = hz;
+        Log.add("Set " + name + ".rate", "" + hz);
+    }
+
+    /**
+     * @return Delay between sampling and reading in seconds
+     */
+    public double latency() { return latency; }
+
+    /**
+     * @param s Delay between sampling and reading
+     */
+    public synchronized void setLatency(double s) {
+        if (s < 0)
+            throw new IllegalArgumentException("Latency must not be negative");
+
+        latency = s;
+        Log.add("Set " + name + ".latency", "" + s);
+    }
+
+    /**
+     * @return Resolution of each value, or zero for none
+     */
+    public double quantum() { return quantum; }
+
+    /**
+     * @param q Resolution of each value, or zero for none
+     */
+    public synchronized void setQuantum(double q) {
+        if (q < 0)
+            throw new IllegalArgumentException("Quantum must not be negative");
+
+        quantum = q;
+        Log.add("Set " + name + ".quantum", "" + q);
+    }
+
+    /**
+     * @return If the sensor is producing readings
+     */
+    public boolean enabled() { return enabled; }
+
+    /**
+     * @param e Produce readings? A disabled sensor's sample times still pass, unread
+     */
+    public void setEnabled(boolean e) {
+        enabled = e;
+        Log.add("Set " + name + ".enabled", "" + e);
+    }
+
+    /**
+     * @return Sample time of the reading last returned
+     */
+    public synchronized double sampleTime() { return lastTime; }
+
+    /**
+     * Earliest time the sensor can still sample: its next sample time, or the furthest back a
+     * read at or after now would resume, after skipping what its ring cannot hold
+     *
+     * @param now Simulation time
+     * @return Time
+     */
+    public synchronized double horizon(double now) {
+        return Math.max(nextSample, now - latency - (capacity + 1) / rate);
+    }
+
+    /**
+     * Discard every unread reading and every sample that has come due without making it, so that
+     * the next read returns only what is sampled after now. A sensor nobody reads is skipped
+     * along so that it holds on to no truth
+     *
+     * @param now Simulation time
+     */
+    public synchronized void skip(double now) {
+        double period = 1 / rate;
+        double due = now - latency + 1e-9;
+
+        if (nextSample <= due)
+            nextSample += (Math.floor((due - nextSample) / period) + 1) * period;
+
+        consumed = produced;
+    }
+
+    /**
+     * Discard every reading and restart sampling from time zero
+     */
+    public synchronized void reset() {
+        produced = 0;
+        consumed = 0;
+        nextSample = 0;
+        lastTime = Double.NaN;
+    }
+
+    /**
+     * Take the oldest unread reading. Read readings are not kept
+     *
+     * @param now Simulation time
+     * @param out Filled with the reading's values
+     * @return False, leaving out untouched, if there are no unread readings
+     */
+    public synchronized boolean next(double now, double[] out) {
+        generate(now);
+
+        if (consumed == produced)
+            return false;
+
+        // Readings overwritten before they were read are lost
+        consumed = Math.max(consumed, produced - capacity);
+        copy(consumed++, out);
+
+        return true;
+    }
+
+    /**
+     * Take the newest reading, skipping any unread ones before it
+     *
+     * @param now Simulation time
+     * @param out Filled with the reading's values
+     * @return False, leaving out untouched, if there are no unread readings
+     */
+    public synchronized boolean latest(double now, double[] out) {
+        generate(now);
+
+        if (consumed == produced)
+            return false;
+
+        consumed = produced;
+        copy(produced - 1, out);
+
+        return true;
+    }
+
+    /**
+     * Change the number of values per reading, discarding every reading
+     *
+     * @param width Values per reading
+     */
+    protected synchronized void resize(int width) {
+        this.width = width;
+        values = new double[capacity * width];
+        row = new double[truth.width()];
+        produced = 0;
+        consumed = 0;
+        lastTime = Double.NaN;
+    }
+
+    /**
+     * Turn true state into a reading, before quantization
+     *
+     * @param time Sample time
+     * @param truth Interpolated row of the truth history
+     * @param out Destination
+     * @param offset Index of the reading's first value in the destination
+     */
+    protected abstract void measure(double time, double[] truth, double[] out, int offset);
+
+    /**
+     * Make every sample that has come due, at most a ring's worth
+     */
+    private void generate(double now) {
+        double period = 1 / rate;
+        double due = now - latency + 1e-9;
+
+        if (due - nextSample > capacity * period)
+            nextSample += Math.floor((due - nextSample) / period - capacity) * period;
+
+        if (row.length != truth.width())
+            row = new double[truth.width()];
+
+        for (; nextSample <= due; nextSample += period) {
+            if (!enabled || !truth.sample(nextSample, row))
+                continue;
+
+            int s = (int)(produced % capacity);
+            times[s] = nextSample;
+            measure(nextSample, row, values, s * width);
+
+            if (quantum > 0) {
+                for (int i = s * width; i < (s + 1) * width; i++)
+                    values[i] = Math.round(values[i] / quantum) * quantum;
+            }
+
+            produced++;
+        }
+    }
+
+    private void copy(long index, double[] out) {
+        int s = (int)(index % capacity);
+        System.arraycopy(values, s * width, out, 0, width);
+        lastTime = times[s];
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        c.putLong(produced);
+        c.putLong(consumed);
+        c.putDouble(nextSample);
+        c.putDouble(lastTime);
+
+        for (long k = Math.max(consumed, produced - capacity); k < produced; k++) {
+            int s = (int)(k % capacity);
+            c.putDouble(times[s]);
+
+            for (int i = 0; i < width; i++)
+                c.putDouble(values[s * width + i]);
+        }
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        produced = c.getLong();
+        consumed = c.getLong();
+        nextSample = c.getDouble();
+        lastTime = c.getDouble();
+
+        for (long k = Math.max(consumed, produced - capacity); k < produced; k++) {
+            int s = (int)(k % capacity);
+            times[s] = c.getDouble();
+
+            for (int i = 0; i < width; i++)
+                values[s * width + i] = c.getDouble();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package livetrain.sensors;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * The robot's sensors and the truth history they sample
+ */
+public class SensorSuite implements Stateful {
+    private final TruthHistory truth;
+    private final WheelEncoders encoders;
+    private final Imu imu;
+    private final VisionSensor vision;
+    private final Sensor[] sensors;
+
+    /**
+     * @param wheels Number of wheels
+     */
+    public SensorSuite(int wheels) {
+        truth = new TruthHistory(TruthHistory.DEFAULT_CAPACITY, wheels);
+        encoders = new WheelEncoders(truth);
+        imu = new Imu(truth);
+        vision = new VisionSensor(truth);
+        sensors = new Sensor[] { encoders, imu, vision };
+    }
+
+    /**
+     * @return True state history
+     */
+    public TruthHistory truth() { return truth; }
+
+    /**
+     * @return Wheel encoders
+     */
+    public WheelEncoders encoders() { return encoders; }
+
+    /**
+     * @return IMU
+     */
+    public Imu imu() { return imu; }
+
+    /**
+     * @return Vision pose sensor
+     */
+    public VisionSensor vision() { return vision; }
+
+    /**
+     * @return Every sensor
+     */
+    public Sensor[] sensors() { return sensors; }
+
+    /**
+     * Record the true state at the end of a physics step, matching the encoders to the number of
+     * wheels if it has changed
+     *
+     * @param time Simulation time
+     * @param x X
+     * @param y Y
+     * @param heading Heading
+     * @param rate Heading rate
+     * @param wheelAngles Angle turned by each wheel
+     */
+    public void record(double time, double x, double y, double heading, double rate, double[] wheelAngles) {
+        if (wheelAngles.length != truth.wheels()) {
+            truth.configure(wheelAngles.length);
+            encoders.resize(wheelAngles.length);
+        }
+
+        truth.record(time, x, y, heading, rate, wheelAngles);
+    }
+
+    /**
+     * Forget the truth history and restart every sensor from time zero
+     */
+    public void reset() {
+        truth.clear();
+
+        for (Sensor s : sensors)
+            s.reset();
+    }
+
+    @Override public void saveState(StateCursor c) {
+        double now = truth.newest(), from = now;
+
+        // Only truth a sensor can still sample is worth keeping
+        for (Sensor s : sensors)
+            from = Math.min(from, s.horizon(now));
+
+        truth.saveState(c, from);
+
+        for (Sensor s : sensors)
+            s.saveState(c);
+    }
+
+    @Override public void restoreState(StateCursor c) {
+        truth.restoreState(c);
+
+        for (Sensor s : sensors)
+            s.restoreState(c);
+    }
+}
@@ -0,0 +1,203 @@
+package livetrain.sensors;
+
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+
+/**
+ * Ring of the robot's true state at every physics step, from which sensors take their samples
+ * after the fact. Recording is a handful of array stores per step; the work of turning truth into
+ * readings is left to the sensors, which only do it when read. Each row holds the pose, the
+ * heading rate and every wheel's angle, and truth between steps is interpolated linearly
+ * <p>
+ * A sensor whose latency reaches further back than the ring sees the oldest retained truth.
+ * Snapshots hold only the steps from a given time on, which the sensors still able to sample
+ * there decide
+ */
+public class TruthHistory implements Stateful {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int X = 0, Y = 1, HEADING = 2, HEADING_RATE = 3, WHEELS = 4;
+
+    private final int capacity;
+    private int width, wheels;
+    private double[] times, rows;
+    private long count = 0, first = 0;
+
+    /**
+     * @param capacity Number of physics steps retained
+     * @param wheels Number of wheels
+     */
+    public TruthHistory(int capacity, int wheels) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("History must hold at least two steps");
+
+        this.capacity = capacity;
+        times = new double[capacity];
+        configure(wheels);
+    }
+
+    /**
+     * Match the rows to a drivetrain. History is cleared if the number of wheels changes
+     *
+     * @param wheels Number of wheels
+     */
+    public synchronized void configure(int wheels) {
+        if (rows != null && wheels == this.wheels)
+            return;
+
+        this.wheels = wheels;
+        width = WHEELS + wheels;
+        rows = new double[capacity * width];
+        count = 0;
+        first = 0;
+    }
+
+    /**
+     * @return Number of wheels
+     */
+    public int wheels() { return wheels; }
+
+    /**
+     * @return Values per row
+     */
+    public int width() { return width; }
+
+    /**
+     * Forget every step
+     */
+    public synchronized void clear() {
+        count = 0;
+        first = 0;
+    }
+
+    /**
+     * @return Time of the newest step, or negative infinity if nothing has been recorded
+     */
+    public synchronized double newest() { return count == 0 ? Double.NEGATIVE_INFINITY : times[slot(count - 1)]; }
+
+    /**
+     * Record the state at the end of a physics step. Steps that do not advance time replace the
+     * newest row
+     *
+     * @param time Simulation time
+     * @param x X
+     * @param y Y
+     * @param heading Heading
+     * @param rate Heading rate
+     * @param wheelAngles Angle turned by each wheel since the start of the simulation
+     */
+    public synchronized void record(double time, double x, double y, double heading, double rate,
+            double[] wheelAngles) {
+        if (count > 0 && time <= times[slot(count - 1)])
+            count--;
+
+        int s = slot(count), base = s * width;
+
+        times[s] = time;
+        rows[base + X] = x;
+        rows[base + Y] = y;
+        rows[base + HEADING] = heading;
+        rows[base + HEADING_RATE] = rate;
+
+        for (int i = 0; i < wheels; i++)
+            rows[base + WHEELS + i] = wheelAngles[i];
+
+        count++;
+        first = Math.max(first, count - capacity);
+    }
+
+    /**
+     * Interpolate the state at a time, searching back from the newest step since sensors
+     * mostly ask about the recent past
+     *
+     * @param time Simulation time
+     * @param out Filled with a row, of {@link #width()} values
+     * @return False, leaving out untouched, if nothing has been recorded
+     */
+    public synchronized boolean sample(double time, double[] out) {
+        if (count == 0)
+            return false;
+
+        long k = count - 1;
+
+        while (k > first && times[slot(k)] > time)
+            k--;
+
+        int a = slot(k);
+
+        if (k == count - 1 || times[a] >= time) {
+            System.arraycopy(rows, a * width, out, 0, width);
+            return true;
+        }
+
+        int b = slot(k + 1);
+        double f = (time - times[a]) / (times[b] - times[a]);
+
+        for (int i = 0; i < width; i++)
+            out[i] = rows[a * width + i] + f * (rows[b * width + i] - rows[a * width + i]);
+
+        return true;
+    }
+
+    private int slot(long index) { return (int)(index % capacity); }
+
+    @Override public void saveState(StateCursor c) { saveState(c, Double.NEGATIVE_INFINITY); }
+
+    /**
+     * Save the steps that can still be sampled at or after a time: every step from the last one
+     * at or before it, which the earliest such sample interpolates from. Rows are written in slot
+     * order, so each live stretch of the ring is a single run
+     *
+     * @param c Snapshot
+     * @param from Earliest time that will be sampled
+     */
+    public synchronized void saveState(StateCursor c, double from) {
+        long start = count - 1;
+
+        while (start > first && times[slot(start)] > from)
+            start--;
+
+        start = Math.max(start, first);
+        c.putLong(count);
+        c.putLong(start);
+        copy(c, start, true);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        count = c.getLong();
+        first = c.getLong();
+        copy(c, first, false);
+    }
+
+    /**
+     * Save or restore the rows from an index to the newest, lowest slot first
+     */
+    private void copy(StateCursor c, long start, boolean save) {
+        if (count <= start)
+            return;
+
+        int a = slot(start), b = slot(count - 1) + 1;
+
+        if (a < b) {
+            copy(c, a, b, save);
+        } else {
+            copy(c, 0, b, save);
+            copy(c, a, capacity, save);
+        }
+    }
+
+    private void copy(StateCursor c, int from, int to, boolean save) {
+        for (int s = from; s < to; s++) {
+            if (save) {
+                c.putDouble(times[s]);
+
+                for (int i = 0; i < width; i++)
+                    c.putDouble(rows[s * width + i]);
+            } else {
+                times[s] = c.getDouble();
+
+                for (int i = 0; i < width; i++)
+                    rows[s * width + i] = c.getDouble();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package livetrain.sensors;
+
+import livetrain.history.StateCursor;
+import livetrain.noise.NoiseGenerator;
+
+import elusive.geometry.Pose2D;
+
+/**
+ * Absolute pose, as from a camera localizing against field targets. Each reading carries the
+ * pose noise from the noise generator: an additive offset that wanders from reading to reading
+ * and a fresh static error. By default it samples at the rate the robot used to sense its pose,
+ * with no latency or quantization, so that it can be slowed and delayed from there
+ */
+public class VisionSensor extends Sensor {
+    public static final int X = 0, Y = 1, HEADING = 2;
+
+    private final double[] offset = new double[3], noise = new double[3];
+
+    /**
+     * @param truth Source of true state
+     */
+    public VisionSensor(TruthHistory truth) {
+        super("VisionSensor", truth, 3, 100, 0, 0);
+    }
+
+    /**
+     * @return Additive noise carried by the last reading made
+     */
+    public synchronized Pose2D offset() { return new Pose2D(offset[X], offset[Y], offset[HEADING]); }
+
+    @Override public synchronized void reset() {
+        super.reset();
+
+        for (int i = 0; i < offset.length; i++)
+            offset[i] = 0;
+    }
+
+    @Override protected void measure(double time, double[] truth, double[] out, int offset) {
+        NoiseGenerator.sample(NoiseGenerator.Type.ROBOT_POSE_ADD, time, noise);
+
+        for (int i = 0; i < 3; i++)
+            this.offset[i] += noise[i];
+
+        NoiseGenerator.sample(NoiseGenerator.Type.ROBOT_POSE_STATIC, time, noise);
+        out[offset + X] = truth[TruthHistory.X] + this.offset[X] + noise[X];
+        out[offset + Y] = truth[TruthHistory.Y] + this.offset[Y] + noise[Y];
+        out[offset + HEADING] = truth[TruthHistory.HEADING] + this.offset[HEADING] + noise[HEADING];
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        super.saveState(c);
+
+        for (double o : offset)
+            c.putDouble(o);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        super.restoreState(c);
+
+        for (int i = 0; i < offset.length; i++)
+            offset[i] = c.getDouble();
+    }
+}
@@ -0,0 +1,117 @@
+package livetrain.sensors;
+
+import livetrain.history.StateCursor;
+
+/**
+ * Quadrature encoders on every wheel, reading the angle each wheel has turned in radians. The
+ * quantum is one count. Encoders measure the wheels, not the robot, so slip shows up as odometry
+ * error. Consumers usually want motion rather than angles, so readings can also be taken as the
+ * change since the previous reading
+ */
+public class WheelEncoders extends Sensor {
+    public static final double DEFAULT_COUNTS_PER_REVOLUTION = 560;
+
+    private double[] reading, previous;
+    private double previousTime = Double.NaN, interval = 0;
+
+    /**
+     * @param truth Source of true state
+     */
+    public WheelEncoders(TruthHistory truth) {
+        super("WheelEncoders", truth, truth.wheels(), 100, 0, 2 * Math.PI / DEFAULT_COUNTS_PER_REVOLUTION);
+    }
+
+    /**
+     * @return Counts per wheel revolution
+     */
+    public double countsPerRevolution() { return 2 * Math.PI / quantum(); }
+
+    /**
+     * @param cpr Counts per wheel revolution
+     */
+    public void setCountsPerRevolution(double cpr) {
+        if (cpr <= 0)
+            throw new IllegalArgumentException("Counts per revolution must be positive");
+
+        setQuantum(2 * Math.PI / cpr);
+    }
+
+    /**
+     * @return Time between the last two readings taken as changes
+     */
+    public synchronized double interval() { return interval; }
+
+    /**
+     * Take the oldest unread reading as the change in each wheel's angle since the reading
+     * before it. The first reading after a reset only sets the baseline
+     *
+     * @param now Simulation time
+     * @param delta Filled with each wheel's change in angle
+     * @return False, leaving delta untouched, if there is no change to report
+     */
+    public synchronized boolean nextDelta(double now, double[] delta) {
+        while (next(now, reading)) {
+            double time = sampleTime();
+            boolean first = Double.isNaN(previousTime);
+
+            for (int i = 0; i < reading.length; i++) {
+                if (!first)
+                    delta[i] = reading[i] - previous[i];
+
+                previous[i] = reading[i];
+            }
+
+            interval = time - previousTime;
+            previousTime = time;
+
+            if (!first)
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override public synchronized void reset() {
+        super.reset();
+        previousTime = Double.NaN;
+    }
+
+    /**
+     * Skip ahead as {@link Sensor#skip(double)} does. The next reading only sets the baseline,
+     * so no change spans the skipped time
+     */
+    @Override public synchronized void skip(double now) {
+        super.skip(now);
+        previousTime = Double.NaN;
+    }
+
+    @Override protected synchronized void resize(int width) {
+        super.resize(width);
+        reading = new double[width];
+        previous = new double[width];
+        previousTime = Double.NaN;
+    }
+
+    @Override protected void measure(double time, double[] truth, double[] out, int offset) {
+        for (int i = 0; i < width(); i++)
+            out[offset + i] = truth[TruthHistory.WHEELS + i];
+    }
+
+    @Override public synchronized void saveState(StateCursor c) {
+        super.saveState(c);
+        c.putDouble(previousTime);
+        c.putDouble(interval);
+
+        for (double p : previous)
+            c.putDouble(p);
+    }
+
+    @Override public synchronized void restoreState(StateCursor c) {
+        super.restoreState(c);
+        previousTime = c.getDouble();
+        interval = c.getDouble();
+
+        for (int i = 0; i < previous.length; i++)
+            previous[i] = c.getDouble();
+    }
+}
@@ -0,0 +1,282 @@
+package livetrain.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access reader for files written by {@link ColumnarWriter}. The file is memory-mapped and
+ * rows are located through the footer's chunk index, so only the chunk holding a requested row
+ * is ever decompressed. The most recently used chunk stays decoded
+ */
+public class ColumnarReader implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int fileColumns;
+    private final int[] columnMap = new int[Telemetry.COLUMNS];
+    private final long[] chunkOffset, chunkFirstRow;
+    private final int[] chunkRows;
+    private final double[] chunkStart, chunkEnd;
+    private final long rows;
+
+    // Decoded chunk
+    private final double[][] decoded;
+    private final Inflater inflater = new Inflater();
+    private byte[] compressed = new byte[0], raw = new byte[0];
+    private int decodedChunk = -1;
+    private boolean closed = false;
+
+    /**
+     * @param path Telemetry file
+     * @throws IOException If the file cannot be read or is not a complete telemetry file
+     */
+    public ColumnarReader(String path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Telemetry file is too large to map");
+
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int length = map.capacity();
+
+            if (length < 24 || map.getInt(0) != ColumnarWriter.MAGIC)
+                throw new IOException("Not a telemetry file");
+
+            if (map.getInt(4) != ColumnarWriter.VERSION)
+                throw new IOException("Unsupported telemetry file version " + map.getInt(4));
+
+            if (map.getInt(length - 4) != ColumnarWriter.INDEX_MAGIC)
+                throw new IOException("Telemetry file is incomplete");
+
+            // Header column names
+            fileColumns = map.getInt(8);
+            Arrays.fill(columnMap, -1);
+            map.position(12);
+
+            for (int i = 0; i < fileColumns; i++) {
+                byte[] name = new byte[map.getShort() & 0xFFFF];
+                map.get(name);
+
+                for (Telemetry.Column c : Telemetry.Column.values())
+                    if (c.name().equalsIgnoreCase(new String(name, "UTF-8")))
+                        columnMap[c.ordinal()] = i;
+            }
+
+            if (columnMap[Telemetry.Column.TIME.ordinal()] == -1)
+                throw new IOException("Telemetry file has no time column");
+
+            // Footer index
+            int footer = (int)map.getLong(length - 12);
+            int chunks = map.getInt(footer);
+            chunkOffset = new long[chunks];
+            chunkFirstRow = new long[chunks];
+            chunkRows = new int[chunks];
+            chunkStart = new double[chunks];
+            chunkEnd = new double[chunks];
+            map.position(footer + 4);
+            long total = 0;
+
+            for (int i = 0; i < chunks; i++) {
+                chunkOffset[i] = map.getLong();
+                chunkRows[i] = map.getInt();
+                chunkStart[i] = map.getDouble();
+                chunkEnd[i] = map.getDouble();
+
+                if (chunkRows[i] < 0 || chunkRows[i] > ColumnarWriter.CHUNK_ROWS)
+                    throw new IOException("Corrupt telemetry index: chunk " + i + " has " + chunkRows[i] + " rows");
+
+                chunkFirstRow[i] = total;
+                total += chunkRows[i];
+            }
+
+            rows = total;
+            decoded = new double[fileColumns][ColumnarWriter.CHUNK_ROWS];
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex instanceof IOException ? (IOException)ex : new IOException("Corrupt telemetry file", ex);
+        }
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public long rows() { return rows; }
+
+    /**
+     * @return Time of the first row, or NaN if there are none
+     */
+    public double startTime() { return rows == 0 ? Double.NaN : chunkStart[0]; }
+
+    /**
+     * @return Time of the last row, or NaN if there are none
+     */
+    public double endTime() { return rows == 0 ? Double.NaN : chunkEnd[chunkEnd.length - 1]; }
+
+    /**
+     * @param t Time
+     * @return Index of the last row at or before a time, or the first row if there is none
+     * @throws IOException If a chunk cannot be decoded
+     */
+    public synchronized long find(double t) throws IOException {
+        if (rows == 0)
+            return -1;
+
+        // Last chunk starting at or before the time
+        int lo = 0, hi = chunkStart.length - 1;
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (chunkStart[mid] <= t)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        decode(lo);
+        double[] time = decoded[columnMap[Telemetry.Column.TIME.ordinal()]];
+        int a = 0, b = chunkRows[lo] - 1;
+
+        while (a < b) {
+            int mid = (a + b + 1) >>> 1;
+
+            if (time[mid] <= t)
+                a = mid;
+            else
+                b = mid - 1;
+        }
+
+        return chunkFirstRow[lo] + a;
+    }
+
+    /**
+     * Read a row. Columns missing from the file read as NaN
+     *
+     * @param row Row index
+     * @param out One value per column, indexed by column ordinal, filled
+     * @throws IOException If the chunk cannot be decoded
+     */
+    public synchronized void read(long row, double[] out) throws IOException {
+        if (row < 0 || row >= rows)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+
+        int lo = 0, hi = chunkFirstRow.length - 1;
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (chunkFirstRow[mid] <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        decode(lo);
+        int r = (int)(row - chunkFirstRow[lo]);
+
+        for (int c = 0; c < Telemetry.COLUMNS; c++)
+            out[c] = columnMap[c] == -1 ? Double.NaN : decoded[columnMap[c]][r];
+    }
+
+    /**
+     * Inflate a chunk and undo its XOR delta encoding, unless it is already decoded. A chunk whose
+     * header or contents disagree with the index is reported as corrupt rather than read past
+     */
+    private void decode(int chunk) throws IOException {
+        if (closed)
+            throw new IOException("Telemetry file is closed");
+
+        if (chunk == decodedChunk)
+            return;
+
+        // A failed decode leaves no chunk decoded
+        decodedChunk = -1;
+
+        try {
+            inflate(chunk);
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt telemetry chunk " + chunk, ex);
+        }
+
+        decodedChunk = chunk;
+    }
+
+    private void inflate(int chunk) throws IOException {
+        long offset = chunkOffset[chunk];
+
+        if (offset < 0 || offset > map.capacity() - ColumnarWriter.CHUNK_HEADER_BYTES)
+            throw new IOException("Telemetry chunk " + chunk + " lies outside the file");
+
+        int start = (int)offset;
+        int n = map.getInt(start), rawLength = map.getInt(start + 20), length = map.getInt(start + 24);
+
+        if (n < 0 || n > ColumnarWriter.CHUNK_ROWS || n != chunkRows[chunk])
+            throw new IOException("Corrupt telemetry chunk " + chunk + ": " + n + " rows, index says " + chunkRows[chunk]);
+
+        if (length < 0 || length > map.capacity() - start - ColumnarWriter.CHUNK_HEADER_BYTES || rawLength < 0)
+            throw new IOException("Corrupt telemetry chunk " + chunk + ": bad length");
+
+        if (compressed.length < length)
+            compressed = new byte[length];
+
+        if (raw.length < rawLength)
+            raw = new byte[rawLength];
+
+        ByteBuffer src = map.duplicate();
+        src.position(start + ColumnarWriter.CHUNK_HEADER_BYTES);
+        src.get(compressed, 0, length);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+
+        try {
+            if (inflater.inflate(raw, 0, rawLength) != rawLength)
+                throw new IOException("Truncated telemetry chunk " + chunk);
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt telemetry chunk " + chunk, ex);
+        }
+
+        int p = 0;
+
+        for (int c = 0; c < fileColumns; c++) {
+            double[] values = decoded[c];
+            long prev = 0;
+
+            for (int r = 0; r < n; r++) {
+                long v = 0;
+                int shift = 0;
+                byte b;
+
+                do {
+                    if (p == rawLength || shift > 63)
+                        throw new IOException("Corrupt telemetry chunk " + chunk + ": value overruns the chunk");
+
+                    b = raw[p++];
+                    v |= (long)(b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+
+                prev ^= v;
+                values[r] = Double.longBitsToDouble(prev);
+            }
+        }
+    }
+
+    @Override public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        inflater.end();
+        file.close();
+    }
+}
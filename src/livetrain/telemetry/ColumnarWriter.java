@@ -0,0 +1,234 @@
+package livetrain.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Streams rows to a compressed columnar file. Rows are gathered into fixed size chunks that are
+ * encoded and compressed on a background thread, so the simulation thread only copies values.
+ * All integers are big-endian
+ *
+ * <pre>
+ * header  "LVTC", int version, int columns, columns x UTF name
+ * chunk   int rows, double start time, double end time, int raw length, int compressed length,
+ *         deflated payload
+ * payload for each column, for each row, unsigned varint of the value's bits XOR the previous
+ *         row's bits in that column (zero before the first row)
+ * footer  int chunks, chunks x (long offset, int rows, double start time, double end time),
+ *         long footer offset, "LVTI"
+ * </pre>
+ */
+public class ColumnarWriter implements Telemetry.Sink, Closeable {
+    public static final int MAGIC = 0x4C565443, INDEX_MAGIC = 0x4C565449, VERSION = 1;
+    public static final int CHUNK_ROWS = 4096, CHUNK_POOL = 4;
+    public static final int CHUNK_HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+
+    /**
+     * Rows awaiting encoding, stored by column
+     */
+    private static class Chunk {
+        final double[][] columns;
+        int rows = 0;
+
+        Chunk(int columns) { this.columns = new double[columns][CHUNK_ROWS]; }
+    }
+
+    private final DataOutputStream out;
+    private final int columns;
+    private final ArrayBlockingQueue<Chunk> free = new ArrayBlockingQueue<>(CHUNK_POOL);
+    private final ArrayBlockingQueue<Chunk> full = new ArrayBlockingQueue<>(CHUNK_POOL + 1);
+    private final Chunk end;
+    private final Thread thread;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ArrayList<long[]> index = new ArrayList<>();
+    private byte[] raw, compressed;
+    private Chunk current;
+    private long position;
+    private volatile IOException error = null;
+    private boolean closed = false;
+
+    /**
+     * @param path Output file
+     * @throws IOException If the file cannot be created
+     */
+    public ColumnarWriter(String path) throws IOException {
+        columns = Telemetry.COLUMNS;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns);
+
+        for (Telemetry.Column c : Telemetry.Column.values())
+            out.writeUTF(c.name().toLowerCase());
+
+        position = out.size();
+        raw = new byte[CHUNK_ROWS * columns * 10];
+        compressed = new byte[raw.length];
+
+        for (int i = 0; i < CHUNK_POOL; i++)
+            free.add(new Chunk(columns));
+
+        end = new Chunk(0);
+        current = free.poll();
+
+        thread = new Thread(new Runnable() {
+            @Override public void run() { drain(); }
+        }, "Telemetry writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override public synchronized void accept(double[] row) {
+        if (closed)
+            return;
+
+        int r = current.rows++;
+
+        for (int i = 0; i < columns; i++)
+            current.columns[i][r] = row[i];
+
+        if (current.rows == CHUNK_ROWS)
+            handOff();
+    }
+
+    /**
+     * Queue the current chunk for writing and take an empty one, waiting only if the writer has
+     * fallen a whole pool behind
+     */
+    private void handOff() {
+        try {
+            full.put(current);
+            current = free.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer thread body
+     */
+    private void drain() {
+        try {
+            while (true) {
+                Chunk c = full.take();
+
+                if (c == end)
+                    break;
+
+                if (error == null)
+                    writeChunk(c);
+
+                c.rows = 0;
+                free.put(c);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeChunk(Chunk c) {
+        int n = 0;
+
+        for (int col = 0; col < columns; col++) {
+            double[] values = c.columns[col];
+            long prev = 0;
+
+            for (int r = 0; r < c.rows; r++) {
+                long bits = Double.doubleToRawLongBits(values[r]);
+                long v = bits ^ prev;
+                prev = bits;
+
+                while ((v & ~0x7FL) != 0) {
+                    raw[n++] = (byte)((v & 0x7F) | 0x80);
+                    v >>>= 7;
+                }
+
+                raw[n++] = (byte)v;
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(raw, 0, n);
+        deflater.finish();
+        int m = 0;
+
+        while (!deflater.finished()) {
+            if (m == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+
+            m += deflater.deflate(compressed, m, compressed.length - m);
+        }
+
+        double start = c.columns[Telemetry.Column.TIME.ordinal()][0];
+        double stop = c.columns[Telemetry.Column.TIME.ordinal()][c.rows - 1];
+
+        try {
+            out.writeInt(c.rows);
+            out.writeDouble(start);
+            out.writeDouble(stop);
+            out.writeInt(n);
+            out.writeInt(m);
+            out.write(compressed, 0, m);
+        } catch (IOException ex) {
+            error = ex;
+            return;
+        }
+
+        index.add(new long[] {position, c.rows, Double.doubleToRawLongBits(start),
+                Double.doubleToRawLongBits(stop)});
+        position += CHUNK_HEADER_BYTES + m;
+    }
+
+    /**
+     * Write any partial chunk and the footer index, then close the file
+     *
+     * @throws IOException If any write failed
+     */
+    @Override public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+
+        try {
+            if (current.rows > 0)
+                full.put(current);
+
+            full.put(end);
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing telemetry file");
+        }
+
+        try {
+            if (error == null) {
+                long footer = position;
+                out.writeInt(index.size());
+
+                for (long[] e : index) {
+                    out.writeLong(e[0]);
+                    out.writeInt((int)e[1]);
+                    out.writeDouble(Double.longBitsToDouble(e[2]));
+                    out.writeDouble(Double.longBitsToDouble(e[3]));
+                }
+
+                out.writeLong(footer);
+                out.writeInt(INDEX_MAGIC);
+            }
+        } finally {
+            out.close();
+            deflater.end();
+        }
+
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,73 @@
+package livetrain.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Plain text fallback writer producing one comma separated line per row, for spreadsheets
+ */
+public class CsvWriter implements Telemetry.Sink, Closeable {
+    private final BufferedWriter out;
+    private final StringBuilder line = new StringBuilder(256);
+    private IOException error = null;
+    private boolean closed = false;
+
+    /**
+     * @param path Output file
+     * @throws IOException If the file cannot be created
+     */
+    public CsvWriter(String path) throws IOException {
+        out = new BufferedWriter(new FileWriter(path), 1 << 16);
+
+        for (Telemetry.Column c : Telemetry.Column.values()) {
+            if (c.ordinal() > 0)
+                line.append(',');
+
+            line.append(c.name().toLowerCase());
+        }
+
+        writeLine();
+    }
+
+    @Override public synchronized void accept(double[] row) {
+        if (closed)
+            return;
+
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0)
+                line.append(',');
+
+            line.append(row[i]);
+        }
+
+        writeLine();
+    }
+
+    private void writeLine() {
+        line.append('\n');
+
+        try {
+            if (error == null)
+                out.append(line);
+        } catch (IOException ex) {
+            error = ex;
+        }
+
+        line.setLength(0);
+    }
+
+    /**
+     * Flush and close the file
+     *
+     * @throws IOException If any write failed
+     */
+    @Override public synchronized void close() throws IOException {
+        closed = true;
+        out.close();
+
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,159 @@
+package livetrain.telemetry;
+
+import livetrain.Log;
+import livetrain.robot.Drivetrain;
+import livetrain.robot.Robot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Plays a recorded telemetry file back onto the robot in place of physics. Playback follows the
+ * paced clock, so the simulation speed setting also sets the replay speed, and every row passed
+ * over is republished so charts and trails replay along with the canvas
+ */
+public class Replay implements Closeable {
+    public static final long MAX_CATCHUP_ROWS = 10000;
+
+    private final ColumnarReader reader;
+    private final String path;
+    private final double[] row = new double[Telemetry.COLUMNS];
+    private volatile boolean playing = false;
+    private volatile double seekTime = Double.NaN;
+    private volatile double time;
+    private double lastPaced = Double.NaN;
+    private long lastRow = -1;
+    private boolean warned = false;
+
+    /**
+     * @param path Telemetry file written by {@link ColumnarWriter}
+     * @throws IOException If the file cannot be opened
+     */
+    public Replay(String path) throws IOException {
+        this.path = path;
+        reader = new ColumnarReader(path);
+
+        if (reader.rows() == 0) {
+            reader.close();
+            throw new IOException("Telemetry file has no rows");
+        }
+
+        time = reader.startTime();
+    }
+
+    /**
+     * @return Recording being played
+     */
+    public String path() { return path; }
+
+    /**
+     * @return Time of the first recorded row
+     */
+    public double startTime() { return reader.startTime(); }
+
+    /**
+     * @return Time of the last recorded row
+     */
+    public double endTime() { return reader.endTime(); }
+
+    /**
+     * @return Playback position
+     */
+    public double time() { return time; }
+
+    /**
+     * @return If playback is advancing
+     */
+    public boolean playing() { return playing; }
+
+    /**
+     * @param p If playback should advance
+     */
+    public void setPlaying(boolean p) { playing = p; }
+
+    /**
+     * Request a jump to a time on the next update
+     *
+     * @param t Time
+     */
+    public void seek(double t) { seekTime = t; }
+
+    /**
+     * Advance playback by the paced time elapsed since the last update, show the row at the new
+     * position on the robot and publish every row passed over. Long jumps publish only the row
+     * landed on
+     *
+     * @param paced Current paced timestamp
+     * @param robot Robot to show rows on
+     * @param telemetry Sinks to republish rows to
+     * @return Playback position
+     * @throws IOException If the file cannot be read
+     */
+    public double update(double paced, Robot robot, Telemetry telemetry) throws IOException {
+        double t = time;
+
+        if (!Double.isNaN(seekTime)) {
+            t = seekTime;
+            seekTime = Double.NaN;
+        } else if (playing && !Double.isNaN(lastPaced)) {
+            t += paced - lastPaced;
+        }
+
+        lastPaced = paced;
+        t = Math.max(reader.startTime(), Math.min(t, reader.endTime()));
+
+        if (t == reader.endTime())
+            playing = false;
+
+        long target = reader.find(t);
+
+        if (target != lastRow) {
+            long first = target > lastRow && target - lastRow <= MAX_CATCHUP_ROWS ? lastRow + 1 : target;
+
+            for (long r = first; r <= target; r++) {
+                reader.read(r, row);
+                fillPowers();
+                telemetry.publish(row);
+            }
+
+            checkWheels(robot);
+            robot.applyTelemetry(row);
+            lastRow = target;
+        }
+
+        time = t;
+        return t;
+    }
+
+    /**
+     * Recordings made before there were columns for every wheel have none past the fourth. Those
+     * wheels were unpowered
+     */
+    private void fillPowers() {
+        int p = Telemetry.Column.POWER0.ordinal();
+
+        for (int i = 0; i < Drivetrain.MAX_WHEELS; i++)
+            if (Double.isNaN(row[p + i]))
+                row[p + i] = 0;
+    }
+
+    /**
+     * Warn once if the recording powers wheels the robot being shown does not have
+     */
+    private void checkWheels(Robot robot) {
+        if (warned)
+            return;
+
+        int p = Telemetry.Column.POWER0.ordinal();
+
+        for (int i = robot.drivetrain().wheelCount(); i < Drivetrain.MAX_WHEELS; i++) {
+            if (row[p + i] != 0) {
+                Log.add("Replay powers wheel " + i + ", which " + robot.drivetrain().type() + " does not have");
+                warned = true;
+                return;
+            }
+        }
+    }
+
+    @Override public void close() throws IOException { reader.close(); }
+}
@@ -0,0 +1,112 @@
+package livetrain.telemetry;
+
+import elusive.geometry.Pose2D;
+import livetrain.robot.Drivetrain;
+import livetrain.robot.Robot;
+import livetrain.robot.Follower;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Samples the robot once per physics tick into a single reused row and hands it to every
+ * attached sink. Nothing is sampled while no sink is attached
+ * <p>
+ * Sinks that write rows out of the program, such as files and sockets, are attached as recorders.
+ * They only receive simulated rows, so playing a recording back does not copy it into a recording
+ * in progress
+ */
+public class Telemetry {
+    public enum Column {
+        TIME, X, Y, HEADING, EST_X, EST_Y, EST_HEADING, HEADING_ERROR, LATERAL_ERROR, AXIAL_ERROR,
+        HEADING_UPDATE, LATERAL_UPDATE, AXIAL_UPDATE, POWER0, POWER1, POWER2, POWER3, POWER4, POWER5
+    };
+    public static final int COLUMNS = Column.values().length;
+
+    /**
+     * Consumer of sampled rows. Rows are only valid for the duration of the call
+     */
+    public interface Sink {
+        /**
+         * @param row One value per column, indexed by column ordinal
+         */
+        void accept(double[] row);
+    }
+
+    private final CopyOnWriteArrayList<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Sink> recorders = new CopyOnWriteArrayList<>();
+    private final double[] row = new double[COLUMNS];
+
+    /**
+     * @param s Sink to start receiving rows
+     */
+    public void addSink(Sink s) { sinks.add(s); }
+
+    /**
+     * @param s Sink to stop receiving rows
+     */
+    public void removeSink(Sink s) { sinks.remove(s); }
+
+    /**
+     * @param s Sink to start receiving simulated rows only
+     */
+    public void addRecorder(Sink s) { recorders.add(s); }
+
+    /**
+     * @param s Sink to stop receiving simulated rows
+     */
+    public void removeRecorder(Sink s) { recorders.remove(s); }
+
+    /**
+     * @return If any sink or recorder is attached
+     */
+    public boolean active() { return !sinks.isEmpty() || !recorders.isEmpty(); }
+
+    /**
+     * Sample a robot and pass the row to every sink
+     *
+     * @param time Simulation time
+     * @param robot Robot
+     */
+    public void sample(double time, Robot robot) {
+        if (!active())
+            return;
+
+        Pose2D est = robot.estimatedPose();
+        Follower f = robot.follower();
+        double[] powers = robot.drivetrain().powers();
+
+        row[Column.TIME.ordinal()] = time;
+        row[Column.X.ordinal()] = robot.x();
+        row[Column.Y.ordinal()] = robot.y();
+        row[Column.HEADING.ordinal()] = robot.theta();
+        row[Column.EST_X.ordinal()] = est == null ? Double.NaN : est.x();
+        row[Column.EST_Y.ordinal()] = est == null ? Double.NaN : est.y();
+        row[Column.EST_HEADING.ordinal()] = est == null ? Double.NaN : est.heading();
+        row[Column.HEADING_ERROR.ordinal()] = f.headingError();
+        row[Column.LATERAL_ERROR.ordinal()] = f.lateralError();
+        row[Column.AXIAL_ERROR.ordinal()] = f.axialError();
+        row[Column.HEADING_UPDATE.ordinal()] = f.headingUpdate();
+        row[Column.LATERAL_UPDATE.ordinal()] = f.lateralUpdate();
+        row[Column.AXIAL_UPDATE.ordinal()] = f.axialUpdate();
+
+        // One column per wheel of the largest base. Wheels this base does not have are unpowered
+        for (int i = 0; i < Drivetrain.MAX_WHEELS; i++)
+            row[Column.POWER0.ordinal() + i] = i < powers.length ? powers[i] : 0;
+
+        publish(row);
+
+        for (Sink s : recorders)
+            s.accept(row);
+    }
+
+    /**
+     * Pass an externally sourced row, such as one read back from a recording, to every sink but
+     * not to the recorders
+     *
+     * @param row One value per column, indexed by column ordinal
+     */
+    public void publish(double[] row) {
+        for (Sink s : sinks)
+            s.accept(row);
+    }
+}
@@ -0,0 +1,90 @@
+package livetrain.telemetry;
+
+/**
+ * Fixed capacity ring of the most recent telemetry rows, stored by column in primitive arrays so
+ * that appending never allocates. A row older than the newest one clears the ring, since it
+ * means the simulation was rewound
+ */
+public class TelemetryRing implements Telemetry.Sink {
+    private final double[][] columns;
+    private final int capacity;
+    private long size = 0;
+
+    /**
+     * @param capacity Number of rows retained
+     */
+    public TelemetryRing(int capacity) {
+        this.capacity = capacity;
+        columns = new double[Telemetry.COLUMNS][capacity];
+    }
+
+    @Override public synchronized void accept(double[] row) {
+        int time = Telemetry.Column.TIME.ordinal();
+
+        if (size > 0 && row[time] < columns[time][(int)((size - 1) % capacity)])
+            size = 0;
+
+        int i = (int)(size++ % capacity);
+
+        for (int c = 0; c < row.length; c++)
+            columns[c][i] = row[c];
+    }
+
+    /**
+     * @return Number of rows retained
+     */
+    public synchronized int size() { return (int)Math.min(size, capacity); }
+
+    /**
+     * @return Time of the newest row, or NaN if empty
+     */
+    public synchronized double newestTime() {
+        return size == 0 ? Double.NaN : columns[Telemetry.Column.TIME.ordinal()][(int)((size - 1) % capacity)];
+    }
+
+    /**
+     * @return Maximum number of rows retained
+     */
+    public int capacity() { return capacity; }
+
+    /**
+     * Discard every row
+     */
+    public synchronized void clear() { size = 0; }
+
+    /**
+     * Copy a column's retained rows at or after a time, oldest first
+     *
+     * @param column Column
+     * @param since Earliest time
+     * @param time Row times, filled
+     * @param values Column values, filled
+     * @return Number of rows copied, no more than the length of the arrays
+     */
+    public synchronized int copy(Telemetry.Column column, double since, double[] time, double[] values) {
+        double[] t = columns[Telemetry.Column.TIME.ordinal()], v = columns[column.ordinal()];
+        long first = Math.max(0, size - capacity);
+
+        // Binary search for the first row at or after the start time
+        long lo = first, hi = size;
+
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+
+            if (t[(int)(mid % capacity)] < since)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        int n = (int)Math.min(size - lo, time.length);
+
+        for (int k = 0; k < n; k++) {
+            int i = (int)((lo + k) % capacity);
+            time[k] = t[i];
+            values[k] = v[i];
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,294 @@
+package livetrain.telemetry;
+
+import livetrain.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Publishes telemetry rows to any number of local subscribers over TCP. The simulation thread
+ * only copies each row into a shared ring; a single network thread batches rows for each
+ * subscriber into a direct buffer and writes them without blocking. A subscriber that falls more
+ * than a queue's worth of rows behind skips ahead to the newest rows, so a slow reader loses
+ * rows rather than holding up the simulation. All integers are big-endian
+ *
+ * <pre>
+ * hello "LVTS", int version, int columns, columns x (short length, UTF-8 name)
+ * frame int rows, int rows dropped since the previous frame, rows x columns x double
+ * </pre>
+ */
+public class TelemetryServer implements Telemetry.Sink, Closeable {
+    public static final int DEFAULT_PORT = 7790;
+    public static final int MAGIC = 0x4C565453, VERSION = 1;
+    public static final int RING_ROWS = 1 << 14, QUEUE_ROWS = 4096, FRAME_ROWS = 512;
+    public static final int BATCH_PERIOD_MS = 10;
+
+    /**
+     * A connected client and its position in the ring
+     */
+    private static class Subscriber {
+        final SocketChannel channel;
+        final ByteBuffer buffer;
+        long cursor;
+        int dropped = 0;
+
+        Subscriber(SocketChannel channel, long cursor, int frameBytes) {
+            this.channel = channel;
+            this.cursor = cursor;
+            buffer = ByteBuffer.allocateDirect(frameBytes);
+        }
+    }
+
+    private final int columns = Telemetry.COLUMNS;
+    private final double[] ring = new double[RING_ROWS * columns];
+    private volatile long published = 0;
+    private volatile int subscribers = 0;
+    private volatile boolean open = true;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ArrayList<Subscriber> clients = new ArrayList<>();
+    private final ByteBuffer hello, discard = ByteBuffer.allocateDirect(256);
+    private final Thread thread;
+
+    /**
+     * Listen on the loopback interface
+     *
+     * @param port TCP port
+     * @throws IOException If the port cannot be bound
+     */
+    public TelemetryServer(int port) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            server.close();
+            selector.close();
+            throw ex;
+        }
+
+        hello = ByteBuffer.allocate(4096);
+        hello.putInt(MAGIC).putInt(VERSION).putInt(columns);
+
+        for (Telemetry.Column c : Telemetry.Column.values()) {
+            byte[] name = c.name().toLowerCase().getBytes(StandardCharsets.UTF_8);
+            hello.putShort((short)name.length).put(name);
+        }
+
+        hello.flip();
+
+        thread = new Thread(new Runnable() {
+            @Override public void run() { serve(); }
+        }, "Telemetry server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return Number of connected subscribers
+     */
+    public int subscribers() { return subscribers; }
+
+    /**
+     * @return Bound port
+     */
+    public int port() { return server.socket().getLocalPort(); }
+
+    @Override public void accept(double[] row) {
+        if (subscribers == 0)
+            return;
+
+        long seq = published;
+        System.arraycopy(row, 0, ring, (int)(seq % RING_ROWS) * columns, columns);
+        published = seq + 1;
+    }
+
+    /**
+     * Network thread body
+     */
+    private void serve() {
+        while (open) {
+            try {
+                selector.select(BATCH_PERIOD_MS);
+            } catch (IOException ex) {
+                Log.add("Telemetry server failed", ex.toString());
+                break;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid())
+                    continue;
+
+                if (key.isAcceptable())
+                    acceptClient();
+                else if (key.isReadable())
+                    discardInput(key);
+            }
+
+            for (int i = clients.size() - 1; i >= 0; i--)
+                if (!flush(clients.get(i)))
+                    drop(i);
+        }
+
+        for (int i = clients.size() - 1; i >= 0; i--)
+            drop(i);
+
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException ex) {
+            Log.add("Failed to close telemetry server", ex.toString());
+        }
+    }
+
+    private void acceptClient() {
+        try {
+            SocketChannel channel = server.accept();
+
+            if (channel == null)
+                return;
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Subscriber s = new Subscriber(channel, published, 8 + FRAME_ROWS * columns * 8);
+            s.buffer.put(hello.duplicate()).flip();
+            channel.register(selector, SelectionKey.OP_READ, s);
+            clients.add(s);
+            subscribers = clients.size();
+            Log.add("Telemetry subscriber connected", "" + channel.getRemoteAddress());
+        } catch (IOException ex) {
+            Log.add("Failed to accept telemetry subscriber", ex.toString());
+        }
+    }
+
+    /**
+     * Subscribers have nothing to say; reading only detects when they hang up
+     */
+    private void discardInput(SelectionKey key) {
+        Subscriber s = (Subscriber)key.attachment();
+        discard.clear();
+
+        try {
+            if (s.channel.read(discard) < 0)
+                s.channel.close();
+        } catch (IOException ex) {
+            try {
+                s.channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Write whatever is pending for a subscriber, starting a new frame from the ring once the
+     * previous one has gone out
+     *
+     * @return If the subscriber is still connected
+     */
+    private boolean flush(Subscriber s) {
+        if (!s.channel.isOpen())
+            return false;
+
+        if (!s.buffer.hasRemaining())
+            fill(s);
+
+        try {
+            if (s.buffer.hasRemaining())
+                s.channel.write(s.buffer);
+        } catch (IOException ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy rows from a subscriber's cursor into a frame. A backlog beyond the queue bound is
+     * skipped, and rows the simulation overwrote during the copy are counted as dropped
+     */
+    private void fill(Subscriber s) {
+        long end = published;
+        long backlog = end - s.cursor;
+
+        if (backlog == 0)
+            return;
+
+        if (backlog > QUEUE_ROWS) {
+            s.dropped += (int)(backlog - QUEUE_ROWS);
+            s.cursor = end - QUEUE_ROWS;
+        }
+
+        ByteBuffer b = s.buffer;
+        b.clear();
+        b.position(8);
+        int rows = 0;
+
+        while (s.cursor < end && rows < FRAME_ROWS) {
+            int base = (int)(s.cursor % RING_ROWS) * columns;
+
+            for (int c = 0; c < columns; c++)
+                b.putDouble(ring[base + c]);
+
+            // A lapped slot may have been torn mid-copy
+            if (published - s.cursor >= RING_ROWS) {
+                b.position(b.position() - columns * 8);
+                s.dropped++;
+            } else {
+                rows++;
+            }
+
+            s.cursor++;
+        }
+
+        b.putInt(0, rows);
+        b.putInt(4, s.dropped);
+        s.dropped = 0;
+        b.flip();
+    }
+
+    private void drop(int i) {
+        Subscriber s = clients.remove(i);
+        subscribers = clients.size();
+
+        try {
+            s.channel.close();
+        } catch (IOException ignored) {}
+
+        Log.add("Telemetry subscriber disconnected");
+    }
+
+    /**
+     * Disconnect every subscriber and stop listening
+     *
+     * @throws IOException If interrupted while stopping
+     */
+    @Override public void close() throws IOException {
+        open = false;
+        selector.wakeup();
+
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping telemetry server");
+        }
+    }
+}
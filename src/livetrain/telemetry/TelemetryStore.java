@@ -0,0 +1,291 @@
+package livetrain.telemetry;
+
+/**
+ * In-memory telemetry history for long runs. Rows are kept in fixed size blocks and summarised
+ * into a pyramid of coarser levels, each entry of which holds the min, max and mean of a run of
+ * rows, so any time range can be read back at roughly screen resolution without touching every
+ * row. Every level is a ring of blocks: raw rows cover about the last minute at 1 kHz while the
+ * coarsest level covers days. Blocks are allocated on first use and recycled after that, so a full
+ * store holds about 23 MB and a short run much less. Each level keeps the start time of every
+ * block as a sparse index, so a lookup searches the block starts and then a single block
+ *
+ * Times must increase; a row at or before the newest stored time clears the store, which is what
+ * happens when the simulation is rewound and run again
+ */
+public class TelemetryStore implements Telemetry.Sink {
+    public static final int BLOCK_SHIFT = 10, BLOCK = 1 << BLOCK_SHIFT;
+    public static final int FANOUT = 16, LEVELS = 5;
+    public static final int RAW_BLOCKS = 64, SUMMARY_BLOCKS = 8;
+
+    /**
+     * One resolution of the pyramid. Entry e lives in block (e / BLOCK) mod capacity
+     */
+    private static class Level {
+        final long span;
+        final int capacity;
+        final boolean raw;
+        final double[][] time;
+        final double[] starts;
+        final double[][][] min, max, sum;
+        long size = 0;
+
+        // Entry being accumulated from the level below
+        final double[] accMin, accMax, accSum;
+        double accTime;
+        int accCount = 0;
+
+        Level(long span, int capacity, int columns) {
+            this.span = span;
+            this.capacity = capacity;
+            raw = span == 1;
+            time = new double[capacity][];
+            starts = new double[capacity];
+            min = new double[capacity][][];
+            max = raw ? null : new double[capacity][][];
+            sum = raw ? null : new double[capacity][][];
+            accMin = new double[columns];
+            accMax = new double[columns];
+            accSum = new double[columns];
+        }
+
+        long oldest() { return Math.max(0, ((size - 1) >> BLOCK_SHIFT) - capacity + 1) << BLOCK_SHIFT; }
+
+        int block(long e) { return (int)((e >> BLOCK_SHIFT) % capacity); }
+
+        int offset(long e) { return (int)(e & (BLOCK - 1)); }
+
+        double time(long e) { return time[block(e)][offset(e)]; }
+
+        /**
+         * Reserve the next entry and set its time, allocating its block if it has never been used
+         */
+        long append(int columns, double t) {
+            long e = size++;
+            int b = block(e), o = offset(e);
+
+            if (time[b] == null) {
+                time[b] = new double[BLOCK];
+                min[b] = new double[columns][BLOCK];
+
+                if (!raw) {
+                    max[b] = new double[columns][BLOCK];
+                    sum[b] = new double[columns][BLOCK];
+                }
+            }
+
+            time[b][o] = t;
+
+            if (o == 0)
+                starts[b] = t;
+
+            return e;
+        }
+
+        /**
+         * @return Last retained entry starting at or before a time, or the oldest if there is none
+         */
+        long find(double t) {
+            // Last block starting at or before the time, by the index of block starts
+            long lo = oldest() >> BLOCK_SHIFT, hi = (size - 1) >> BLOCK_SHIFT;
+
+            while (lo < hi) {
+                long mid = (lo + hi + 1) >>> 1;
+
+                if (starts[(int)(mid % capacity)] <= t)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+
+            // Then the last entry within that block
+            double[] times = time[(int)(lo % capacity)];
+            int a = 0, z = (int)Math.min(BLOCK, size - (lo << BLOCK_SHIFT)) - 1;
+
+            while (a < z) {
+                int mid = (a + z + 1) >>> 1;
+
+                if (times[mid] <= t)
+                    a = mid;
+                else
+                    z = mid - 1;
+            }
+
+            return (lo << BLOCK_SHIFT) + a;
+        }
+    }
+
+    private final int columns;
+    private final Level[] levels = new Level[LEVELS];
+    private double newest = Double.NEGATIVE_INFINITY;
+
+    public TelemetryStore() {
+        columns = Telemetry.COLUMNS;
+        long span = 1;
+
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = new Level(span, i == 0 ? RAW_BLOCKS : SUMMARY_BLOCKS, columns);
+            span *= FANOUT;
+        }
+    }
+
+    @Override public synchronized void accept(double[] row) {
+        double t = row[Telemetry.Column.TIME.ordinal()];
+
+        if (t <= newest)
+            clear();
+
+        newest = t;
+
+        Level raw = levels[0];
+        long e = raw.append(columns, t);
+        int b = raw.block(e), o = raw.offset(e);
+
+        for (int c = 0; c < columns; c++)
+            raw.min[b][c][o] = row[c];
+
+        accumulate(1, t, row, row, row);
+    }
+
+    /**
+     * Merge an entry from the level below into a level's open entry, committing it and carrying
+     * it upward once it holds a full fanout
+     */
+    private void accumulate(int level, double t, double[] min, double[] max, double[] sum) {
+        if (level == LEVELS)
+            return;
+
+        Level l = levels[level];
+
+        if (l.accCount == 0) {
+            l.accTime = t;
+            System.arraycopy(min, 0, l.accMin, 0, columns);
+            System.arraycopy(max, 0, l.accMax, 0, columns);
+            System.arraycopy(sum, 0, l.accSum, 0, columns);
+        } else {
+            for (int c = 0; c < columns; c++) {
+                l.accMin[c] = Math.min(l.accMin[c], min[c]);
+                l.accMax[c] = Math.max(l.accMax[c], max[c]);
+                l.accSum[c] += sum[c];
+            }
+        }
+
+        if (++l.accCount < FANOUT)
+            return;
+
+        long e = l.append(columns, l.accTime);
+        int b = l.block(e), o = l.offset(e);
+
+        for (int c = 0; c < columns; c++) {
+            l.min[b][c][o] = l.accMin[c];
+            l.max[b][c][o] = l.accMax[c];
+            l.sum[b][c][o] = l.accSum[c];
+        }
+
+        l.accCount = 0;
+        accumulate(level + 1, l.accTime, l.accMin, l.accMax, l.accSum);
+    }
+
+    /**
+     * Discard every row
+     */
+    public synchronized void clear() {
+        for (Level l : levels) {
+            l.size = 0;
+            l.accCount = 0;
+        }
+
+        newest = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return Number of rows received since the store was last cleared
+     */
+    public synchronized long size() { return levels[0].size; }
+
+    /**
+     * @return Time of the oldest row any level still summarises, or NaN if empty
+     */
+    public synchronized double oldestTime() {
+        for (int i = LEVELS - 1; i >= 0; i--)
+            if (levels[i].size > 0)
+                return levels[i].time(levels[i].oldest());
+
+        return Double.NaN;
+    }
+
+    /**
+     * @return Time of the newest row, or NaN if empty
+     */
+    public synchronized double newestTime() { return levels[0].size == 0 ? Double.NaN : newest; }
+
+    /**
+     * Read a column over a time range at the finest resolution that fits in the given number of
+     * points. Each point covers a run of rows starting at its time; raw rows have equal min, max
+     * and mean. If even the coarsest level has too many entries in the range, consecutive entries
+     * are merged so that the points still span all of it. The partial run at the end of a coarse
+     * level is not included
+     *
+     * @param column Column
+     * @param t0 Range start
+     * @param t1 Range end
+     * @param time Point start times, filled
+     * @param min Minimum over each point, filled
+     * @param max Maximum over each point, filled
+     * @param mean Mean over each point, filled
+     * @return Number of points written, no more than the length of the arrays
+     */
+    public synchronized int query(Telemetry.Column column, double t0, double t1, double[] time,
+            double[] min, double[] max, double[] mean) {
+        int limit = time.length;
+        Level use = null;
+        long first = 0, last = -1;
+
+        for (Level l : levels) {
+            if (l.size == 0)
+                continue;
+
+            long a = l.find(t0), b = l.find(t1);
+            boolean covers = l.oldest() == 0 || l.time(l.oldest()) <= t0;
+
+            use = l;
+            first = a;
+            last = b;
+
+            if (covers && b - a + 1 <= limit)
+                break;
+        }
+
+        if (use == null || t1 < t0 || limit == 0)
+            return 0;
+
+        int c = column.ordinal(), n = 0;
+        long stride = (last - first + limit) / limit;
+
+        for (long e = first; e <= last && n < limit; e += stride, n++) {
+            long end = Math.min(e + stride - 1, last);
+            double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY, total = 0;
+
+            for (long k = e; k <= end; k++) {
+                int b = use.block(k), o = use.offset(k);
+
+                if (use.raw) {
+                    double v = use.min[b][c][o];
+                    lo = Math.min(lo, v);
+                    hi = Math.max(hi, v);
+                    total += v;
+                } else {
+                    lo = Math.min(lo, use.min[b][c][o]);
+                    hi = Math.max(hi, use.max[b][c][o]);
+                    total += use.sum[b][c][o];
+                }
+            }
+
+            time[n] = use.time(e);
+            min[n] = lo;
+            max[n] = hi;
+            mean[n] = total / ((end - e + 1) * use.span);
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,108 @@
+package livetrain.time;
+
+import livetrain.Log;
+import livetrain.history.StateCursor;
+import livetrain.history.Stateful;
+import livetrain.noise.SeededRandom;
+
+/**
+ * Distribution of a delay, drawn from its own seeded stream so that runs with timing effects
+ * replay exactly. Each type has a base and a spread:
+ * <ul>
+ *     <li>CONSTANT: always the base</li>
+ *     <li>UNIFORM: anywhere within the spread either side of the base</li>
+ *     <li>GAUSSIAN: normal about the base with the spread as its standard deviation</li>
+ *     <li>EXPONENTIAL: the base plus an exponential tail with the spread as its mean, like the
+ *     late wakeups of a loaded scheduler</li>
+ * </ul>
+ * Delays are never negative
+ */
+public class Delay implements Stateful {
+    public enum Type { CONSTANT, UNIFORM, GAUSSIAN, EXPONENTIAL };
+
+    private final String name;
+    private final long seed;
+    private final SeededRandom random;
+    private volatile Type type = Type.CONSTANT;
+    private volatile double base = 0, spread = 0;
+
+    /**
+     * @param name Name for logging
+     * @param seed Seed of the stream
+     */
+    public Delay(String name, long seed) {
+        this.name = name;
+        this.seed = seed;
+        random = new SeededRandom(seed);
+    }
+
+    /**
+     * @return Distribution
+     */
+    public Type type() { return type; }
+
+    /**
+     * @return Base delay in seconds
+     */
+    public double base() { return base; }
+
+    /**
+     * @return Spread in seconds
+     */
+    public double spread() { return spread; }
+
+    /**
+     * @return If every draw is zero
+     */
+    public boolean isZero() { return base == 0 && (type == Type.CONSTANT || spread == 0); }
+
+    /**
+     * @param t Distribution
+     * @param base Base delay in seconds
+     * @param spread Spread in seconds
+     */
+    public synchronized void configure(Type t, double base, double spread) {
+        if (base < 0 || spread < 0)
+            throw new IllegalArgumentException("Delays must not be negative");
+
+        type = t;
+        this.base = base;
+        this.spread = spread;
+        Log.add("Set " + name, t + "[" + base + ", " + spread + "]");
+    }
+
+    /**
+     * Restart the stream from its seed
+     */
+    public synchronized void reseed() { random.setState(seed); }
+
+    /**
+     * @return A delay in seconds
+     */
+    public synchronized double sample() {
+        double d;
+
+        switch (type) {
+            case UNIFORM:
+                d = base + spread * (2 * random.nextDouble() - 1);
+                break;
+
+            case GAUSSIAN:
+                d = base + spread * random.nextGaussian();
+                break;
+
+            case EXPONENTIAL:
+                d = base - spread * Math.log(1 - random.nextDouble());
+                break;
+
+            default:
+                d = base;
+        }
+
+        return Math.max(d, 0);
+    }
+
+    @Override public synchronized void saveState(StateCursor c) { c.putLong(random.state()); }
+
+    @Override public synchronized void restoreState(StateCursor c) { random.setState(c.getLong()); }
+}
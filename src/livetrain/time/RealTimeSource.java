@@ -0,0 +1,13 @@
+package livetrain.time;
+
+/**
+ * Wall time from the JVM's monotonic nanosecond timer
+ */
+public class RealTimeSource implements TimeSource {
+    private final long origin = System.nanoTime();
+
+    /**
+     * @return Seconds since this source was created
+     */
+    @Override public double now() { return (System.nanoTime() - origin) / 1e9; }
+}
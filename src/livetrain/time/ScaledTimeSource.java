@@ -0,0 +1,51 @@
+package livetrain.time;
+
+/**
+ * Another source's time, sped up or slowed down. Changing the scale rebases the source so that
+ * its time stays continuous
+ */
+public class ScaledTimeSource implements TimeSource {
+    private final TimeSource base;
+    private double scale, baseOrigin, origin;
+
+    /**
+     * @param base Source to scale
+     * @param scale Initial scale, where 1 is the base source's rate
+     */
+    public ScaledTimeSource(TimeSource base, double scale) { this(base, scale, 0); }
+
+    /**
+     * @param base Source to scale
+     * @param scale Initial scale, where 1 is the base source's rate
+     * @param start Time reported now, so that a replacement can carry on from an earlier source
+     */
+    public ScaledTimeSource(TimeSource base, double scale, double start) {
+        if (scale < 0)
+            throw new IllegalArgumentException("Scale must be nonnegative");
+
+        this.base = base;
+        this.scale = scale;
+        baseOrigin = base.now();
+        origin = start;
+    }
+
+    @Override public synchronized double now() { return origin + (base.now() - baseOrigin) * scale; }
+
+    /**
+     * @return Scale, where 1 is the base source's rate
+     */
+    public synchronized double scale() { return scale; }
+
+    /**
+     * @param scale Scale, where 1 is the base source's rate
+     */
+    public synchronized void setScale(double scale) {
+        if (scale < 0)
+            throw new IllegalArgumentException("Scale must be nonnegative");
+
+        double b = base.now();
+        origin += (b - baseOrigin) * this.scale;
+        baseOrigin = b;
+        this.scale = scale;
+    }
+}
@@ -0,0 +1,11 @@
+package livetrain.time;
+
+/**
+ * Source of monotonic timestamps
+ */
+public interface TimeSource {
+    /**
+     * @return Current time in seconds since the source's epoch. Never decreases
+     */
+    double now();
+}
@@ -0,0 +1,42 @@
+package livetrain.time;
+
+/**
+ * Manually stepped time for batch runs, where the simulation should advance as fast as it can
+ * compute rather than with the wall clock
+ */
+public class VirtualTimeSource implements TimeSource {
+    private volatile double time;
+
+    /**
+     * @param start Initial time in seconds
+     */
+    public VirtualTimeSource(double start) { time = start; }
+
+    public VirtualTimeSource() { this(0); }
+
+    @Override public double now() { return time; }
+
+    /**
+     * Move time forward
+     *
+     * @param dt Step in seconds
+     */
+    public synchronized void advance(double dt) {
+        if (dt < 0)
+            throw new IllegalArgumentException("Virtual time cannot move backwards");
+
+        time += dt;
+    }
+
+    /**
+     * Move time forward to a point
+     *
+     * @param t Time in seconds
+     */
+    public synchronized void set(double t) {
+        if (t < time)
+            throw new IllegalArgumentException("Virtual time cannot move backwards");
+
+        time = t;
+    }
+}
@@ -0,0 +1,93 @@
+package livetrain.ui;
+
+import livetrain.Simulation;
+import livetrain.graphics.Decimation;
+import livetrain.graphics.SimulationRenderer;
+import livetrain.graphics.StripChartRenderer;
+import livetrain.telemetry.Telemetry;
+import livetrain.telemetry.TelemetryRing;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * Interface tab with strip charts of tracking error, follower updates and drivetrain powers
+ */
+public class ChartsPanel extends JPanel {
+    public static final int REFRESH_PERIOD_MS = 33;
+    public static final int RING_CAPACITY = 1 << 15;
+    public static final String[] WINDOW_NAMES = {"5 s", "10 s", "30 s", "Whole run"};
+    public static final double[] WINDOWS = {5, 10, 30, Double.POSITIVE_INFINITY};
+    public static final Color[] SERIES_COLORS = {
+        new Color(252, 129, 129), new Color(129, 252, 160), new Color(129, 196, 252), new Color(252, 220, 129),
+        new Color(206, 129, 252), new Color(129, 252, 240)
+    };
+    
+    private TelemetryRing ring = new TelemetryRing(RING_CAPACITY);
+    private JComboBox<String> boxWindow = new JComboBox<>(WINDOW_NAMES);
+    private JComboBox<Decimation.Type> boxDecimation = new JComboBox<>(Decimation.Type.values());
+    private JCheckBox chkTrails = new JCheckBox("Pose trails on canvas", true);
+    private StripChartRenderer renderer;
+    
+    public ChartsPanel() {
+        Telemetry.Column[] axes = {Telemetry.Column.HEADING_ERROR, Telemetry.Column.LATERAL_ERROR,
+                Telemetry.Column.AXIAL_ERROR};
+        Telemetry.Column[] updates = {Telemetry.Column.HEADING_UPDATE, Telemetry.Column.LATERAL_UPDATE,
+                Telemetry.Column.AXIAL_UPDATE};
+        Telemetry.Column[] powers = {Telemetry.Column.POWER0, Telemetry.Column.POWER1,
+                Telemetry.Column.POWER2, Telemetry.Column.POWER3, Telemetry.Column.POWER4,
+                Telemetry.Column.POWER5};
+        String[] axisLabels = {"Heading", "Lateral", "Axial"};
+        
+        renderer = new StripChartRenderer(new StripChartRenderer.Chart[] {
+            new StripChartRenderer.Chart("Error", axes, SERIES_COLORS, axisLabels),
+            new StripChartRenderer.Chart("Follower update", updates, SERIES_COLORS, axisLabels),
+            new StripChartRenderer.Chart("Powers", powers, SERIES_COLORS, new String[] {"0", "1", "2", "3", "4", "5"})
+        }, ring, Simulation.instance().telemetryStore());
+        
+        Simulation.instance().telemetry().addSink(ring);
+        boxWindow.setSelectedIndex(1);
+        
+        boxWindow.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                renderer.setWindow(WINDOWS[boxWindow.getSelectedIndex()]);
+            }
+        });
+        
+        boxDecimation.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                renderer.setDecimation((Decimation.Type)boxDecimation.getSelectedItem());
+            }
+        });
+        
+        chkTrails.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                SimulationRenderer.instance().setShowTrails(chkTrails.isSelected());
+            }
+        });
+        
+        new Timer(REFRESH_PERIOD_MS, new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                if (renderer.isShowing())
+                    renderer.repaint();
+            }
+        }).start();
+        
+        JPanel panControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panControls.add(new JLabel("Window"));
+        panControls.add(boxWindow);
+        panControls.add(new JLabel("Decimation"));
+        panControls.add(boxDecimation);
+        panControls.add(chkTrails);
+        
+        setLayout(new BorderLayout());
+        add(panControls, BorderLayout.NORTH);
+        add(renderer, BorderLayout.CENTER);
+    }
+}
@@ -0,0 +1,712 @@
+package livetrain.ui;
+
+import livetrain.Log;
+import livetrain.Registry;
+import livetrain.Simulation;
+import livetrain.estimation.PoseEstimator;
+import livetrain.metrics.LatencyHistogram;
+import livetrain.metrics.Metrics;
+import livetrain.metrics.Tracer;
+import livetrain.metrics.Watchdog;
+import livetrain.physics.Integrator;
+import livetrain.robot.Drivetrain;
+import livetrain.robot.ExternalController;
+import livetrain.robot.Follower;
+import livetrain.robot.MpcFollower;
+import livetrain.robot.Robot;
+import livetrain.telemetry.ColumnarWriter;
+import livetrain.telemetry.CsvWriter;
+import livetrain.telemetry.Telemetry;
+import livetrain.telemetry.TelemetryServer;
+import livetrain.time.Delay;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Interface tab for the simulation engine's stepping configuration
+ */
+public class EnginePanel extends JPanel {
+    private JTextField txtStepSize = new JTextField("" + Simulation.DEFAULT_STEP_SIZE);
+    private JTextField txtCpuBudget = new JTextField("" + Simulation.DEFAULT_CPU_BUDGET);
+    private JTextField txtSensorFrequency = new JTextField("" + Simulation.robot().sensorFrequency());
+    private JComboBox<Integrator.Type> boxIntegrator = new JComboBox<>(Integrator.Type.values());
+    private JComboBox<Drivetrain.Type> boxDrivetrain = new JComboBox<>(Drivetrain.Type.values());
+    private JComboBox<Follower.Type> boxFollower = new JComboBox<>(Follower.Type.values());
+    private JCheckBox chkMetricsOverlay = new JCheckBox("Show latency metrics on canvas");
+    private JButton btMetricsReset = new JButton("Reset metrics");
+    private JButton btTrace = new JButton("Start trace");
+    private JLabel labTrace = new JLabel(" ");
+    private JTextField txtDeadline = new JTextField("" + Simulation.instance().watchdog().deadline());
+    private JCheckBox chkFreeze = new JCheckBox("Freeze simulated time during overruns");
+    private JButton btWatchdogReset = new JButton("Reset watchdog");
+    private JLabel labWatchdog = new JLabel(" ");
+    private JComboBox<String> boxTelemetryFormat = new JComboBox<>(new String[] {"Columnar (.lvt)", "CSV (.csv)"});
+    private JButton btTelemetry = new JButton("Start recording");
+    private JLabel labTelemetry = new JLabel(" ");
+    private JCheckBox chkServer = new JCheckBox("Serve on localhost:" + TelemetryServer.DEFAULT_PORT);
+    private Telemetry.Sink telemetrySink = null;
+    private TelemetryServer server = null;
+    private JCheckBox chkExternal = new JCheckBox("Accept controller on localhost:" + ExternalController.DEFAULT_PORT);
+    private JLabel labExternal = new JLabel(" ");
+    private JTextField txtMpcBudget = new JTextField("" + MpcFollower.DEFAULT_BUDGET);
+    private JButton btMpcReset = new JButton("Reset MPC statistics");
+    private JLabel labMpc = new JLabel(" ");
+    private JCheckBox chkMotors = new JCheckBox("Simulate motor dynamics");
+    private JTextField txtGearRatio = new JTextField("" + Simulation.robot().drivetrain().motors().gearRatio());
+    private JTextField txtCurrentLimit = new JTextField("" + Simulation.robot().drivetrain().motors().currentLimit());
+    private JTextField txtRobotMass = new JTextField("" + Simulation.robot().drivetrain().motors().robotMass());
+    private JLabel labMotors = new JLabel(" ");
+    private JCheckBox chkTraction = new JCheckBox("Limit traction");
+    private JTextField txtFriction = new JTextField("" + Simulation.robot().drivetrain().tractionModel().friction());
+    private JTextField txtFrontBias = new JTextField("" + Simulation.robot().drivetrain().tractionModel().frontBias());
+    private JLabel labTraction = new JLabel(" ");
+    private JCheckBox chkEstimator = new JCheckBox("Estimate pose (EKF)");
+    private JTextField txtOdometryNoise = new JTextField("" + Simulation.robot().estimator().translationNoise());
+    private JTextField txtPoseDeviation = new JTextField("" + Simulation.robot().estimator().poseDeviation());
+    private JLabel labEstimator = new JLabel(" ");
+    private JTextField txtEncoderRate = new JTextField("" + Simulation.robot().sensors().encoders().rate());
+    private JTextField txtEncoderLatency = new JTextField("" + Simulation.robot().sensors().encoders().latency());
+    private JTextField txtEncoderCounts = new JTextField("" + Simulation.robot().sensors().encoders().countsPerRevolution());
+    private JTextField txtImuRate = new JTextField("" + Simulation.robot().sensors().imu().rate());
+    private JTextField txtImuLatency = new JTextField("" + Simulation.robot().sensors().imu().latency());
+    private JTextField txtImuQuantum = new JTextField("" + Simulation.robot().sensors().imu().quantum());
+    private JTextField txtVisionRate = new JTextField("" + Simulation.robot().sensors().vision().rate());
+    private JTextField txtVisionLatency = new JTextField("" + Simulation.robot().sensors().vision().latency());
+    private JTextField txtVisionQuantum = new JTextField("" + Simulation.robot().sensors().vision().quantum());
+    private JCheckBox chkVision = new JCheckBox("Vision", true);
+    private JComboBox<Delay.Type> boxComputeDistribution = new JComboBox<>(Delay.Type.values());
+    private JComboBox<Delay.Type> boxJitterDistribution = new JComboBox<>(Delay.Type.values());
+    private JTextField txtComputeTime = new JTextField("" + Simulation.robot().computeDelay().base());
+    private JTextField txtComputeSpread = new JTextField("" + Simulation.robot().computeDelay().spread());
+    private JTextField txtActuationLatency = new JTextField("" + Simulation.robot().actuationDelay().base());
+    private JTextField txtLoopJitter = new JTextField("" + Simulation.robot().loopJitter().spread());
+    private JLabel labTiming = new JLabel(" ");
+    private String telemetryPath = null;
+    
+    public EnginePanel() {
+        JPanel panStepping = new JPanel(new GridLayout(0, 2, 6, 6));
+        panStepping.setBorder(BorderFactory.createTitledBorder("Stepping"));
+        
+        panStepping.add(new JLabel("Step size (s)"));
+        panStepping.add(txtStepSize);
+        panStepping.add(new JLabel("CPU budget per update (s)"));
+        panStepping.add(txtCpuBudget);
+        panStepping.add(new JLabel("Integrator"));
+        panStepping.add(boxIntegrator);
+        panStepping.add(new JLabel("Drivetrain"));
+        panStepping.add(boxDrivetrain);
+        panStepping.add(new JLabel("Follower"));
+        panStepping.add(boxFollower);
+        panStepping.add(new JLabel("Sensor read frequency (Hz)"));
+        panStepping.add(txtSensorFrequency);
+        
+        txtStepSize.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.SIMULATION_STEP_SIZE, txtStepSize);
+            }
+        });
+        
+        txtCpuBudget.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.SIMULATION_CPU_BUDGET, txtCpuBudget);
+                txtDeadline.setText("" + Simulation.instance().watchdog().deadline());
+            }
+        });
+        
+        txtSensorFrequency.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.ROBOT_SENSOR_FREQUENCY, txtSensorFrequency);
+            }
+        });
+        
+        boxIntegrator.setSelectedItem(Simulation.robot().integrator());
+        boxIntegrator.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().setIntegrator((Integrator.Type)boxIntegrator.getSelectedItem());
+            }
+        });
+        
+        boxDrivetrain.setSelectedItem(Simulation.robot().drivetrain().type());
+        boxDrivetrain.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().drivetrain().setType((Drivetrain.Type)boxDrivetrain.getSelectedItem());
+            }
+        });
+        
+        boxFollower.setSelectedItem(Simulation.robot().follower().type());
+        boxFollower.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().setFollowerType((Follower.Type)boxFollower.getSelectedItem());
+            }
+        });
+        
+        JPanel panMetrics = new JPanel(new GridLayout(0, 1, 6, 6));
+        panMetrics.setBorder(BorderFactory.createTitledBorder("Metrics"));
+        panMetrics.add(chkMetricsOverlay);
+        panMetrics.add(btMetricsReset);
+        panMetrics.add(btTrace);
+        panMetrics.add(labTrace);
+        
+        chkMetricsOverlay.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Metrics.setOverlay(chkMetricsOverlay.isSelected());
+            }
+        });
+        
+        btMetricsReset.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                Metrics.reset();
+            }
+        });
+        
+        btTrace.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                toggleTrace();
+            }
+        });
+        
+        JPanel panWatchdog = new JPanel(new GridLayout(0, 2, 6, 6));
+        panWatchdog.setBorder(BorderFactory.createTitledBorder("Watchdog"));
+        panWatchdog.add(new JLabel("Update deadline (s)"));
+        panWatchdog.add(txtDeadline);
+        panWatchdog.add(chkFreeze);
+        panWatchdog.add(btWatchdogReset);
+        panWatchdog.add(labWatchdog);
+        panWatchdog.add(new JLabel(" "));
+        
+        txtDeadline.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.SIMULATION_UPDATE_DEADLINE, txtDeadline);
+            }
+        });
+        
+        chkFreeze.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.instance().watchdog().setFreeze(chkFreeze.isSelected());
+            }
+        });
+        
+        btWatchdogReset.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                Simulation.instance().watchdog().reset();
+            }
+        });
+        
+        new Timer(500, new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                Watchdog w = Simulation.instance().watchdog();
+                labWatchdog.setText(String.format(Locale.getDefault(), "%d overruns (GC %d, slow %d, stall %d)",
+                        w.total(), w.count(Watchdog.Overrun.GC), w.count(Watchdog.Overrun.SLOW_UPDATE),
+                        w.count(Watchdog.Overrun.STALL)));
+                refreshExternal();
+                refreshMpc();
+                refreshMotors();
+                refreshTraction();
+                refreshEstimator();
+                refreshTiming();
+            }
+        }).start();
+        
+        JPanel panTelemetry = new JPanel(new GridLayout(0, 2, 6, 6));
+        panTelemetry.setBorder(BorderFactory.createTitledBorder("Telemetry"));
+        panTelemetry.add(boxTelemetryFormat);
+        panTelemetry.add(btTelemetry);
+        panTelemetry.add(labTelemetry);
+        panTelemetry.add(chkServer);
+        
+        btTelemetry.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                toggleTelemetry();
+            }
+        });
+        
+        chkServer.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                setServing(chkServer.isSelected());
+            }
+        });
+        
+        JPanel panExternal = new JPanel(new GridLayout(0, 1, 6, 6));
+        panExternal.setBorder(BorderFactory.createTitledBorder("External controller"));
+        panExternal.add(chkExternal);
+        panExternal.add(labExternal);
+        
+        chkExternal.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                setExternal(chkExternal.isSelected());
+            }
+        });
+        
+        JPanel panMpc = new JPanel(new GridLayout(0, 2, 6, 6));
+        panMpc.setBorder(BorderFactory.createTitledBorder("MPC follower"));
+        panMpc.add(new JLabel("Compute budget per update (s)"));
+        panMpc.add(txtMpcBudget);
+        panMpc.add(labMpc);
+        panMpc.add(btMpcReset);
+        
+        txtMpcBudget.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.MPC_BUDGET, txtMpcBudget);
+            }
+        });
+        
+        btMpcReset.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                ((MpcFollower)Simulation.robot().follower(Follower.Type.MPC)).resetStatistics();
+                Metrics.histogram(Metrics.Phase.MPC_SOLVE).reset();
+            }
+        });
+        
+        JPanel panMotors = new JPanel(new GridLayout(0, 2, 6, 6));
+        panMotors.setBorder(BorderFactory.createTitledBorder("Motors"));
+        panMotors.add(chkMotors);
+        panMotors.add(labMotors);
+        panMotors.add(new JLabel("Gear ratio"));
+        panMotors.add(txtGearRatio);
+        panMotors.add(new JLabel("Current limit per motor (A)"));
+        panMotors.add(txtCurrentLimit);
+        panMotors.add(new JLabel("Robot mass (kg)"));
+        panMotors.add(txtRobotMass);
+        
+        chkMotors.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().drivetrain().setMotorDynamics(chkMotors.isSelected());
+            }
+        });
+        
+        txtGearRatio.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.MOTOR_GEAR_RATIO, txtGearRatio);
+            }
+        });
+        
+        txtCurrentLimit.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.MOTOR_CURRENT_LIMIT, txtCurrentLimit);
+            }
+        });
+        
+        txtRobotMass.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.ROBOT_MASS, txtRobotMass);
+            }
+        });
+        
+        JPanel panTraction = new JPanel(new GridLayout(0, 2, 6, 6));
+        panTraction.setBorder(BorderFactory.createTitledBorder("Traction"));
+        panTraction.add(chkTraction);
+        panTraction.add(labTraction);
+        panTraction.add(new JLabel("Friction coefficient"));
+        panTraction.add(txtFriction);
+        panTraction.add(new JLabel("Weight on front wheels"));
+        panTraction.add(txtFrontBias);
+        
+        chkTraction.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().drivetrain().setTraction(chkTraction.isSelected());
+            }
+        });
+        
+        txtFriction.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.TRACTION_FRICTION, txtFriction);
+            }
+        });
+        
+        txtFrontBias.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.TRACTION_FRONT_BIAS, txtFrontBias);
+            }
+        });
+        
+        JPanel panEstimator = new JPanel(new GridLayout(0, 2, 6, 6));
+        panEstimator.setBorder(BorderFactory.createTitledBorder("Estimator"));
+        panEstimator.add(chkEstimator);
+        panEstimator.add(labEstimator);
+        panEstimator.add(new JLabel("Odometry error per unit travelled"));
+        panEstimator.add(txtOdometryNoise);
+        panEstimator.add(new JLabel("Pose measurement deviation"));
+        panEstimator.add(txtPoseDeviation);
+        
+        chkEstimator.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().setEstimating(chkEstimator.isSelected());
+            }
+        });
+        
+        txtOdometryNoise.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.ESTIMATOR_ODOMETRY_NOISE, txtOdometryNoise);
+            }
+        });
+        
+        txtPoseDeviation.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(Registry.Entry.ESTIMATOR_POSE_DEVIATION, txtPoseDeviation);
+            }
+        });
+        
+        JPanel panSensors = new JPanel(new GridLayout(0, 4, 6, 6));
+        panSensors.setBorder(BorderFactory.createTitledBorder("Sensors"));
+        panSensors.add(new JLabel(" "));
+        panSensors.add(new JLabel("Rate (Hz)"));
+        panSensors.add(new JLabel("Latency (s)"));
+        panSensors.add(new JLabel("Resolution"));
+        panSensors.add(new JLabel("Encoders (counts/rev)"));
+        panSensors.add(txtEncoderRate);
+        panSensors.add(txtEncoderLatency);
+        panSensors.add(txtEncoderCounts);
+        panSensors.add(new JLabel("IMU (rad)"));
+        panSensors.add(txtImuRate);
+        panSensors.add(txtImuLatency);
+        panSensors.add(txtImuQuantum);
+        panSensors.add(chkVision);
+        panSensors.add(txtVisionRate);
+        panSensors.add(txtVisionLatency);
+        panSensors.add(txtVisionQuantum);
+        
+        addRegistryField(txtEncoderRate, Registry.Entry.ENCODER_RATE);
+        addRegistryField(txtEncoderLatency, Registry.Entry.ENCODER_LATENCY);
+        addRegistryField(txtEncoderCounts, Registry.Entry.ENCODER_COUNTS);
+        addRegistryField(txtImuRate, Registry.Entry.IMU_RATE);
+        addRegistryField(txtImuLatency, Registry.Entry.IMU_LATENCY);
+        addRegistryField(txtImuQuantum, Registry.Entry.IMU_QUANTUM);
+        addRegistryField(txtVisionRate, Registry.Entry.VISION_RATE);
+        addRegistryField(txtVisionLatency, Registry.Entry.VISION_LATENCY);
+        addRegistryField(txtVisionQuantum, Registry.Entry.VISION_QUANTUM);
+        
+        chkVision.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                Simulation.robot().sensors().vision().setEnabled(chkVision.isSelected());
+            }
+        });
+        
+        JPanel panTiming = new JPanel(new GridLayout(0, 2, 6, 6));
+        panTiming.setBorder(BorderFactory.createTitledBorder("Control timing"));
+        panTiming.add(new JLabel("Controller compute time (s)"));
+        panTiming.add(txtComputeTime);
+        panTiming.add(new JLabel("Compute time distribution"));
+        panTiming.add(boxComputeDistribution);
+        panTiming.add(new JLabel("Compute time spread (s)"));
+        panTiming.add(txtComputeSpread);
+        panTiming.add(new JLabel("Actuation latency (s)"));
+        panTiming.add(txtActuationLatency);
+        panTiming.add(new JLabel("Loop jitter distribution"));
+        panTiming.add(boxJitterDistribution);
+        panTiming.add(new JLabel("Loop jitter (s)"));
+        panTiming.add(txtLoopJitter);
+        panTiming.add(labTiming);
+        
+        addRegistryField(txtComputeTime, Registry.Entry.CONTROL_COMPUTE_TIME);
+        addRegistryField(txtComputeSpread, Registry.Entry.CONTROL_COMPUTE_SPREAD);
+        addRegistryField(txtActuationLatency, Registry.Entry.CONTROL_ACTUATION_LATENCY);
+        addRegistryField(txtLoopJitter, Registry.Entry.CONTROL_LOOP_JITTER);
+        
+        addDistributionBox(boxComputeDistribution, txtComputeSpread, Simulation.robot().computeDelay());
+        addDistributionBox(boxJitterDistribution, txtLoopJitter, Simulation.robot().loopJitter());
+        
+        JPanel panSections = new JPanel();
+        panSections.setLayout(new BoxLayout(panSections, BoxLayout.Y_AXIS));
+        panSections.add(panStepping);
+        panSections.add(panMetrics);
+        panSections.add(panWatchdog);
+        panSections.add(panTelemetry);
+        panSections.add(panExternal);
+        panSections.add(panMpc);
+        panSections.add(panMotors);
+        panSections.add(panTraction);
+        panSections.add(panSensors);
+        panSections.add(panEstimator);
+        panSections.add(panTiming);
+        
+        setLayout(new BorderLayout());
+        add(panSections, BorderLayout.NORTH);
+    }
+    
+    /**
+     * Start recording per-tick telemetry to the working directory in the selected format, or
+     * finish the current recording
+     */
+    private void toggleTelemetry() {
+        Telemetry telemetry = Simulation.instance().telemetry();
+        
+        if (telemetrySink == null) {
+            boolean csv = boxTelemetryFormat.getSelectedIndex() == 1;
+            String path = "livetrain-telemetry-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                    + (csv ? ".csv" : ".lvt");
+            
+            try {
+                telemetrySink = csv ? new CsvWriter(path) : new ColumnarWriter(path);
+            } catch (IOException ex) {
+                labTelemetry.setText("Failed to open " + path);
+                Log.add("Failed to open telemetry file", ex.toString());
+                return;
+            }
+            
+            telemetryPath = path;
+            telemetry.addRecorder(telemetrySink);
+            boxTelemetryFormat.setEnabled(false);
+            btTelemetry.setText("Stop recording");
+            labTelemetry.setText("Recording to " + path);
+            Log.add("Started telemetry recording", path);
+            return;
+        }
+        
+        telemetry.removeRecorder(telemetrySink);
+        
+        try {
+            ((Closeable)telemetrySink).close();
+            labTelemetry.setText("Saved " + telemetryPath);
+            Log.add("Saved telemetry", telemetryPath);
+        } catch (IOException ex) {
+            labTelemetry.setText("Failed to save telemetry: " + ex.getMessage());
+            Log.add("Failed to save telemetry", ex.toString());
+        }
+        
+        telemetrySink = null;
+        boxTelemetryFormat.setEnabled(true);
+        btTelemetry.setText("Start recording");
+    }
+    
+    /**
+     * Start or stop publishing telemetry to local subscribers
+     * 
+     * @param serve If the server should run
+     */
+    private void setServing(boolean serve) {
+        Telemetry telemetry = Simulation.instance().telemetry();
+        
+        if (serve && server == null) {
+            try {
+                server = new TelemetryServer(TelemetryServer.DEFAULT_PORT);
+                telemetry.addRecorder(server);
+                Log.add("Started telemetry server", "port " + server.port());
+            } catch (IOException ex) {
+                Log.add("Failed to start telemetry server", ex.toString());
+                chkServer.setSelected(false);
+            }
+        } else if (!serve && server != null) {
+            telemetry.removeRecorder(server);
+            
+            try {
+                server.close();
+            } catch (IOException ex) {
+                Log.add("Failed to stop telemetry server", ex.toString());
+            }
+            
+            server = null;
+            Log.add("Stopped telemetry server");
+        }
+    }
+    
+    /**
+     * Hand follower updates to an external process, or return them to the built-in follower
+     * 
+     * @param external If an external controller should be accepted
+     */
+    private void setExternal(boolean external) {
+        ExternalController current = Simulation.robot().externalController();
+        
+        if (external && current == null) {
+            try {
+                Simulation.robot().setExternalController(new ExternalController(ExternalController.DEFAULT_PORT));
+            } catch (IOException ex) {
+                Log.add("Failed to listen for external controller", ex.toString());
+                chkExternal.setSelected(false);
+            }
+        } else if (!external && current != null) {
+            Simulation.robot().setExternalController(null);
+            
+            try {
+                current.close();
+            } catch (IOException ex) {
+                Log.add("Failed to close external controller", ex.toString());
+            }
+        }
+    }
+    
+    /**
+     * Show the external controller's connection and round trip latency
+     */
+    private void refreshExternal() {
+        ExternalController c = Simulation.robot().externalController();
+        LatencyHistogram h = Metrics.histogram(Metrics.Phase.CONTROLLER_ROUND_TRIP);
+        
+        if (c == null)
+            labExternal.setText("Using built-in follower");
+        else if (!c.connected())
+            labExternal.setText("Waiting for controller; robot holds zero power");
+        else
+            labExternal.setText(String.format(Locale.getDefault(), "Connected, round trip p50 %.1fus p99 %.1fus (%d)",
+                    h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.count()));
+    }
+    
+    /**
+     * Show the battery voltage and the largest motor current
+     */
+    private void refreshMotors() {
+        Drivetrain dt = Simulation.robot().drivetrain();
+        
+        if (!dt.motorDynamics()) {
+            labMotors.setText("Wheels follow powers directly");
+            return;
+        }
+        
+        labMotors.setText(String.format(Locale.getDefault(), "Battery %.2fV, peak current %.2fA",
+                dt.motors().busVoltage(), dt.motors().peakCurrent()));
+    }
+    
+    /**
+     * Show the tightest acceleration limit and how far the wheels are slipping
+     */
+    private void refreshTraction() {
+        Drivetrain dt = Simulation.robot().drivetrain();
+        
+        if (!dt.traction()) {
+            labTraction.setText("Wheels never slip");
+            return;
+        }
+        
+        labTraction.setText(String.format(Locale.getDefault(), "Limit %.0f units/s^2, slip %.2f",
+                dt.tractionModel().minimumAccelerationLimit(), dt.tractionModel().slip()));
+    }
+    
+    /**
+     * Show how often the controller overran its period and how many commands are in flight
+     */
+    private void refreshTiming() {
+        Robot robot = Simulation.robot();
+        
+        labTiming.setText(String.format(Locale.getDefault(), "%d overruns, %d commands in flight",
+                robot.overruns(), robot.commands().size()));
+    }
+    
+    /**
+     * Let a box choose a delay's distribution. A constant delay has no spread, so its spread
+     * field is disabled until a distribution that uses it is chosen
+     */
+    private void addDistributionBox(final JComboBox<Delay.Type> box, final JTextField spread, final Delay delay) {
+        box.setSelectedItem(delay.type());
+        spread.setEnabled(delay.type() != Delay.Type.CONSTANT);
+        box.addItemListener(new java.awt.event.ItemListener() {
+            @Override public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                if (evt.getStateChange() != java.awt.event.ItemEvent.SELECTED)
+                    return;
+                
+                Delay.Type t = (Delay.Type)box.getSelectedItem();
+                delay.configure(t, delay.base(), delay.spread());
+                spread.setEnabled(t != Delay.Type.CONSTANT);
+            }
+        });
+    }
+    
+    /**
+     * Commit a field's value to the registry when it loses focus
+     * 
+     * @param field Field
+     * @param ent Entry it edits
+     */
+    private void addRegistryField(final JTextField field, final Registry.Entry ent) {
+        field.addFocusListener(new java.awt.event.FocusAdapter() {
+            @Override public void focusLost(java.awt.event.FocusEvent evt) {
+                Registry.edit(ent, field);
+            }
+        });
+    }
+    
+    /**
+     * Show the estimate's uncertainty and the cost of filtering
+     */
+    private void refreshEstimator() {
+        Robot robot = Simulation.robot();
+        PoseEstimator est = robot.estimator();
+        
+        if (!robot.estimating() || !est.initialized()) {
+            labEstimator.setText("Follower sees the noisy pose");
+            return;
+        }
+        
+        labEstimator.setText(String.format(Locale.getDefault(), "Deviation %.3f, %.2f deg, p99 %.1fus",
+                est.positionDeviation(), Math.toDegrees(est.headingDeviation()),
+                Metrics.histogram(Metrics.Phase.ESTIMATION).percentile(99) / 1e3));
+    }
+    
+    /**
+     * Show MPC solve times against the control period, and how often the budget ended a solve
+     */
+    private void refreshMpc() {
+        MpcFollower mpc = (MpcFollower)Simulation.robot().follower(Follower.Type.MPC);
+        LatencyHistogram h = Metrics.histogram(Metrics.Phase.MPC_SOLVE);
+        
+        if (mpc.solves() == 0) {
+            labMpc.setText("No solves yet");
+            return;
+        }
+        
+        labMpc.setText(String.format(Locale.getDefault(), "<html>p50 %.0fus p99 %.0fus max %.0fus of %.1fms period<br>"
+                + "%.1f iterations, %d of %d solves out of budget</html>", h.percentile(50) / 1e3,
+                h.percentile(99) / 1e3, h.max() / 1e3, 1e3 / Simulation.robot().updateFrequency(),
+                mpc.meanIterations(), mpc.exhausted(), mpc.solves()));
+    }
+    
+    /**
+     * Start a trace capture, or stop the current one and write it to the working directory
+     */
+    private void toggleTrace() {
+        if (!Tracer.enabled()) {
+            Metrics.startTrace();
+            btTrace.setText("Stop and save trace");
+            labTrace.setText("Tracing...");
+            return;
+        }
+        
+        Tracer.stop();
+        btTrace.setText("Start trace");
+        btTrace.setEnabled(false);
+        labTrace.setText("Saving trace...");
+        
+        final String path = "livetrain-trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+        
+        // The dump waits out in-flight spans and writes a large file, so keep it off the event thread
+        Thread writer = new Thread(new Runnable() {
+            @Override public void run() {
+                String status;
+                
+                try {
+                    status = "Saved " + Tracer.dump(path) + " spans to " + path;
+                    Log.add("Saved trace", path);
+                } catch (IOException ex) {
+                    status = "Failed to save trace: " + ex.getMessage();
+                    Log.add("Failed to save trace", ex.toString());
+                }
+                
+                final String text = status;
+                
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override public void run() {
+                        labTrace.setText(text);
+                        btTrace.setEnabled(true);
+                    }
+                });
+            }
+        }, "Trace writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+}
@@ -0,0 +1,163 @@
+package livetrain.ui;
+
+import livetrain.Log;
+import livetrain.Simulation;
+import livetrain.telemetry.Replay;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.util.Locale;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * Interface tab for playing recorded telemetry back through the canvas. Playback speed follows
+ * the simulation speed slider
+ */
+public class ReplayPanel extends JPanel {
+    public static final int REFRESH_PERIOD_MS = 100;
+    public static final int SLIDER_STEPS = 10000;
+    
+    private JButton btOpen = new JButton("Open recording...");
+    private JButton btPlay = new JButton("Play");
+    private JButton btClose = new JButton("Close recording");
+    private JSlider sldPosition = new JSlider(0, SLIDER_STEPS, 0);
+    private JLabel labPosition = new JLabel(" ");
+    private boolean refreshing = false, replaying = false;
+    
+    public ReplayPanel() {
+        JPanel panReplay = new JPanel(new GridLayout(0, 1, 6, 6));
+        panReplay.setBorder(BorderFactory.createTitledBorder("Replay"));
+        panReplay.add(btOpen);
+        panReplay.add(btPlay);
+        panReplay.add(sldPosition);
+        panReplay.add(labPosition);
+        panReplay.add(btClose);
+        
+        btOpen.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                open();
+            }
+        });
+        
+        btPlay.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                Replay r = Simulation.instance().replay();
+                
+                if (r != null)
+                    r.setPlaying(!r.playing());
+            }
+        });
+        
+        btClose.addActionListener(new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                close();
+            }
+        });
+        
+        sldPosition.addChangeListener(new javax.swing.event.ChangeListener() {
+            @Override public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                Replay r = Simulation.instance().replay();
+                
+                if (!refreshing && r != null)
+                    r.seek(r.startTime() + (r.endTime() - r.startTime()) * sldPosition.getValue() / SLIDER_STEPS);
+            }
+        });
+        
+        new Timer(REFRESH_PERIOD_MS, new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                refresh();
+            }
+        }).start();
+        
+        setLayout(new BorderLayout());
+        add(panReplay, BorderLayout.NORTH);
+        refresh();
+    }
+    
+    /**
+     * Choose a recording and start replaying it in place of the simulation
+     */
+    private void open() {
+        JFileChooser chooser = new JFileChooser(".");
+        chooser.setFileFilter(new FileNameExtensionFilter("Livetrain telemetry (*.lvt)", "lvt"));
+        
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        String path = chooser.getSelectedFile().getPath();
+        
+        try {
+            Replay r = new Replay(path);
+            close();
+            Simulation.instance().setReplay(r);
+            refresh();
+        } catch (IOException ex) {
+            labPosition.setText("Failed to open " + path + ": " + ex.getMessage());
+            Log.add("Failed to open recording", ex.toString());
+        }
+    }
+    
+    /**
+     * Stop replaying and return to the simulation
+     */
+    private void close() {
+        Replay r = Simulation.instance().replay();
+        
+        if (r == null)
+            return;
+        
+        Simulation.instance().setReplay(null);
+        refresh();
+        
+        try {
+            r.close();
+        } catch (IOException ex) {
+            Log.add("Failed to close recording", ex.toString());
+        }
+    }
+    
+    /**
+     * Sync the controls with playback
+     */
+    private void refresh() {
+        Replay r = Simulation.instance().replay();
+        
+        // The simulation thread also ends a replay if the file fails
+        if ((r != null) != replaying) {
+            replaying = r != null;
+            SimulationUI.instance().refreshRunControls();
+        }
+        
+        btPlay.setEnabled(r != null);
+        btClose.setEnabled(r != null);
+        sldPosition.setEnabled(r != null);
+        
+        if (r == null) {
+            btPlay.setText("Play");
+            
+            if (!labPosition.getText().startsWith("Failed"))
+                labPosition.setText("No recording open");
+            
+            return;
+        }
+        
+        double span = Math.max(r.endTime() - r.startTime(), 1e-9);
+        
+        refreshing = true;
+        
+        if (!sldPosition.getValueIsAdjusting())
+            sldPosition.setValue((int)Math.round((r.time() - r.startTime()) / span * SLIDER_STEPS));
+        
+        refreshing = false;
+        btPlay.setText(r.playing() ? "Pause" : "Play");
+        labPosition.setText(String.format(Locale.getDefault(), "%.3fs of %.3fs", r.time(), r.endTime()));
+    }
+}
@@ -4,8 +4,9 @@ import livetrain.Clock;
 import livetrain.Log;
 import livetrain.Registry;
 import livetrain.Simulation;
+import livetrain.metrics.Metrics;
+import livetrain.metrics.TrajectoryBuildEvent;
 import livetrain.noise.NoiseGenerator;
-import livetrain.physics.Simulant;
 
 import elusive.geometry.Pose2D;
 import elusive.profiling.motion.MotionProfile;
@@ -23,9 +24,19 @@ public class SimulationUI extends javax.swing.JFrame {
     private volatile ArrayList<Pose2D> waypoints;
     private volatile Trajectory trajectory = null;
     private volatile Simulation sim;
+    
+    // Noise last given to the generator, by source, starting from the generator's own
+    private final Noise.Type[] noiseType = { Noise.Type.RANDOM, Noise.Type.RANDOM };
+    private final double[] noiseLower = { 0, 0 }, noiseUpper = { 0, 0 };
 
     private SimulationUI() {
         initComponents();
+        tabParent.addTab("Engine", new EnginePanel());
+        tabParent.addTab("Timeline", new TimelinePanel());
+        tabParent.addTab("Charts", new ChartsPanel());
+        tabParent.addTab("Replay", new ReplayPanel());
+        boxBotPoseStatNoiseType.setSelectedIndex(noiseType[NoiseGenerator.Type.ROBOT_POSE_STATIC.ordinal()].ordinal());
+        boxBotPoseAddNoiseType.setSelectedIndex(noiseType[NoiseGenerator.Type.ROBOT_POSE_ADD.ordinal()].ordinal());
         chkAddNoiseStateChanged(null);
     }
     
@@ -49,6 +60,17 @@ public class SimulationUI extends javax.swing.JFrame {
         Log.add("Attached " + sim.toString() + " to " + toString());
     }
     
+    /**
+     * Match the run controls to the simulation, which stops running and takes no stepping while
+     * it replays a recording
+     */
+    public void refreshRunControls() {
+        boolean replaying = sim.replay() != null;
+        chkSimulationRun.setSelected(sim.run());
+        chkSimulationRun.setEnabled(!replaying);
+        btAdvanceBy.setEnabled(!replaying && !sim.run());
+    }
+    
     /**
      * Build a trajectory according to the user's configuration and send it to the robot
      */
@@ -94,6 +116,12 @@ public class SimulationUI extends javax.swing.JFrame {
         }
         
         // Build the trajectory
+        long mark = Metrics.start();
+        TrajectoryBuildEvent event = TrajectoryBuildEvent.TYPE.isEnabled() ? new TrajectoryBuildEvent() : null;
+        
+        if (event != null)
+            event.begin();
+        
         switch ((String)boxPathType.getSelectedItem()) {
             case "Hermite cubic":
                 trajectory = TrajectoryBuilder.buildHermiteCubic(Simulation.robot().motionConstraints(), profileType, waypoints.toArray(new Pose2D[0]));
@@ -104,8 +132,17 @@ public class SimulationUI extends javax.swing.JFrame {
                 break;
         }
         
+        Metrics.stop(Metrics.Phase.TRAJECTORY_BUILD, mark);
+        
+        if (event != null) {
+            event.pathType = (String)boxPathType.getSelectedItem();
+            event.profileType = profileType.toString();
+            event.waypoints = waypoints.size();
+            event.commit();
+        }
+        
         chkFollowPath.setEnabled(true);
-        sim.robot().follower().setTrajectory(trajectory);
+        sim.robot().setTrajectory(trajectory);
     }
     
     /**
@@ -128,36 +165,59 @@ public class SimulationUI extends javax.swing.JFrame {
     }
     
     /**
-     * Update the noise generator
+     * Update the noise generator. A source is only replaced if its settings changed, since
+     * replacing one restarts its streams and clears the timeline
      */
     private void updateNoise() {
         // Robot pose static noise
         NumericEntryParser lower = new NumericEntryParser(0);
         NumericEntryParser upper = new NumericEntryParser(0);
         
-        Noise.Type t = boxBotPoseStatNoiseType.getSelectedItem().equals("Sinusoidal") ?
-                Noise.Type.SINUSOIDAL : Noise.Type.RANDOM;
+        // Choices are listed in the order of the types
+        Noise.Type t = Noise.Type.values()[boxBotPoseStatNoiseType.getSelectedIndex()];
         double l = lower.parse(txtBotPoseStatNoiseLower.getText());
         double u = upper.parse(txtBotPoseStatNoiseUpper.getText());
         
         txtBotPoseStatNoiseLower.setText("" + l);
         txtBotPoseStatNoiseUpper.setText("" + u);
         
-        NoiseGenerator.setRobotPoseStatic(t, l, u);
+        if (noiseChanged(NoiseGenerator.Type.ROBOT_POSE_STATIC, t, l, u))
+            NoiseGenerator.setRobotPoseStatic(t, l, u);
         
         // Robot pose additive noise
         lower = new NumericEntryParser(0);
         upper = new NumericEntryParser(0);
         
-        t = boxBotPoseAddNoiseType.getSelectedItem().equals("Sinusoidal") ?
-                Noise.Type.SINUSOIDAL : Noise.Type.RANDOM;
+        t = Noise.Type.values()[boxBotPoseAddNoiseType.getSelectedIndex()];
         l = lower.parse(txtBotPoseAddNoiseLower.getText());
         u = upper.parse(txtBotPoseAddNoiseUpper.getText());
         
         txtBotPoseAddNoiseLower.setText("" + l);
         txtBotPoseAddNoiseUpper.setText("" + u);
         
-        NoiseGenerator.setRobotPoseAdd(t, l, u);
+        if (noiseChanged(NoiseGenerator.Type.ROBOT_POSE_ADD, t, l, u))
+            NoiseGenerator.setRobotPoseAdd(t, l, u);
+    }
+    
+    /**
+     * Compare a source's settings with those it was last given, and remember them
+     * 
+     * @param s Source
+     * @param t Type
+     * @param l Lower bound
+     * @param u Upper bound
+     * @return If any differ
+     */
+    private boolean noiseChanged(NoiseGenerator.Type s, Noise.Type t, double l, double u) {
+        int i = s.ordinal();
+        
+        if (noiseType[i] == t && noiseLower[i] == l && noiseUpper[i] == u)
+            return false;
+        
+        noiseType[i] = t;
+        noiseLower[i] = l;
+        noiseUpper[i] = u;
+        return true;
     }
     
     /**
@@ -184,6 +244,8 @@ public class SimulationUI extends javax.swing.JFrame {
         Registry.edit(Registry.Entry.ROBOT_POW1, txtRobotPower1);
         Registry.edit(Registry.Entry.ROBOT_POW2, txtRobotPower2);
         Registry.edit(Registry.Entry.ROBOT_POW3, txtRobotPower3);
+        Registry.edit(Registry.Entry.ROBOT_POW4, txtRobotPower4);
+        Registry.edit(Registry.Entry.ROBOT_POW5, txtRobotPower5);
         Registry.edit(Registry.Entry.ROBOT_WHEEL_RADIUS, txtWheelRadius);
         
         // Default control coefficients
@@ -218,6 +280,8 @@ public class SimulationUI extends javax.swing.JFrame {
         txtRobotPower1 = new javax.swing.JTextField();
         txtRobotPower2 = new javax.swing.JTextField();
         txtRobotPower3 = new javax.swing.JTextField();
+        txtRobotPower4 = new javax.swing.JTextField();
+        txtRobotPower5 = new javax.swing.JTextField();
         txtRobotWidth = new javax.swing.JTextField();
         txtRobotHeight = new javax.swing.JTextField();
         labRobotWidth = new javax.swing.JLabel();
@@ -233,6 +297,8 @@ public class SimulationUI extends javax.swing.JFrame {
         labInitPow1 = new javax.swing.JLabel();
         labInitPow2 = new javax.swing.JLabel();
         labInitPow3 = new javax.swing.JLabel();
+        labInitPow4 = new javax.swing.JLabel();
+        labInitPow5 = new javax.swing.JLabel();
         txtWheelRadius = new javax.swing.JTextField();
         labWheelRadius = new javax.swing.JLabel();
         panTrajectoryTab = new javax.swing.JPanel();
@@ -287,7 +353,7 @@ public class SimulationUI extends javax.swing.JFrame {
             }
         });
 
-        sldSimulationSpeed.setMaximum(200);
+        sldSimulationSpeed.setMaximum(2000);
         sldSimulationSpeed.setValue(100);
         sldSimulationSpeed.addChangeListener(new javax.swing.event.ChangeListener() {
             public void stateChanged(javax.swing.event.ChangeEvent evt) {
@@ -448,6 +514,20 @@ public class SimulationUI extends javax.swing.JFrame {
             }
         });
 
+        txtRobotPower4.setText("0");
+        txtRobotPower4.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusLost(java.awt.event.FocusEvent evt) {
+                txtRobotPower4FocusLost(evt);
+            }
+        });
+
+        txtRobotPower5.setText("0");
+        txtRobotPower5.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusLost(java.awt.event.FocusEvent evt) {
+                txtRobotPower5FocusLost(evt);
+            }
+        });
+
         txtRobotWidth.setText("18.0");
         txtRobotWidth.addFocusListener(new java.awt.event.FocusAdapter() {
             public void focusLost(java.awt.event.FocusEvent evt) {
@@ -505,6 +585,10 @@ public class SimulationUI extends javax.swing.JFrame {
 
         labInitPow3.setText("Front right initial power");
 
+        labInitPow4.setText("Wheel 4 initial power");
+
+        labInitPow5.setText("Wheel 5 initial power");
+
         txtWheelRadius.setText("2.0");
         txtWheelRadius.addFocusListener(new java.awt.event.FocusAdapter() {
             public void focusLost(java.awt.event.FocusEvent evt) {
@@ -576,6 +660,14 @@ public class SimulationUI extends javax.swing.JFrame {
                                 .addComponent(txtRobotPower3, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                 .addComponent(labInitPow3))
+                            .addGroup(panRobotLayout.createSequentialGroup()
+                                .addComponent(txtRobotPower4, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                .addComponent(labInitPow4))
+                            .addGroup(panRobotLayout.createSequentialGroup()
+                                .addComponent(txtRobotPower5, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                .addComponent(labInitPow5))
                             .addComponent(boxDrivetrainType, javax.swing.GroupLayout.PREFERRED_SIZE, 82, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addGap(0, 0, Short.MAX_VALUE))))
         );
@@ -628,6 +720,14 @@ public class SimulationUI extends javax.swing.JFrame {
                 .addGroup(panRobotLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(txtRobotPower3, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(labInitPow3))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(panRobotLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(txtRobotPower4, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(labInitPow4))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(panRobotLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(txtRobotPower5, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(labInitPow5))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(boxDrivetrainType, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
@@ -954,7 +1054,7 @@ public class SimulationUI extends javax.swing.JFrame {
 
         panRobotPoseNoise.setBorder(javax.swing.BorderFactory.createTitledBorder("Robot pose static noise"));
 
-        boxBotPoseStatNoiseType.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Sinusoidal", "Random" }));
+        boxBotPoseStatNoiseType.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Sinusoidal", "Random", "Gaussian", "Gauss-Markov", "Random walk" }));
         boxBotPoseStatNoiseType.addItemListener(new java.awt.event.ItemListener() {
             public void itemStateChanged(java.awt.event.ItemEvent evt) {
                 boxBotPoseStatNoiseTypeItemStateChanged(evt);
@@ -1019,7 +1119,7 @@ public class SimulationUI extends javax.swing.JFrame {
 
         panTargetPoseNoise.setBorder(javax.swing.BorderFactory.createTitledBorder("Robot pose cumulative noise"));
 
-        boxBotPoseAddNoiseType.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Sinusoidal", "Random" }));
+        boxBotPoseAddNoiseType.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Sinusoidal", "Random", "Gaussian", "Gauss-Markov", "Random walk" }));
         boxBotPoseAddNoiseType.addItemListener(new java.awt.event.ItemListener() {
             public void itemStateChanged(java.awt.event.ItemEvent evt) {
                 boxBotPoseAddNoiseTypeItemStateChanged(evt);
@@ -1125,14 +1225,6 @@ public class SimulationUI extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void chkSimulationRunMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_chkSimulationRunMouseClicked
-        if (chkSimulationRun.isSelected())
-            Clock.simEpoch = Clock.timestamp();
-        else
-            Clock.timeBank += Clock.timestamp() - Clock.simEpoch;
-        
-        for (Simulant obj : sim.objects())
-                obj.resetTimestamp();
-        
         sim.setRun(chkSimulationRun.isSelected());
         btAdvanceBy.setEnabled(!chkSimulationRun.isSelected());
     }//GEN-LAST:event_chkSimulationRunMouseClicked
@@ -1165,6 +1257,14 @@ public class SimulationUI extends javax.swing.JFrame {
         Registry.edit(Registry.Entry.ROBOT_POW3, txtRobotPower3);
     }//GEN-LAST:event_txtRobotPower3FocusLost
 
+    private void txtRobotPower4FocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtRobotPower4FocusLost
+        Registry.edit(Registry.Entry.ROBOT_POW4, txtRobotPower4);
+    }//GEN-LAST:event_txtRobotPower4FocusLost
+
+    private void txtRobotPower5FocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtRobotPower5FocusLost
+        Registry.edit(Registry.Entry.ROBOT_POW5, txtRobotPower5);
+    }//GEN-LAST:event_txtRobotPower5FocusLost
+
     private void txtRobotWidthFocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtRobotWidthFocusLost
         Registry.edit(Registry.Entry.ROBOT_WIDTH, txtRobotWidth);
     }//GEN-LAST:event_txtRobotWidthFocusLost
@@ -1184,14 +1284,15 @@ public class SimulationUI extends javax.swing.JFrame {
         Registry.edit(Registry.Entry.ROBOT_POW1, txtRobotPower1);
         Registry.edit(Registry.Entry.ROBOT_POW2, txtRobotPower2);
         Registry.edit(Registry.Entry.ROBOT_POW3, txtRobotPower3);
+        Registry.edit(Registry.Entry.ROBOT_POW4, txtRobotPower4);
+        Registry.edit(Registry.Entry.ROBOT_POW5, txtRobotPower5);
         Simulation.robot().zeroVectors();
-        Clock.timeBank = 0;
-        Clock.simEpoch = Clock.timestamp();
+        sim.reset();
     }//GEN-LAST:event_btSimulationResetMouseClicked
 
     private void sldSimulationSpeedStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_sldSimulationSpeedStateChanged
         double speed = sldSimulationSpeed.getValue() / 100.0;
-        Clock.simulationSpeed = speed;
+        Clock.setSimulationSpeed(speed);
         labSimulationSpeed.setText("Speed (" + sldSimulationSpeed.getValue() + "%)");
     }//GEN-LAST:event_sldSimulationSpeedStateChanged
 
@@ -1208,7 +1309,7 @@ public class SimulationUI extends javax.swing.JFrame {
             axial[i] = (Double)tblCoefficients.getValueAt(i, 3);
         }
         
-        Simulation.robot().follower().setCoefficients(heading, lateral, axial);
+        Simulation.robot().pidvaFollower().setCoefficients(heading, lateral, axial);
     }//GEN-LAST:event_tblCoefficientsPropertyChange
 
     private void txtMaxVelocityFocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtMaxVelocityFocusLost
@@ -1251,9 +1352,6 @@ public class SimulationUI extends javax.swing.JFrame {
         NumericEntryParser p = new NumericEntryParser(0);
         double time = p.parse(txtAdvanceBy.getText());
         
-        for (Simulant obj : sim.objects())
-                obj.resetTimestamp();
-        
         sim.advanceSim(time);
     }//GEN-LAST:event_btAdvanceByMouseClicked
 
@@ -1264,7 +1362,9 @@ public class SimulationUI extends javax.swing.JFrame {
     }//GEN-LAST:event_txtAdvanceByFocusLost
 
     private void boxBotPoseStatNoiseTypeItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_boxBotPoseStatNoiseTypeItemStateChanged
-        updateNoise();
+        // A new selection also deselects the old one
+        if (evt.getStateChange() == java.awt.event.ItemEvent.SELECTED)
+            updateNoise();
     }//GEN-LAST:event_boxBotPoseStatNoiseTypeItemStateChanged
 
     private void txtBotPoseStatNoiseLowerFocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtBotPoseStatNoiseLowerFocusLost
@@ -1276,7 +1376,9 @@ public class SimulationUI extends javax.swing.JFrame {
     }//GEN-LAST:event_txtBotPoseStatNoiseUpperFocusLost
 
     private void boxBotPoseAddNoiseTypeItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_boxBotPoseAddNoiseTypeItemStateChanged
-        updateNoise();
+        // A new selection also deselects the old one
+        if (evt.getStateChange() == java.awt.event.ItemEvent.SELECTED)
+            updateNoise();
     }//GEN-LAST:event_boxBotPoseAddNoiseTypeItemStateChanged
 
     private void txtBotPoseAddNoiseLowerFocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtBotPoseAddNoiseLowerFocusLost
@@ -1313,6 +1415,8 @@ public class SimulationUI extends javax.swing.JFrame {
     private javax.swing.JLabel labInitPow1;
     private javax.swing.JLabel labInitPow2;
     private javax.swing.JLabel labInitPow3;
+    private javax.swing.JLabel labInitPow4;
+    private javax.swing.JLabel labInitPow5;
     private javax.swing.JLabel labMaxAcc;
     private javax.swing.JLabel labMaxJerk;
     private javax.swing.JLabel labMaxVel;
@@ -1360,6 +1464,8 @@ public class SimulationUI extends javax.swing.JFrame {
     private javax.swing.JTextField txtRobotPower1;
     private javax.swing.JTextField txtRobotPower2;
     private javax.swing.JTextField txtRobotPower3;
+    private javax.swing.JTextField txtRobotPower4;
+    private javax.swing.JTextField txtRobotPower5;
     private javax.swing.JTextField txtRobotWidth;
     private javax.swing.JTextField txtUpdateFrequency;
     private javax.swing.JTextField txtWheelRadius;
@@ -0,0 +1,113 @@
+package livetrain.ui;
+
+import livetrain.Clock;
+import livetrain.Simulation;
+import livetrain.history.SnapshotBuffer;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.util.Locale;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+
+/**
+ * Interface tab for scrubbing through the simulation's snapshot history. While the simulation is
+ * paused, moving the slider rewinds or fast-forwards to the selected tick
+ */
+public class TimelinePanel extends JPanel {
+    public static final int REFRESH_PERIOD_MS = 250;
+    public static final int SLIDER_STEPS = 1 << 20;
+    
+    private JSlider sldTimeline = new JSlider(0, 0, 0);
+    private JLabel labPosition = new JLabel();
+    private JLabel labHistory = new JLabel();
+    private boolean refreshing = false;
+    
+    // Ticks are long, so the slider spans at most SLIDER_STEPS positions mapped linearly onto them
+    private long oldest = 0, newest = 0;
+    
+    public TimelinePanel() {
+        JPanel panTimeline = new JPanel(new GridLayout(0, 1, 6, 6));
+        panTimeline.setBorder(BorderFactory.createTitledBorder("Timeline"));
+        panTimeline.add(sldTimeline);
+        panTimeline.add(labPosition);
+        panTimeline.add(labHistory);
+        
+        sldTimeline.addChangeListener(new javax.swing.event.ChangeListener() {
+            @Override public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                if (!refreshing && sldTimeline.isEnabled())
+                    Simulation.instance().seek(tickAt(sldTimeline.getValue()));
+            }
+        });
+        
+        new Timer(REFRESH_PERIOD_MS, new java.awt.event.ActionListener() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent evt) {
+                refresh();
+            }
+        }).start();
+        
+        setLayout(new BorderLayout());
+        add(panTimeline, BorderLayout.NORTH);
+    }
+    
+    /**
+     * Sync the slider with the retained history. The slider follows the simulation while it runs
+     */
+    private void refresh() {
+        Simulation sim = Simulation.instance();
+        SnapshotBuffer history = sim.history();
+        boolean scrubbable = !sim.run() && !history.isEmpty();
+        
+        refreshing = true;
+        
+        if (!sldTimeline.getValueIsAdjusting()) {
+            long tick = sldTimeline.isEnabled() ? tickAt(sldTimeline.getValue()) : sim.tick();
+            
+            oldest = Math.max(history.oldestTick(), 0);
+            newest = Math.max(history.newestTick(), sim.tick());
+            
+            sldTimeline.setMinimum(0);
+            sldTimeline.setMaximum((int)Math.min(newest - oldest, SLIDER_STEPS));
+            sldTimeline.setValue(positionOf(sim.run() || history.isEmpty() ? sim.tick() : tick));
+        }
+        
+        sldTimeline.setEnabled(scrubbable);
+        refreshing = false;
+        
+        labPosition.setText(String.format(Locale.getDefault(), "Tick %d (%.3fs)", sim.tick(),
+                Clock.simulationTime()));
+        labHistory.setText(String.format(Locale.getDefault(), "%d snapshots, %.1f KiB",
+                history.size(), history.encodedBytes() / 1024.0));
+    }
+    
+    /**
+     * @param position Slider position
+     * @return Tick at that position
+     */
+    private long tickAt(int position) {
+        int steps = sldTimeline.getMaximum();
+        
+        if (steps == 0)
+            return oldest;
+        
+        return oldest + Math.round((double)position * (newest - oldest) / steps);
+    }
+    
+    /**
+     * @param tick Tick
+     * @return Slider position nearest that tick
+     */
+    private int positionOf(long tick) {
+        int steps = sldTimeline.getMaximum();
+        
+        if (newest == oldest)
+            return 0;
+        
+        tick = Math.max(oldest, Math.min(tick, newest));
+        
+        return (int)Math.round((double)(tick - oldest) * steps / (newest - oldest));
+    }
+}